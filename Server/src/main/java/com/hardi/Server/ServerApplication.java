@@ -1,15 +1,22 @@
 package com.hardi.Server;
 
+import com.hardi.Server.repository.UserRepository;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.io.File;
 
 import static com.hardi.Server.utils.FileConstants.USER_FOLDER;
 
 @SpringBootApplication
+@EnableScheduling
+@EnableJpaRepositories(basePackageClasses = UserRepository.class, //R2DBC repositories are enabled by the reactive profile only
+		excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = R2dbcRepository.class))
 public class ServerApplication {
 
 	public static void main(String[] args) {
@@ -17,9 +24,4 @@ public class ServerApplication {
 
 		new File(USER_FOLDER).mkdirs(); //Create folder for user images
 	}
-
-	@Bean
-	public BCryptPasswordEncoder bCryptPasswordEncoder() {
-		return new BCryptPasswordEncoder();
-	}
 }
@@ -0,0 +1,135 @@
+package com.hardi.Server.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hardi.Server.config.filter.JwtAuthorizationWebFilter;
+import com.hardi.Server.domain.HttpResponse;
+import com.hardi.Server.service.TokenRevocationService;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import com.hardi.Server.utils.VerifiedTokenCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.authentication.DefaultAuthenticationEventPublisher;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsConfigurationSource;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.hardi.Server.utils.SecurityConstants.ACCESS_DENIED_MESSAGE;
+import static com.hardi.Server.utils.SecurityConstants.FORBIDDEN_MESSAGE;
+
+/**
+ * Security of the reactive profile, the same rules and responses as SecurityConfiguration.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@EnableReactiveMethodSecurity //@PreAuthorize() on the import and export endpoints
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfiguration {
+
+    private final ObjectMapper objectMapper;
+
+    public ReactiveSecurityConfiguration(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, JwtTokenProviderUtils jwtTokenProvider,
+                                                         VerifiedTokenCache verifiedTokenCache,
+                                                         TokenRevocationService tokenRevocationService,
+                                                         MeterRegistry meterRegistry) {
+        return http
+                .csrf(csrf -> csrf.disable())
+                .httpBasic(httpBasic -> httpBasic.disable())
+                .formLogin(formLogin -> formLogin.disable())
+                .logout(logout -> logout.disable())
+                .cors(Customizer.withDefaults())
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance()) //Stateless
+                .authorizeExchange(exchanges -> exchanges
+                        .pathMatchers(HttpMethod.OPTIONS).permitAll()
+                        .pathMatchers(SecurityConstants.PUBLIC_URLS).permitAll()
+                        .matchers(EndpointRequest.to("health", "prometheus")).permitAll() //Served on the management port only
+                        .anyExchange().authenticated())
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint((exchange, exception) -> writeHttpResponse(exchange, HttpStatus.FORBIDDEN, FORBIDDEN_MESSAGE))
+                        .accessDeniedHandler((exchange, exception) -> writeHttpResponse(exchange, HttpStatus.UNAUTHORIZED, ACCESS_DENIED_MESSAGE)))
+                .addFilterAt(new JwtAuthorizationWebFilter(jwtTokenProvider, verifiedTokenCache, tokenRevocationService, meterRegistry),
+                        SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+    /**
+     * The blocking provider of the servlet stack adapted onto the bounded elastic scheduler, so logins
+     * still publish the events that count failed attempts and still rehash outdated passwords.
+     */
+    @Bean
+    public ReactiveAuthenticationManager reactiveAuthenticationManager(@Qualifier("userDetailsService") UserDetailsService userDetailsService,
+                                                                       PasswordEncoder passwordEncoder,
+                                                                       ApplicationEventPublisher applicationEventPublisher) {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(userDetailsService);
+        provider.setPasswordEncoder(passwordEncoder);
+        if(userDetailsService instanceof UserDetailsPasswordService) {
+            provider.setUserDetailsPasswordService((UserDetailsPasswordService) userDetailsService);
+        }
+        ProviderManager providerManager = new ProviderManager(provider);
+        providerManager.setAuthenticationEventPublisher(new DefaultAuthenticationEventPublisher(applicationEventPublisher));
+        return new ReactiveAuthenticationManagerAdapter(providerManager);
+    }
+
+    @Bean
+    public CorsConfigurationSource corsConfigurationSource() {
+        CorsConfiguration configuration = new CorsConfiguration();
+        configuration.setAllowedOrigins(Collections.singletonList("http://localhost:4200"));
+        configuration.setAllowedMethods(Arrays.asList("OPTIONS", "HEAD", "GET", "PUT", "POST", "DELETE", "PATCH"));
+        configuration.setAllowedHeaders(Collections.singletonList(CorsConfiguration.ALL));
+        configuration.setAllowCredentials(true);
+        configuration.setExposedHeaders(Arrays.asList("Jwt-Token", "ETag")); //Read by the client and sent back as If-Match
+        configuration.setMaxAge(3600L);
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", configuration);
+        return source;
+    }
+
+    private Mono<Void> writeHttpResponse(ServerWebExchange exchange, HttpStatus status, String message) {
+        HttpResponse httpResponse = new HttpResponse(status.value(), status, status.getReasonPhrase().toUpperCase(), message);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        try {
+            DataBuffer body = response.bufferFactory().wrap(objectMapper.writeValueAsBytes(httpResponse));
+            return response.writeWith(Mono.just(body));
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.hardi.Server.config;
+
+import com.hardi.Server.utils.SqlStatementStatistics;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the DataSource in a proxy that reports every executed statement to the SqlStatementStatistics
+ * of the executing thread. Threads without an active recording only pay for the proxy call.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sql.statistics.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlStatisticsConfiguration {
+
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() { //Static, post processors are created before other beans
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if(!(bean instanceof DataSource) || bean instanceof ProxyDataSource) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create(beanName, (DataSource) bean)
+                        .beforeQuery((execution, queries) -> {
+                            SqlStatementStatistics statistics = SqlStatementStatistics.current();
+                            if(statistics != null) {
+                                statistics.beforeStatement();
+                            }
+                        })
+                        .afterQuery((execution, queries) -> {
+                            SqlStatementStatistics statistics = SqlStatementStatistics.current();
+                            if(statistics != null) {
+                                statistics.afterStatement(queries.isEmpty() ? "" : queries.get(0).getQuery()); //A batch counts once
+                            }
+                        })
+                        .build();
+            }
+        };
+    }
+}
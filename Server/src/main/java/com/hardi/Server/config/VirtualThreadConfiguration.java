@@ -0,0 +1,52 @@
+package com.hardi.Server.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Runs Tomcat's request handling, Spring MVC's async work (streamed /user/list) and the scheduled jobs
+ * (outbox SMTP sends, batched JDBC writes) on virtual threads, so threads blocked on JDBC, disk or SMTP
+ * no longer cap throughput at the pool size. The BCrypt and image resizing pools stay on platform
+ * threads, they are CPU bound and their size is what protects the CPU.
+ * <p>
+ * Without threads.virtual.enabled Boot's platform thread pools are used (server.tomcat.threads.max,
+ * spring.task.execution.pool, spring.task.scheduling.pool).
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = "threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    public VirtualThreadConfiguration() {
+        log.info("Request handling, async and scheduled work run on virtual threads");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tomcat-handler-", 0).factory()));
+    }
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("task-");
+        executor.setVirtualThreads(true); //A new virtual thread per task, there is no pool to size or to exhaust
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskSchedulerCustomizer virtualThreadTaskSchedulerCustomizer() {
+        return taskScheduler -> taskScheduler.setThreadFactory(Thread.ofVirtual().name("scheduling-", 0).factory());
+    }
+}
@@ -1,29 +1,58 @@
 package com.hardi.Server.config.filter;
 
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.hardi.Server.domain.VerifiedToken;
+import com.hardi.Server.service.TokenRevocationService;
 import com.hardi.Server.utils.JwtTokenProviderUtils;
 import com.hardi.Server.utils.SecurityConstants;
+import com.hardi.Server.utils.VerifiedTokenCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import javax.servlet.FilterChain;
-import javax.servlet.ServletException;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.MetricsConstants.JWT_VERIFICATION;
+import static com.hardi.Server.utils.MetricsConstants.OUTCOME;
 
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class JwtAuthorizationFilter extends OncePerRequestFilter {
 
     private JwtTokenProviderUtils jwtTokenProvider;
 
-    public JwtAuthorizationFilter(JwtTokenProviderUtils jwtTokenProvider) {
+    private VerifiedTokenCache verifiedTokenCache;
+
+    private TokenRevocationService tokenRevocationService;
+
+    private Timer validTokens;
+
+    private Timer expiredTokens;
+
+    private Timer revokedTokens;
+
+    private Timer invalidTokens;
+
+    public JwtAuthorizationFilter(JwtTokenProviderUtils jwtTokenProvider, VerifiedTokenCache verifiedTokenCache,
+                                  TokenRevocationService tokenRevocationService, MeterRegistry meterRegistry) {
         this.jwtTokenProvider = jwtTokenProvider;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.validTokens = verificationTimer(meterRegistry, "valid");
+        this.expiredTokens = verificationTimer(meterRegistry, "expired");
+        this.revokedTokens = verificationTimer(meterRegistry, "revoked");
+        this.invalidTokens = verificationTimer(meterRegistry, "invalid");
     }
 
     @Override
@@ -38,10 +67,19 @@ public class JwtAuthorizationFilter extends OncePerRequestFilter {
                 return;
             }
             String token = authorizationHeader.substring(SecurityConstants.TOKEN_PREFIX.length());
-            String username = jwtTokenProvider.getSubject(token);
-            if(jwtTokenProvider.isTokenValid(username, token) && SecurityContextHolder.getContext().getAuthentication() == null) {
-                List<GrantedAuthority> authorities = jwtTokenProvider.getAuthorities(token);
-                Authentication authentication = jwtTokenProvider.getAuthentication(username, authorities, request);
+            long start = System.nanoTime();
+            VerifiedToken verifiedToken;
+            try {
+                verifiedToken = verifiedTokenCache.verify(token); //One verification, reused until the token expires
+            } catch (JWTVerificationException e) {
+                invalidTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+            boolean valid = jwtTokenProvider.isTokenValid(verifiedToken);
+            boolean revoked = valid && tokenRevocationService.isRevoked(verifiedToken);
+            (!valid ? expiredTokens : revoked ? revokedTokens : validTokens).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if(valid && !revoked && SecurityContextHolder.getContext().getAuthentication() == null) {
+                Authentication authentication = jwtTokenProvider.getAuthentication(verifiedToken, request);
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             } else {
                 SecurityContextHolder.clearContext(); //Very important!!!
@@ -49,4 +87,11 @@ public class JwtAuthorizationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
+
+    private static Timer verificationTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder(JWT_VERIFICATION)
+                .description("Token verification and revocation check per request")
+                .tag(OUTCOME, outcome)
+                .register(meterRegistry);
+    }
 }
@@ -0,0 +1,86 @@
+package com.hardi.Server.config.filter;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.hardi.Server.domain.VerifiedToken;
+import com.hardi.Server.service.TokenRevocationService;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import com.hardi.Server.utils.VerifiedTokenCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.MetricsConstants.JWT_VERIFICATION;
+import static com.hardi.Server.utils.MetricsConstants.OUTCOME;
+
+/**
+ * {@link JwtAuthorizationFilter} for the reactive stack. Verification is CPU only (cached signature check,
+ * in-memory revocation filter), so it runs on the event loop. The authentication travels in the Reactor
+ * context instead of a thread local. Not a bean, it is added to the security chain in ReactiveSecurityConfiguration.
+ */
+public class JwtAuthorizationWebFilter implements WebFilter {
+
+    private final JwtTokenProviderUtils jwtTokenProvider;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    private final TokenRevocationService tokenRevocationService;
+
+    private final Timer validTokens;
+
+    private final Timer expiredTokens;
+
+    private final Timer revokedTokens;
+
+    private final Timer invalidTokens;
+
+    public JwtAuthorizationWebFilter(JwtTokenProviderUtils jwtTokenProvider, VerifiedTokenCache verifiedTokenCache,
+                                     TokenRevocationService tokenRevocationService, MeterRegistry meterRegistry) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.validTokens = verificationTimer(meterRegistry, "valid");
+        this.expiredTokens = verificationTimer(meterRegistry, "expired");
+        this.revokedTokens = verificationTimer(meterRegistry, "revoked");
+        this.invalidTokens = verificationTimer(meterRegistry, "invalid");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String authorizationHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if(authorizationHeader == null || !authorizationHeader.startsWith(SecurityConstants.TOKEN_PREFIX)) {
+            return chain.filter(exchange);
+        }
+        String token = authorizationHeader.substring(SecurityConstants.TOKEN_PREFIX.length());
+        long start = System.nanoTime();
+        VerifiedToken verifiedToken;
+        try {
+            verifiedToken = verifiedTokenCache.verify(token); //One verification, reused until the token expires
+        } catch (JWTVerificationException e) {
+            invalidTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return Mono.error(e);
+        }
+        boolean valid = jwtTokenProvider.isTokenValid(verifiedToken);
+        boolean revoked = valid && tokenRevocationService.isRevoked(verifiedToken);
+        (!valid ? expiredTokens : revoked ? revokedTokens : validTokens).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if(!valid || revoked) {
+            return chain.filter(exchange); //Left unauthenticated, protected paths answer with the entry point
+        }
+        return chain.filter(exchange)
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(jwtTokenProvider.getAuthentication(verifiedToken)));
+    }
+
+    private static Timer verificationTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder(JWT_VERIFICATION)
+                .description("Token verification and revocation check per request")
+                .tag(OUTCOME, outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,99 @@
+package com.hardi.Server.config.filter;
+
+import com.hardi.Server.utils.SqlStatementStatistics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.MetricsConstants.*;
+
+/**
+ * Counts the SQL statements and database time of a sample of requests, attaches them to the request
+ * (SqlStatementStatistics.REQUEST_ATTRIBUTE) and logs requests over the statement or time budget and
+ * requests repeating one statement, the usual sign of an N+1 query. Runs before the security filters
+ * so the user lookups of a login are counted. Work handed to other threads, like the body of a
+ * streamed /user/list, is not.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "sql.statistics.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlStatementBudgetFilter extends OncePerRequestFilter {
+
+    private final double sampleRate;
+
+    private final int statementBudget;
+
+    private final long timeBudget;
+
+    private final int repeatedStatementThreshold;
+
+    private final MeterRegistry meterRegistry;
+
+    public SqlStatementBudgetFilter(@Value("${sql.statistics.sample-rate:0.01}") double sampleRate,
+                                    @Value("${sql.statistics.statement-budget:10}") int statementBudget,
+                                    @Value("${sql.statistics.time-budget:200}") long timeBudget,
+                                    @Value("${sql.statistics.repeated-statement-threshold:5}") int repeatedStatementThreshold,
+                                    MeterRegistry meterRegistry) {
+        this.sampleRate = sampleRate;
+        this.statementBudget = statementBudget;
+        this.timeBudget = timeBudget;
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        boolean recording = SqlStatementStatistics.current() != null; //A test recording around the request
+        if(!recording && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        SqlStatementStatistics statistics = SqlStatementStatistics.start();
+        request.setAttribute(SqlStatementStatistics.REQUEST_ATTRIBUTE, statistics);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if(!recording) {
+                SqlStatementStatistics.stop();
+            }
+            report(request, statistics);
+        }
+    }
+
+    private void report(HttpServletRequest request, SqlStatementStatistics statistics) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        DistributionSummary.builder(SQL_STATEMENTS_PER_REQUEST).tag(URI, uri).register(meterRegistry).record(statistics.getCount());
+        Timer.builder(SQL_TIME_PER_REQUEST).tag(URI, uri).register(meterRegistry).record(statistics.getNanos(), TimeUnit.NANOSECONDS);
+
+        String requestLine = request.getMethod() + " " + request.getRequestURI();
+        if(statistics.getCount() > statementBudget || statistics.getMillis() > timeBudget) {
+            log.warn(requestLine + " ran " + statistics.getCount() + " statements in " + statistics.getMillis()
+                    + " ms, budget is " + statementBudget + " statements and " + timeBudget + " ms");
+        }
+        Map.Entry<String, Integer> mostRepeated = statistics.getMostRepeatedStatement();
+        if(mostRepeated != null && mostRepeated.getValue() >= repeatedStatementThreshold) {
+            log.warn(requestLine + " ran the same statement " + mostRepeated.getValue() + " times, likely an N+1 query: " + mostRepeated.getKey());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.utils.JwtKeyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.SecurityConstants.JWKS_PATH;
+
+@RestController
+public class JwksController {
+
+    @Autowired
+    private JwtKeyManager jwtKeyManager;
+
+    @GetMapping(JWKS_PATH)
+    public ResponseEntity<Map<String, Object>> getJsonWebKeySet() {
+        //Short max-age: verifiers see a rotated key soon, and refetch anyway on an unknown kid
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+                .body(jwtKeyManager.getJsonWebKeySet());
+    }
+}
@@ -0,0 +1,246 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.domain.HttpResponse;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserChanges;
+import com.hardi.Server.domain.UserFileFormat;
+import com.hardi.Server.domain.UserImportReport;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserPage;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.domain.UserSearchQuery;
+import com.hardi.Server.exceptions.ExceptionHandling;
+import com.hardi.Server.exceptions.domain.InvalidListQueryException;
+import com.hardi.Server.exceptions.domain.InvalidUserFileException;
+import com.hardi.Server.exceptions.domain.TooManyLoginAttemptsException;
+import com.hardi.Server.exceptions.domain.UserVersionMismatchException;
+import com.hardi.Server.service.AvatarService;
+import com.hardi.Server.service.LoginAttemptService;
+import com.hardi.Server.service.ProfileImageService;
+import com.hardi.Server.service.ReactiveUserService;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.UserETags;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.ErrorMessageConstants.TOO_MANY_LOGIN_ATTEMPTS;
+import static com.hardi.Server.utils.FileConstants.AVATAR_MAX_AGE_DAYS;
+import static com.hardi.Server.utils.SecurityConstants.JWT_TOKEN_HEADER;
+
+/**
+ * UserController for the reactive profile (WebFlux on Netty), same paths and responses. Multipart
+ * fields are read as parts, WebFlux does not bind them to request parameters.
+ */
+@RestController
+@RequestMapping("/user")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserController extends ExceptionHandling {
+
+    private final ReactiveUserService reactiveUserService;
+
+    private final ReactiveAuthenticationManager authenticationManager;
+
+    private final JwtTokenProviderUtils jwtTokenProviderUtils;
+
+    private final ProfileImageService profileImageService;
+
+    private final AvatarService avatarService;
+
+    private final LoginAttemptService loginAttemptService;
+
+    public ReactiveUserController(ReactiveUserService reactiveUserService, ReactiveAuthenticationManager authenticationManager,
+                                  JwtTokenProviderUtils jwtTokenProviderUtils, ProfileImageService profileImageService,
+                                  AvatarService avatarService, LoginAttemptService loginAttemptService) {
+        this.reactiveUserService = reactiveUserService;
+        this.authenticationManager = authenticationManager;
+        this.jwtTokenProviderUtils = jwtTokenProviderUtils;
+        this.profileImageService = profileImageService;
+        this.avatarService = avatarService;
+        this.loginAttemptService = loginAttemptService;
+    }
+
+    @PostMapping("/register")
+    public Mono<ResponseEntity<User>> register(@RequestBody User user) {
+        return reactiveUserService.register(user.getFirstName(), user.getLastName(), user.getUsername(), user.getEmail())
+                .map(saved -> new ResponseEntity<>(saved, HttpStatus.CREATED));
+    }
+
+    @PostMapping("/login")
+    public Mono<ResponseEntity<User>> login(@RequestBody User user, ServerHttpRequest request) {
+        String ipAddress = getRemoteAddress(request);
+        if(loginAttemptService.isBlocked(ipAddress)) {
+            return Mono.error(new TooManyLoginAttemptsException(TOO_MANY_LOGIN_ATTEMPTS));
+        }
+        UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(user.getUsername(), user.getPassword());
+        authenticationToken.setDetails(ipAddress); //Failed attempts are also counted per address
+        return authenticationManager.authenticate(authenticationToken)
+                .map(authentication -> {
+                    User loggedUser = ((UserPrincipal) authentication.getPrincipal()).getUser(); //As read from the database, with the pending login
+                    HttpHeaders jwtHeader = new HttpHeaders();
+                    jwtHeader.add(JWT_TOKEN_HEADER, jwtTokenProviderUtils.generateJwtToken(new UserPrincipal(loggedUser)));
+                    return new ResponseEntity<>(loggedUser, jwtHeader, HttpStatus.CREATED);
+                });
+    }
+
+    @PostMapping("/add")
+    public Mono<ResponseEntity<User>> addNewsUser(@RequestPart("firstName") String firstName,
+                                                  @RequestPart("lastName") String lastName,
+                                                  @RequestPart("username") String username,
+                                                  @RequestPart("email") String email,
+                                                  @RequestPart("role") String role,
+                                                  @RequestPart("isActive") String isActive,
+                                                  @RequestPart(value = "isNotLocked") String isNonBlocked,
+                                                  @RequestPart(value = "profileImage", required = false) FilePart profileImage) {
+        return reactiveUserService.addNewUser(firstName, lastName, username, email, role,
+                        Boolean.parseBoolean(isNonBlocked), Boolean.parseBoolean(isActive), profileImage)
+                .map(newUser -> new ResponseEntity<>(newUser, HttpStatus.CREATED));
+    }
+
+    @PutMapping("/update")
+    public Mono<ResponseEntity<User>> updateUser(@RequestPart("currentUsername") String currentUsername,
+                                                 @RequestPart("firstName") String firstName,
+                                                 @RequestPart("lastName") String lastName,
+                                                 @RequestPart("username") String username,
+                                                 @RequestPart("email") String email,
+                                                 @RequestPart("role") String role,
+                                                 @RequestPart("isActive") String isActive,
+                                                 @RequestPart(value = "isNotLocked") String isNonBlocked,
+                                                 @RequestPart(value = "profileImage", required = false) FilePart profileImage,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws UserVersionMismatchException {
+        //Without If-Match the update still fails with 409 when another one commits in between
+        return reactiveUserService.updateUser(currentUsername, firstName, lastName, username, email, role,
+                        Boolean.parseBoolean(isNonBlocked), Boolean.parseBoolean(isActive), profileImage, UserETags.getExpectedVersion(ifMatch))
+                .map(updatedUser -> ResponseEntity.ok().eTag(UserETags.of(updatedUser)).body(updatedUser));
+    }
+
+    @GetMapping("/find/{username}")
+    public Mono<ResponseEntity<User>> getUser(@PathVariable("username") String username) {
+        return reactiveUserService.findUserByUsername(username)
+                .<ResponseEntity<User>>map(user -> ResponseEntity.ok().eTag(UserETags.of(user)).cacheControl(CacheControl.noCache().cachePrivate()).body(user))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.OK)); //Same empty body as the servlet stack
+    }
+
+    @GetMapping(path = "/list", params = "limit")
+    public Mono<ResponseEntity<UserPage>> getPageOfUsers(@RequestParam("limit") Integer limit,
+                                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                                         @RequestParam(value = "sort", required = false) String sort,
+                                                         @RequestParam(value = "direction", required = false) String direction,
+                                                         @RequestParam(value = "role", required = false) String role,
+                                                         @RequestParam(value = "isActive", required = false) Boolean isActive,
+                                                         @RequestParam(value = "isNotLocked", required = false) Boolean isNotLocked) throws InvalidListQueryException {
+        UserListQuery query = UserListQuery.of(sort, direction, role, isActive, isNotLocked, cursor, limit);
+        return reactiveUserService.getUsers(query).map(page -> new ResponseEntity<>(page, HttpStatus.OK));
+    }
+
+    @GetMapping(path = "/list", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<User> getListOfUsers(@RequestParam(value = "sort", required = false) String sort,
+                                     @RequestParam(value = "direction", required = false) String direction,
+                                     @RequestParam(value = "role", required = false) String role,
+                                     @RequestParam(value = "isActive", required = false) Boolean isActive,
+                                     @RequestParam(value = "isNotLocked", required = false) Boolean isNotLocked) throws InvalidListQueryException {
+        UserListQuery query = UserListQuery.of(sort, direction, role, isActive, isNotLocked, null, null);
+        return reactiveUserService.streamUsers(query); //Encoded element by element as rows arrive
+    }
+
+    @GetMapping("/search")
+    public Mono<ResponseEntity<UserPage>> searchUsers(@RequestParam("q") String query,
+                                                      @RequestParam(value = "cursor", required = false) String cursor,
+                                                      @RequestParam(value = "limit", required = false) Integer limit) throws InvalidListQueryException {
+        return reactiveUserService.searchUsers(UserSearchQuery.of(query, cursor, limit)).map(page -> new ResponseEntity<>(page, HttpStatus.OK));
+    }
+
+    @PostMapping(path = "/import", consumes = {UserFileFormat.CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @PreAuthorize("@permissionChecker.has(authentication, 'USER_CREATE')")
+    public Mono<ResponseEntity<UserImportReport>> importUsers(ServerHttpRequest request) throws InvalidUserFileException {
+        UserFileFormat format = UserFileFormat.of(request.getHeaders().getContentType());
+        return reactiveUserService.importUsers(request.getBody(), format).map(report -> new ResponseEntity<>(report, HttpStatus.OK));
+    }
+
+    @GetMapping("/export")
+    @PreAuthorize("@permissionChecker.has(authentication, 'USER_UPDATE')") //Every user at once, not for plain users
+    public Mono<ResponseEntity<Flux<DataBuffer>>> exportUsers(@RequestParam(value = "format", defaultValue = "csv") String format,
+                                                              @RequestParam(value = "sort", required = false) String sort,
+                                                              @RequestParam(value = "direction", required = false) String direction,
+                                                              @RequestParam(value = "role", required = false) String role,
+                                                              @RequestParam(value = "isActive", required = false) Boolean isActive,
+                                                              @RequestParam(value = "isNotLocked", required = false) Boolean isNotLocked,
+                                                              ServerWebExchange exchange) throws InvalidListQueryException, InvalidUserFileException {
+        UserFileFormat fileFormat = UserFileFormat.of(format);
+        UserListQuery query = UserListQuery.of(sort, direction, role, isActive, isNotLocked, null, null);
+        Flux<DataBuffer> body = reactiveUserService.exportUsers(query, fileFormat, exchange.getResponse().bufferFactory());
+        return Mono.just(ResponseEntity.ok()
+                .contentType(fileFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("users." + fileFormat.getExtension()).build().toString())
+                .body(body)); //A Mono, reactive method security only wraps publishers
+    }
+
+    @GetMapping("/changes")
+    public Mono<ResponseEntity<UserChanges>> getUserChanges(@RequestParam(value = "since", required = false) Long since,
+                                                            @RequestParam(value = "limit", required = false) Integer limit) {
+        return reactiveUserService.getUserChanges(since, limit).map(changes -> new ResponseEntity<>(changes, HttpStatus.OK));
+    }
+
+    @GetMapping("/reset-password/{email}")
+    public Mono<ResponseEntity<HttpResponse>> resetPassword(@PathVariable("email") String email) {
+        return reactiveUserService.resetPassword(email).thenReturn(new ResponseEntity<>(HttpStatus.OK));
+    }
+
+    @PutMapping("/update-profile-image")
+    public Mono<ResponseEntity<User>> updateProfileImage(@RequestPart("username") String username,
+                                                         @RequestPart(value = "profileImage") FilePart profileImage) {
+        return reactiveUserService.updateProfileImage(username, profileImage).map(updatedUser -> new ResponseEntity<>(updatedUser, HttpStatus.OK));
+    }
+
+    @DeleteMapping("/delete/{username}")
+    public Mono<ResponseEntity<Void>> deleteUser(@PathVariable String username) {
+        return reactiveUserService.deleteUser(username).thenReturn(new ResponseEntity<>(HttpStatus.NO_CONTENT));
+    }
+
+    @GetMapping(path = "/image/{username}/{fileName}")
+    public Mono<ResponseEntity<Resource>> getProfileImage(@PathVariable("username") String username,
+                                                          @PathVariable("fileName") String fileName) {
+        //File attributes and small cached reads block briefly, the body itself is written without blocking
+        return Mono.fromCallable(() -> profileImageService.getProfileImage(username, fileName))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @GetMapping(path = "/image/profile/{username}")
+    public ResponseEntity<byte[]> getTempProfileImage(@PathVariable("username") String username, ServerWebExchange exchange) {
+        //Rendered locally and deterministic, the ETag comes from the username so a 304 needs no render
+        String eTag = avatarService.getETag(username);
+        CacheControl cacheControl = CacheControl.maxAge(AVATAR_MAX_AGE_DAYS, TimeUnit.DAYS).cachePublic();
+        if(exchange.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.IMAGE_PNG)
+                .body(avatarService.getAvatar(username));
+    }
+
+    private String getRemoteAddress(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress == null || remoteAddress.getAddress() == null ? null : remoteAddress.getAddress().getHostAddress();
+    }
+}
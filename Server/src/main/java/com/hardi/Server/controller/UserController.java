@@ -1,42 +1,63 @@
 package com.hardi.Server.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hardi.Server.domain.HttpResponse;
 import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserChanges;
+import com.hardi.Server.domain.UserFileFormat;
+import com.hardi.Server.domain.UserImportReport;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserPage;
 import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.domain.UserSearchQuery;
 import com.hardi.Server.exceptions.ExceptionHandling;
 import com.hardi.Server.exceptions.domain.EmailExistsException;
 import com.hardi.Server.exceptions.domain.EmailNotFoundException;
+import com.hardi.Server.exceptions.domain.InvalidListQueryException;
+import com.hardi.Server.exceptions.domain.InvalidUserFileException;
 import com.hardi.Server.exceptions.domain.NotImageFileException;
+import com.hardi.Server.exceptions.domain.TooManyLoginAttemptsException;
+import com.hardi.Server.exceptions.domain.UserVersionMismatchException;
 import com.hardi.Server.exceptions.domain.UsernameExistsException;
+import com.hardi.Server.service.AvatarService;
+import com.hardi.Server.service.LoginAttemptService;
+import com.hardi.Server.service.ProfileImageService;
+import com.hardi.Server.service.UserImportService;
 import com.hardi.Server.service.UserService;
 import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.UserETags;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.mail.MessagingException;
-
-import java.io.ByteArrayOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.List;
-
-import static com.hardi.Server.utils.FileConstants.*;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.ErrorMessageConstants.TOO_MANY_LOGIN_ATTEMPTS;
+import static com.hardi.Server.utils.FileConstants.AVATAR_MAX_AGE_DAYS;
 import static com.hardi.Server.utils.SecurityConstants.JWT_TOKEN_HEADER;
-import static org.springframework.http.MediaType.IMAGE_JPEG_VALUE;
 
 @RestController
 @RequestMapping("/user")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserController extends ExceptionHandling {
 
     @Autowired
@@ -48,17 +69,34 @@ public class UserController extends ExceptionHandling {
     @Autowired
     private JwtTokenProviderUtils jwtTokenProviderUtils;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ProfileImageService profileImageService;
+
+    @Autowired
+    private AvatarService avatarService;
+
+    @Autowired
+    private LoginAttemptService loginAttemptService;
+
+    @Autowired
+    private UserImportService userImportService;
+
     @PostMapping("/register")
-    public ResponseEntity<User> register(@RequestBody User user) throws UsernameExistsException, EmailExistsException, MessagingException {
+    public ResponseEntity<User> register(@RequestBody User user) throws UsernameExistsException, EmailExistsException {
         User saved = userService.register(user.getFirstName(), user.getLastName(), user.getUsername(), user.getEmail());
         return new ResponseEntity<>(saved, HttpStatus.CREATED);
     }
 
     @PostMapping("/login")
-    public ResponseEntity<User> login(@RequestBody User user){
-        authenticate(user.getUsername(), user.getPassword());
-        User loggedUser = userService.findUserByUsername(user.getUsername());
-        UserPrincipal userPrincipal = new UserPrincipal(loggedUser);
+    public ResponseEntity<User> login(@RequestBody User user, HttpServletRequest request) throws TooManyLoginAttemptsException {
+        if(loginAttemptService.isBlocked(request.getRemoteAddr())) {
+            throw new TooManyLoginAttemptsException(TOO_MANY_LOGIN_ATTEMPTS);
+        }
+        UserPrincipal userPrincipal = authenticate(user.getUsername(), user.getPassword(), request);
+        User loggedUser = userPrincipal.getUser(); //As read from the database, the token must carry the current token version
         HttpHeaders jwtHeader = getJwtHeader(userPrincipal);
 
         return new ResponseEntity<>(loggedUser, jwtHeader, HttpStatus.CREATED);
@@ -87,26 +125,100 @@ public class UserController extends ExceptionHandling {
                                             @RequestParam("role") String role,
                                             @RequestParam("isActive") String isActive,
                                             @RequestParam(value = "isNotLocked") String isNonBlocked,
-                                            @RequestParam(value = "profileImage", required = false)MultipartFile profileImage) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException {
+                                            @RequestParam(value = "profileImage", required = false)MultipartFile profileImage,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException, UserVersionMismatchException {
+        //Without If-Match the update still fails with 409 when another one commits in between
         User updatedUser = userService.updateUser(currentUsername, firstName, lastName, username, email, role,
-                Boolean.parseBoolean(isNonBlocked),  Boolean.parseBoolean(isActive), profileImage);
-        return new ResponseEntity<>(updatedUser, HttpStatus.OK);
+                Boolean.parseBoolean(isNonBlocked),  Boolean.parseBoolean(isActive), profileImage, UserETags.getExpectedVersion(ifMatch));
+        return ResponseEntity.ok().eTag(UserETags.of(updatedUser)).body(updatedUser);
     }
 
     @GetMapping("/find/{username}")
     public ResponseEntity<User> getUser(@PathVariable("username") String username) {
         User user = userService.findUserByUsername(username);
-        return new ResponseEntity<>(user, HttpStatus.OK);
+        if(user == null) {
+            return new ResponseEntity<>(user, HttpStatus.OK);
+        }
+        //Spring MVC answers a matching If-None-Match with 304 and no body
+        return ResponseEntity.ok().eTag(UserETags.of(user)).cacheControl(CacheControl.noCache().cachePrivate()).body(user);
+    }
+
+    @GetMapping(path = "/list", params = "limit")
+    public ResponseEntity<UserPage> getPageOfUsers(@RequestParam("limit") Integer limit,
+                                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                                   @RequestParam(value = "sort", required = false) String sort,
+                                                   @RequestParam(value = "direction", required = false) String direction,
+                                                   @RequestParam(value = "role", required = false) String role,
+                                                   @RequestParam(value = "isActive", required = false) Boolean isActive,
+                                                   @RequestParam(value = "isNotLocked", required = false) Boolean isNotLocked,
+                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws InvalidListQueryException {
+        UserListQuery query = UserListQuery.of(sort, direction, role, isActive, isNotLocked, cursor, limit);
+        String eTag = UserETags.ofList(userService.getUsersVersion(query));
+        if(UserETags.matchesAny(ifNoneMatch, eTag)) {
+            return notModified(eTag); //Before the page is read
+        }
+        UserPage page = userService.getUsers(query);
+        return ResponseEntity.ok().eTag(eTag).cacheControl(CacheControl.noCache().cachePrivate()).body(page);
     }
 
     @GetMapping("/list")
-    public ResponseEntity<List<User>> getListOfUsers() {
-        List<User> users = userService.getUsers();
-        return new ResponseEntity<>(users, HttpStatus.OK);
+    public ResponseEntity<StreamingResponseBody> getListOfUsers(@RequestParam(value = "sort", required = false) String sort,
+                                                                @RequestParam(value = "direction", required = false) String direction,
+                                                                @RequestParam(value = "role", required = false) String role,
+                                                                @RequestParam(value = "isActive", required = false) Boolean isActive,
+                                                                @RequestParam(value = "isNotLocked", required = false) Boolean isNotLocked,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws InvalidListQueryException {
+        UserListQuery query = UserListQuery.of(sort, direction, role, isActive, isNotLocked, null, null);
+        String eTag = UserETags.ofList(userService.getUsersVersion(query));
+        if(UserETags.matchesAny(ifNoneMatch, eTag)) {
+            return notModified(eTag);
+        }
+        StreamingResponseBody body = outputStream -> writeUsers(query, outputStream); //Rows are written as they are read, never collected
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(eTag).cacheControl(CacheControl.noCache().cachePrivate()).body(body);
+    }
+
+    @PostMapping(path = "/import", consumes = {UserFileFormat.CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @PreAuthorize("@permissionChecker.has(authentication, 'USER_CREATE')")
+    public ResponseEntity<UserImportReport> importUsers(HttpServletRequest request) throws IOException, InvalidUserFileException {
+        UserFileFormat format = UserFileFormat.of(MediaType.parseMediaType(request.getContentType()));
+        UserImportReport report = userImportService.importUsers(request.getInputStream(), format); //Read as it arrives, not buffered
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    @GetMapping("/export")
+    @PreAuthorize("@permissionChecker.has(authentication, 'USER_UPDATE')") //Every user at once, not for plain users
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(value = "format", defaultValue = "csv") String format,
+                                                             @RequestParam(value = "sort", required = false) String sort,
+                                                             @RequestParam(value = "direction", required = false) String direction,
+                                                             @RequestParam(value = "role", required = false) String role,
+                                                             @RequestParam(value = "isActive", required = false) Boolean isActive,
+                                                             @RequestParam(value = "isNotLocked", required = false) Boolean isNotLocked) throws InvalidListQueryException, InvalidUserFileException {
+        UserFileFormat fileFormat = UserFileFormat.of(format);
+        UserListQuery query = UserListQuery.of(sort, direction, role, isActive, isNotLocked, null, null);
+        StreamingResponseBody body = outputStream -> userImportService.exportUsers(query, fileFormat, outputStream);
+        return ResponseEntity.ok()
+                .contentType(fileFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("users." + fileFormat.getExtension()).build().toString())
+                .body(body);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<UserPage> searchUsers(@RequestParam("q") String query,
+                                                @RequestParam(value = "cursor", required = false) String cursor,
+                                                @RequestParam(value = "limit", required = false) Integer limit) throws InvalidListQueryException {
+        UserPage page = userService.searchUsers(UserSearchQuery.of(query, cursor, limit));
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<UserChanges> getUserChanges(@RequestParam(value = "since", required = false) Long since,
+                                                      @RequestParam(value = "limit", required = false) Integer limit) {
+        UserChanges changes = userService.getUserChanges(since, limit); //Without since only the version to sync from
+        return new ResponseEntity<>(changes, HttpStatus.OK);
     }
 
     @GetMapping("/reset-password/{email}")
-    public ResponseEntity<HttpResponse> resetPassword(@PathVariable("email") String email) throws EmailNotFoundException, MessagingException {
+    public ResponseEntity<HttpResponse> resetPassword(@PathVariable("email") String email) throws EmailNotFoundException {
         userService.resetPassword(email);
         return new ResponseEntity<HttpResponse>(HttpStatus.OK);
     }
@@ -119,33 +231,53 @@ public class UserController extends ExceptionHandling {
     }
 
     @DeleteMapping("/delete/{username}")
-//    @PreAuthorize("hasAnyAuthority('user:delete')")
+//    @PreAuthorize("@permissionChecker.has(authentication, 'USER_DELETE')")
     public ResponseEntity<Void> deleteUser(@PathVariable String username) throws IOException {
         userService.deleteUser(username);
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
-    @GetMapping(path = "/image/{username}/{fileName}", produces = IMAGE_JPEG_VALUE)
-    public byte[] getProfileImage(@PathVariable("username") String username,
-                                  @PathVariable("fileName") String fileName) throws IOException {
-        return Files.readAllBytes(Paths.get(USER_FOLDER + username + FORWARD_SLASH + fileName));
+    @GetMapping(path = "/image/{username}/{fileName}")
+    public ResponseEntity<Resource> getProfileImage(@PathVariable("username") String username,
+                                                    @PathVariable("fileName") String fileName,
+                                                    HttpServletRequest request) throws IOException {
+        return profileImageService.getProfileImage(username, fileName, request);
     }
 
-    @GetMapping(path = "/image/profile/{username}", produces = IMAGE_JPEG_VALUE)
-    public byte[] getTempProfileImage(@PathVariable("username") String username) throws MalformedURLException {
-        URL url = new URL(TEMP_PROFILE_IMAGE_BASE_URL + username);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    @GetMapping(path = "/image/profile/{username}")
+    public ResponseEntity<byte[]> getTempProfileImage(@PathVariable("username") String username, WebRequest webRequest) {
+        //Rendered locally and deterministic, the ETag comes from the username so a 304 needs no render
+        String eTag = avatarService.getETag(username);
+        CacheControl cacheControl = CacheControl.maxAge(AVATAR_MAX_AGE_DAYS, TimeUnit.DAYS).cachePublic();
+        if(webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.IMAGE_PNG)
+                .body(avatarService.getAvatar(username));
+    }
+
+    /**
+     * Checked here rather than by Spring MVC, which would only compare the tags after the list was built.
+     */
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+    }
 
-        try (InputStream inputStream = url.openStream()) {
-            int bytesRead;
-            byte[] chunk = new byte[1024];
-            while ((bytesRead = inputStream.read(chunk)) > 0) {
-                byteArrayOutputStream.write(chunk, 0, bytesRead);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private void writeUsers(UserListQuery query, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.writeStartArray();
+            userService.streamUsers(query, user -> {
+                try {
+                    generator.writeObject(user);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
         }
-        return byteArrayOutputStream.toByteArray();
     }
 
     private HttpHeaders getJwtHeader(UserPrincipal user) {
@@ -154,7 +286,9 @@ public class UserController extends ExceptionHandling {
         return headers;
     }
 
-    private void authenticate(String username, String password) {
-        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+    private UserPrincipal authenticate(String username, String password, HttpServletRequest request) {
+        UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(username, password);
+        authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request)); //Failed attempts are also counted per address
+        return (UserPrincipal) authenticationManager.authenticate(authenticationToken).getPrincipal();
     }
 }
@@ -0,0 +1,39 @@
+package com.hardi.Server.domain;
+
+import lombok.Data;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+@Data
+@Entity
+@Table(name = "email_outbox", indexes = @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, nextAttemptAt"))
+public class EmailOutboxMessage implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(nullable = false, updatable = false)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    private String subject;
+
+    @Column(length = 2000)
+    private String body; //Encrypted with EmailBodyCipher, it contains the generated password. Cleared when the message is dead
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private EmailStatus status;
+
+    private int attempts;
+
+    private Date nextAttemptAt;
+
+    private Date createdAt;
+
+    @Column(length = 500)
+    private String lastError;
+}
@@ -0,0 +1,6 @@
+package com.hardi.Server.domain;
+
+public enum EmailStatus {
+    PENDING,
+    DEAD
+}
@@ -0,0 +1,33 @@
+package com.hardi.Server.domain;
+
+public enum ImageSize {
+    THUMBNAIL("thumbnail", 64),
+    MEDIUM("medium", 256),
+    ORIGINAL("original", 0);
+
+    private String pathName;
+
+    private int maxDimension;
+
+    ImageSize(String pathName, int maxDimension) {
+        this.pathName = pathName;
+        this.maxDimension = maxDimension;
+    }
+
+    public String getPathName() {
+        return pathName;
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    public static ImageSize fromPathName(String pathName) {
+        for(ImageSize size : values()) {
+            if(size.pathName.equalsIgnoreCase(pathName)) {
+                return size;
+            }
+        }
+        return null;
+    }
+}
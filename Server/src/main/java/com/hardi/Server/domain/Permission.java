@@ -0,0 +1,76 @@
+package com.hardi.Server.domain;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single authority, stored as one bit of an int mask (user row, JWT claim).
+ * Every possible mask maps to one shared immutable authority list, so turning a mask
+ * into Spring Security authorities never allocates.
+ */
+public enum Permission implements GrantedAuthority {
+    USER_READ("user:read"),
+    USER_UPDATE("user:update"),
+    USER_CREATE("user:create"),
+    USER_DELETE("user:delete");
+
+    private static final List<List<GrantedAuthority>> AUTHORITIES_BY_MASK = new ArrayList<>();
+
+    static {
+        for(int mask = 0; mask < 1 << values().length; mask++) {
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            for(Permission permission : values()) {
+                if(permission.isGrantedBy(mask)) {
+                    authorities.add(permission);
+                }
+            }
+            AUTHORITIES_BY_MASK.add(Collections.unmodifiableList(authorities));
+        }
+    }
+
+    private String authority;
+
+    Permission(String authority) {
+        this.authority = authority;
+    }
+
+    @Override
+    public String getAuthority() {
+        return authority;
+    }
+
+    public int getMask() {
+        return 1 << ordinal(); //Stored in the database and in tokens, only ever append new permissions
+    }
+
+    public boolean isGrantedBy(int mask) {
+        return (mask & getMask()) != 0;
+    }
+
+    public static int toMask(Permission... permissions) {
+        int mask = 0;
+        for(Permission permission : permissions) {
+            mask |= permission.getMask();
+        }
+        return mask;
+    }
+
+    public static int toMask(String... authorities) {
+        int mask = 0;
+        for(String authority : authorities) {
+            for(Permission permission : values()) {
+                if(permission.authority.equals(authority)) {
+                    mask |= permission.getMask();
+                }
+            }
+        }
+        return mask;
+    }
+
+    public static List<GrantedAuthority> toAuthorities(int mask) {
+        return AUTHORITIES_BY_MASK.get(mask & (AUTHORITIES_BY_MASK.size() - 1)); //Unknown bits are ignored
+    }
+}
@@ -0,0 +1,21 @@
+package com.hardi.Server.domain;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+/**
+ * Authentication built from a verified JWT. Keeps the permission mask next to the
+ * authorities so checks are a bit test instead of a search through the authority list.
+ */
+public class PermissionAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+    private final int permissions;
+
+    public PermissionAuthenticationToken(String username, int permissions) {
+        super(username, null, Permission.toAuthorities(permissions));
+        this.permissions = permissions;
+    }
+
+    public int getPermissions() {
+        return permissions;
+    }
+}
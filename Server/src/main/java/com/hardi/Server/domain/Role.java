@@ -1,5 +1,9 @@
 package com.hardi.Server.domain;
 
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
 import static com.hardi.Server.utils.Authorities.*;
 
 public enum Role {
@@ -9,13 +13,17 @@ public enum Role {
     ROLE_ADMIN(ADMIN_AUTHORITIES),
     ROLE_SUPER_ADMIN(SUPER_ADMIN_AUTHORITIES);
 
-    private String[] authorities;
+    private int permissions;
+
+    Role(Permission... permissions) {
+        this.permissions = Permission.toMask(permissions);
+    }
 
-    Role(String... authorities) {
-        this.authorities = authorities;
+    public int getPermissions() {
+        return permissions;
     }
 
-    public String[] getAuthorities() {
-        return authorities;
+    public List<GrantedAuthority> getAuthorities() {
+        return Permission.toAuthorities(permissions);
     }
 }
@@ -1,16 +1,30 @@
 package com.hardi.Server.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
+import org.springframework.security.core.GrantedAuthority;
 
-import javax.persistence.*;
+import jakarta.persistence.*;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 @Data
 @Entity
+@Table(name = "user", uniqueConstraints = { //Created by the db/migration scripts, listed here for reference
+        @UniqueConstraint(name = User.USERNAME_UNIQUE_INDEX, columnNames = "username"),
+        @UniqueConstraint(name = User.EMAIL_UNIQUE_INDEX, columnNames = "email"),
+        @UniqueConstraint(name = User.USER_ID_UNIQUE_INDEX, columnNames = "userId")})
 public class User implements Serializable {
 
+    public static final String USERNAME_UNIQUE_INDEX = "uk_user_username";
+
+    public static final String EMAIL_UNIQUE_INDEX = "uk_user_email";
+
+    public static final String USER_ID_UNIQUE_INDEX = "uk_user_user_id";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(nullable = false, updatable = false)
@@ -40,9 +54,27 @@ public class User implements Serializable {
 
     private String role; //ROLE_USER{read, update}, ROLE_ADMIN{delete} ETC...
 
-    private String[] authorities;
+    @JsonIgnore
+    private int permissions; //Bit mask of Permission, copied from the role
+
+    @JsonIgnore
+    private int tokenVersion; //Raised to revoke the tokens issued so far
+
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version; //Raised by every JPA update, not by the last login written behind
+
 
     private boolean isActive;
 
     private boolean isNotLocked;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public List<String> getAuthorities() {
+        List<String> authorities = new ArrayList<>();
+        for(GrantedAuthority authority : Permission.toAuthorities(permissions)) {
+            authorities.add(authority.getAuthority());
+        }
+        return authorities;
+    }
 }
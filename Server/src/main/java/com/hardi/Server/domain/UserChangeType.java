@@ -0,0 +1,7 @@
+package com.hardi.Server.domain;
+
+public enum UserChangeType {
+    INSERT,
+    UPDATE,
+    DELETE
+}
@@ -0,0 +1,49 @@
+package com.hardi.Server.domain;
+
+import java.util.List;
+
+/**
+ * Users inserted or updated and ids of users deleted after a client's version. When reset is set
+ * the client's version is older than the retained changes and the list has to be loaded again;
+ * version is then the one to sync from after that load.
+ */
+public class UserChanges {
+
+    private long version;
+
+    private boolean reset;
+
+    private boolean hasMore;
+
+    private List<User> users;
+
+    private List<String> deletedUserIds;
+
+    public UserChanges(long version, boolean reset, boolean hasMore, List<User> users, List<String> deletedUserIds) {
+        this.version = version;
+        this.reset = reset;
+        this.hasMore = hasMore;
+        this.users = users;
+        this.deletedUserIds = deletedUserIds;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public List<String> getDeletedUserIds() {
+        return deletedUserIds;
+    }
+}
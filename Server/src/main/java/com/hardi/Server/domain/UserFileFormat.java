@@ -0,0 +1,48 @@
+package com.hardi.Server.domain;
+
+import com.hardi.Server.exceptions.domain.InvalidUserFileException;
+import org.springframework.http.MediaType;
+
+import static com.hardi.Server.utils.ErrorMessageConstants.UNSUPPORTED_USER_FILE_FORMAT;
+
+public enum UserFileFormat {
+    CSV("text/csv", "csv"),
+    NDJSON(MediaType.APPLICATION_NDJSON_VALUE, "ndjson");
+
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    private final String extension;
+
+    UserFileFormat(String mediaType, String extension) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static UserFileFormat of(MediaType contentType) throws InvalidUserFileException {
+        for(UserFileFormat format : values()) {
+            if(contentType != null && format.mediaType.isCompatibleWith(contentType)) {
+                return format;
+            }
+        }
+        throw new InvalidUserFileException(UNSUPPORTED_USER_FILE_FORMAT + contentType);
+    }
+
+    public static UserFileFormat of(String extension) throws InvalidUserFileException {
+        for(UserFileFormat format : values()) {
+            if(format.extension.equalsIgnoreCase(extension)) {
+                return format;
+            }
+        }
+        throw new InvalidUserFileException(UNSUPPORTED_USER_FILE_FORMAT + extension);
+    }
+}
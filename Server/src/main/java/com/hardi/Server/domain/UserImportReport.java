@@ -0,0 +1,37 @@
+package com.hardi.Server.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import, one result per data line of the file in file order.
+ */
+public class UserImportReport {
+
+    private int created;
+
+    private int rejected;
+
+    private List<UserImportResult> results = new ArrayList<>();
+
+    public void add(UserImportResult result) {
+        if(result.getStatus() == UserImportStatus.CREATED) {
+            created++;
+        } else {
+            rejected++;
+        }
+        results.add(result);
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<UserImportResult> getResults() {
+        return results;
+    }
+}
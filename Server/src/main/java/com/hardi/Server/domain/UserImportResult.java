@@ -0,0 +1,35 @@
+package com.hardi.Server.domain;
+
+public class UserImportResult {
+
+    private long line;
+
+    private String username;
+
+    private UserImportStatus status;
+
+    private String message;
+
+    public UserImportResult(long line, String username, UserImportStatus status, String message) {
+        this.line = line;
+        this.username = username;
+        this.status = status;
+        this.message = message;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public UserImportStatus getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
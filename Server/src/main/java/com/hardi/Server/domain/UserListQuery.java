@@ -0,0 +1,119 @@
+package com.hardi.Server.domain;
+
+import com.hardi.Server.exceptions.domain.InvalidListQueryException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+import static com.hardi.Server.utils.ErrorMessageConstants.INVALID_CURSOR;
+import static com.hardi.Server.utils.ErrorMessageConstants.INVALID_SORT_FIELD;
+
+public class UserListQuery {
+
+    public static final int DEFAULT_LIMIT = 50;
+
+    public static final int MAXIMUM_LIMIT = 500;
+
+    private static final String CURSOR_SEPARATOR = "|";
+
+    private final UserSortField sortField;
+
+    private final boolean ascending;
+
+    private final String role;
+
+    private final Boolean active;
+
+    private final Boolean notLocked;
+
+    private final int limit;
+
+    private Comparable<?> cursorValue;
+
+    private Long cursorId;
+
+    private UserListQuery(UserSortField sortField, boolean ascending, String role, Boolean active, Boolean notLocked, int limit) {
+        this.sortField = sortField;
+        this.ascending = ascending;
+        this.role = role;
+        this.active = active;
+        this.notLocked = notLocked;
+        this.limit = limit;
+    }
+
+    public static UserListQuery of(String sort, String direction, String role, Boolean active, Boolean notLocked,
+                                   String cursor, Integer limit) throws InvalidListQueryException {
+        UserSortField sortField = StringUtils.isBlank(sort) ? UserSortField.ID : UserSortField.fromParameter(sort);
+        if(sortField == null) {
+            throw new InvalidListQueryException(INVALID_SORT_FIELD + sort);
+        }
+        int pageSize = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAXIMUM_LIMIT));
+        UserListQuery query = new UserListQuery(sortField, !"desc".equalsIgnoreCase(direction),
+                StringUtils.isBlank(role) ? null : role.toUpperCase(), active, notLocked, pageSize);
+        if(StringUtils.isNotBlank(cursor)) {
+            query.decodeCursor(cursor);
+        }
+        return query;
+    }
+
+    /**
+     * Cursor pointing right after the given user, it carries the sort value and the id so the
+     * next page can continue with a keyset predicate instead of an offset.
+     */
+    public String encodeCursor(User user) {
+        String raw = sortField.name() + CURSOR_SEPARATOR + user.getId() + CURSOR_SEPARATOR + sortField.format(sortField.valueOf(user));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void decodeCursor(String cursor) throws InvalidListQueryException {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(Pattern.quote(CURSOR_SEPARATOR), 3);
+            if(parts.length != 3 || !sortField.name().equals(parts[0])) {
+                throw new InvalidListQueryException(INVALID_CURSOR);
+            }
+            this.cursorId = Long.valueOf(parts[1]);
+            this.cursorValue = sortField.parse(parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidListQueryException(INVALID_CURSOR);
+        }
+    }
+
+    public UserSortField getSortField() {
+        return sortField;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+
+    public Boolean getNotLocked() {
+        return notLocked;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public Comparable<?> getCursorValue() {
+        return cursorValue;
+    }
+
+    public Long getCursorId() {
+        return cursorId;
+    }
+
+    public boolean hasCursor() {
+        return cursorId != null;
+    }
+}
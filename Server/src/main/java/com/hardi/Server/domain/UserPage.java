@@ -0,0 +1,23 @@
+package com.hardi.Server.domain;
+
+import java.util.List;
+
+public class UserPage {
+
+    private List<User> users;
+
+    private String nextCursor;
+
+    public UserPage(List<User> users, String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,49 @@
+package com.hardi.Server.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * One user of a bulk import or export file, csv columns in this order. Imports ignore userId and joinDate,
+ * so an export can be imported into another database as it is.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonPropertyOrder({"userId", "firstName", "lastName", "username", "email", "role", "isActive", "isNotLocked", "joinDate"})
+public class UserRecord {
+
+    private String userId;
+
+    private String firstName;
+
+    private String lastName;
+
+    private String username;
+
+    private String email;
+
+    private String role; //ROLE_USER when empty
+
+    private Boolean isActive; //True when empty
+
+    private Boolean isNotLocked; //True when empty
+
+    private Date joinDate;
+
+    public static UserRecord of(User user) {
+        UserRecord record = new UserRecord();
+        record.setUserId(user.getUserId());
+        record.setFirstName(user.getFirstName());
+        record.setLastName(user.getLastName());
+        record.setUsername(user.getUsername());
+        record.setEmail(user.getEmail());
+        record.setRole(user.getRole());
+        record.setIsActive(user.isActive());
+        record.setIsNotLocked(user.isNotLocked());
+        record.setJoinDate(user.getJoinDate());
+        return record;
+    }
+}
@@ -0,0 +1,63 @@
+package com.hardi.Server.domain;
+
+import com.hardi.Server.exceptions.domain.InvalidListQueryException;
+import org.apache.commons.lang3.StringUtils;
+
+import static com.hardi.Server.utils.ErrorMessageConstants.INVALID_CURSOR;
+
+/**
+ * Search results are ranked in memory, so the cursor is the number of results already shown
+ * rather than a keyset position.
+ */
+public class UserSearchQuery {
+
+    public static final int DEFAULT_LIMIT = 20;
+
+    private final String text;
+
+    private final int offset;
+
+    private final int limit;
+
+    private UserSearchQuery(String text, int offset, int limit) {
+        this.text = text;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    public static UserSearchQuery of(String text, String cursor, Integer limit) throws InvalidListQueryException {
+        int pageSize = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, UserListQuery.MAXIMUM_LIMIT));
+        int offset = 0;
+        if(StringUtils.isNotBlank(cursor)) {
+            try {
+                offset = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                throw new InvalidListQueryException(INVALID_CURSOR);
+            }
+            if(offset < 0) {
+                throw new InvalidListQueryException(INVALID_CURSOR);
+            }
+        }
+        return new UserSearchQuery(text, offset, pageSize);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Cursor of the page after this one, null when the total number of matches has been shown.
+     */
+    public String getNextCursor(int total) {
+        long next = (long) offset + limit; //A cursor may hold any int
+        return next < total ? String.valueOf(next) : null;
+    }
+}
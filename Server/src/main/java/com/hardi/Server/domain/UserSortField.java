@@ -0,0 +1,48 @@
+package com.hardi.Server.domain;
+
+import java.util.Date;
+
+public enum UserSortField {
+    ID("id"),
+    USERNAME("username"),
+    JOIN_DATE("joinDate");
+
+    private String attribute;
+
+    UserSortField(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public Comparable<?> valueOf(User user) {
+        switch (this) {
+            case USERNAME: return user.getUsername();
+            case JOIN_DATE: return user.getJoinDate();
+            default: return user.getId();
+        }
+    }
+
+    public String format(Comparable<?> value) {
+        return value instanceof Date ? String.valueOf(((Date) value).getTime()) : String.valueOf(value);
+    }
+
+    public Comparable<?> parse(String value) {
+        switch (this) {
+            case USERNAME: return value;
+            case JOIN_DATE: return new Date(Long.parseLong(value));
+            default: return Long.valueOf(value);
+        }
+    }
+
+    public static UserSortField fromParameter(String parameter) {
+        for(UserSortField field : values()) {
+            if(field.attribute.equalsIgnoreCase(parameter) || field.name().equalsIgnoreCase(parameter)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package com.hardi.Server.domain;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Date;
+import java.util.List;
+
+public class VerifiedToken {
+
+    private final String subject;
+
+    private final Long userId;
+
+    private final int tokenVersion;
+
+    private final int permissions;
+
+    private final Date expiresAt;
+
+    private final String keyId; //kid of the token, null when it names none
+
+    public VerifiedToken(String subject, Long userId, int tokenVersion, int permissions, Date expiresAt, String keyId) {
+        this.subject = subject;
+        this.userId = userId;
+        this.tokenVersion = tokenVersion;
+        this.permissions = permissions;
+        this.expiresAt = expiresAt;
+        this.keyId = keyId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public int getPermissions() {
+        return permissions;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return Permission.toAuthorities(permissions); //Shared immutable list
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt == null || expiresAt.getTime() <= now;
+    }
+}
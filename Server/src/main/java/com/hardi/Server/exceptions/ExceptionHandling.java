@@ -4,6 +4,7 @@ import com.auth0.jwt.exceptions.TokenExpiredException;
 import com.hardi.Server.domain.HttpResponse;
 import com.hardi.Server.exceptions.domain.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -16,7 +17,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.server.MethodNotAllowedException;
 
-import javax.persistence.NoResultException;
+import jakarta.persistence.NoResultException;
 import java.io.IOException;
 import java.util.Objects;
 
@@ -77,6 +78,36 @@ public class ExceptionHandling {
         return createHttpResponse(HttpStatus.BAD_REQUEST, exception.getMessage());
     }
 
+    @ExceptionHandler(InvalidListQueryException.class)
+    public ResponseEntity<HttpResponse> invalidListQueryException(InvalidListQueryException exception) {
+        return createHttpResponse(HttpStatus.BAD_REQUEST, exception.getMessage());
+    }
+
+    @ExceptionHandler(InvalidUserFileException.class)
+    public ResponseEntity<HttpResponse> invalidUserFileException(InvalidUserFileException exception) {
+        return createHttpResponse(HttpStatus.BAD_REQUEST, exception.getMessage());
+    }
+
+    @ExceptionHandler(UserVersionMismatchException.class)
+    public ResponseEntity<HttpResponse> userVersionMismatchException(UserVersionMismatchException exception) {
+        return createHttpResponse(HttpStatus.PRECONDITION_FAILED, exception.getMessage());
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<HttpResponse> optimisticLockingFailureException() {
+        return createHttpResponse(HttpStatus.CONFLICT, USER_VERSION_MISMATCH); //Concurrent write without If-Match
+    }
+
+    @ExceptionHandler(TooManyLoginAttemptsException.class)
+    public ResponseEntity<HttpResponse> tooManyLoginAttemptsException(TooManyLoginAttemptsException exception) {
+        return createHttpResponse(HttpStatus.TOO_MANY_REQUESTS, exception.getMessage());
+    }
+
+    @ExceptionHandler(PasswordHashingUnavailableException.class)
+    public ResponseEntity<HttpResponse> passwordHashingUnavailableException(PasswordHashingUnavailableException exception) {
+        log.warn(exception.getMessage());
+        return createHttpResponse(HttpStatus.SERVICE_UNAVAILABLE, exception.getMessage());
+    }
 
     @ExceptionHandler(MethodNotAllowedException.class)
     public ResponseEntity<HttpResponse> methodIsNotAllowed() {
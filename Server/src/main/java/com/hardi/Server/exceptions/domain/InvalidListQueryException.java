@@ -0,0 +1,8 @@
+package com.hardi.Server.exceptions.domain;
+
+public class InvalidListQueryException extends Exception {
+
+    public InvalidListQueryException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.hardi.Server.exceptions.domain;
+
+public class InvalidUserFileException extends Exception {
+
+    public InvalidUserFileException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.hardi.Server.exceptions.domain;
+
+public class PasswordHashingUnavailableException extends RuntimeException {
+
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+}
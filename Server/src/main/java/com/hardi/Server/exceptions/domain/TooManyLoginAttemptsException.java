@@ -0,0 +1,8 @@
+package com.hardi.Server.exceptions.domain;
+
+public class TooManyLoginAttemptsException extends Exception {
+
+    public TooManyLoginAttemptsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.hardi.Server.exceptions.domain;
+
+public class UserVersionMismatchException extends Exception {
+
+    public UserVersionMismatchException(String message) {
+        super(message);
+    }
+}
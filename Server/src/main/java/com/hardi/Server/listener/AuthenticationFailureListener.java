@@ -4,6 +4,7 @@ import com.hardi.Server.service.LoginAttemptService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -19,9 +20,12 @@ public class AuthenticationFailureListener {
     @EventListener
     public void onAuthenticationFailure(AuthenticationFailureBadCredentialsEvent event) {
         Object principal = event.getAuthentication().getPrincipal();
+        Object details = event.getAuthentication().getDetails();
         if(principal instanceof String) {
             String username = (String) event.getAuthentication().getPrincipal();
-            loginAttemptService.addUserToLoginAttemptCache(username);
+            String ipAddress = details instanceof WebAuthenticationDetails ? ((WebAuthenticationDetails) details).getRemoteAddress()
+                    : details instanceof String ? (String) details : null; //The reactive login passes the address itself
+            loginAttemptService.addUserToLoginAttemptCache(username, ipAddress);
         }
     }
 }
@@ -0,0 +1,21 @@
+package com.hardi.Server.repository;
+
+import com.hardi.Server.domain.EmailOutboxMessage;
+import com.hardi.Server.domain.EmailStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.LockModeType;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE) //Held only while the batch is claimed, another node waits instead of claiming the same rows
+    List<EmailOutboxMessage> findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(EmailStatus status, Date now, Pageable pageable);
+
+    long countByStatus(EmailStatus status);
+}
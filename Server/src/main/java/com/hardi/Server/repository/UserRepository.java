@@ -2,14 +2,39 @@ package com.hardi.Server.repository;
 
 import com.hardi.Server.domain.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
 
     User findUserByUsername(String username);
 
     User findUserByEmail(String email);
 
     void deleteByUsername(String username);
+
+    List<User> findByUsernameIn(Collection<String> usernames);
+
+    List<User> findByUserIdIn(Collection<String> userIds);
+
+    @Query("SELECT u.username FROM User u WHERE u.username IN :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Query("SELECT u.email FROM User u WHERE u.email IN :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+
+    //Raises the version by hand, bulk updates bypass the entity's optimistic lock
+    @Modifying
+    @Query("UPDATE User u SET u.isNotLocked = :notLocked, u.tokenVersion = :tokenVersion, u.version = u.version + 1 WHERE u.id = :id")
+    int updateLockState(@Param("id") Long id, @Param("notLocked") boolean notLocked, @Param("tokenVersion") int tokenVersion);
 }
@@ -0,0 +1,16 @@
+package com.hardi.Server.repository;
+
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserListQuery;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface UserRepositoryCustom {
+
+    List<User> findPage(UserListQuery query, int maxResults);
+
+    Stream<User> streamAll(UserListQuery query);
+
+    String getListVersion(UserListQuery query);
+}
@@ -0,0 +1,119 @@
+package com.hardi.Server.repository;
+
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserSortField;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class UserRepositoryImpl implements UserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${user.list.stream-fetch-size:-2147483648}") //Integer.MIN_VALUE makes MySQL Connector/J stream row by row
+    private int streamFetchSize;
+
+    @Override
+    public List<User> findPage(UserListQuery query, int maxResults) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<User> criteria = builder.createQuery(User.class);
+        Root<User> root = criteria.from(User.class);
+
+        List<Predicate> predicates = getFilters(builder, root, query);
+        if(query.hasCursor()) {
+            predicates.add(getKeysetPredicate(builder, root, query));
+        }
+        criteria.where(predicates.toArray(new Predicate[0])).orderBy(getOrders(builder, root, query));
+
+        return entityManager.createQuery(criteria)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    @Override
+    public Stream<User> streamAll(UserListQuery query) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<User> criteria = builder.createQuery(User.class);
+        Root<User> root = criteria.from(User.class);
+        criteria.where(getFilters(builder, root, query).toArray(new Predicate[0])).orderBy(getOrders(builder, root, query));
+
+        return entityManager.createQuery(criteria)
+                .setHint(QueryHints.HINT_FETCH_SIZE, streamFetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .map(user -> {
+                    entityManager.detach(user); //Keep the persistence context from growing with the result
+                    return user;
+                });
+    }
+
+    /**
+     * Changes with every insert, delete, versioned update and login among the filtered users, whatever
+     * the sort or page. Reads a few columns instead of building the list.
+     */
+    @Override
+    public String getListVersion(UserListQuery query) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> criteria = builder.createQuery(Object[].class);
+        Root<User> root = criteria.from(User.class);
+        criteria.multiselect(builder.count(root), builder.max(root.<Long>get("id")), builder.sum(root.<Long>get("version")),
+                        builder.greatest(root.<Date>get("lastLoginDate")))
+                .where(getFilters(builder, root, query).toArray(new Predicate[0]));
+
+        Object[] aggregate = entityManager.createQuery(criteria).getSingleResult();
+        long lastLogin = aggregate[3] == null ? 0 : ((Date) aggregate[3]).getTime();
+        return Long.toHexString(toLong(aggregate[0])) + "-" + Long.toHexString(toLong(aggregate[1]))
+                + "-" + Long.toHexString(toLong(aggregate[2])) + "-" + Long.toHexString(lastLogin);
+    }
+
+    private List<Predicate> getFilters(CriteriaBuilder builder, Root<User> root, UserListQuery query) {
+        List<Predicate> predicates = new ArrayList<>();
+        if(query.getRole() != null) {
+            predicates.add(builder.equal(root.get("role"), query.getRole()));
+        }
+        if(query.getActive() != null) {
+            predicates.add(builder.equal(root.get("isActive"), query.getActive()));
+        }
+        if(query.getNotLocked() != null) {
+            predicates.add(builder.equal(root.get("isNotLocked"), query.getNotLocked()));
+        }
+        return predicates;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate getKeysetPredicate(CriteriaBuilder builder, Root<User> root, UserListQuery query) {
+        Path<Long> id = root.get("id");
+        Predicate afterId = query.isAscending() ? builder.greaterThan(id, query.getCursorId()) : builder.lessThan(id, query.getCursorId());
+        if(query.getSortField() == UserSortField.ID) {
+            return afterId;
+        }
+        //(sortValue, id) > (cursorValue, cursorId), the id breaks ties between equal sort values
+        Path<Comparable> sortValue = root.get(query.getSortField().getAttribute());
+        Comparable cursorValue = query.getCursorValue();
+        Predicate afterValue = query.isAscending() ? builder.greaterThan(sortValue, cursorValue) : builder.lessThan(sortValue, cursorValue);
+        return builder.or(afterValue, builder.and(builder.equal(sortValue, cursorValue), afterId));
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue(); //MAX and SUM are null without rows
+    }
+
+    private List<Order> getOrders(CriteriaBuilder builder, Root<User> root, UserListQuery query) {
+        List<Order> orders = new ArrayList<>();
+        if(query.getSortField() != UserSortField.ID) {
+            Path<Object> sortValue = root.get(query.getSortField().getAttribute());
+            orders.add(query.isAscending() ? builder.asc(sortValue) : builder.desc(sortValue));
+        }
+        orders.add(query.isAscending() ? builder.asc(root.get("id")) : builder.desc(root.get("id")));
+        return orders;
+    }
+}
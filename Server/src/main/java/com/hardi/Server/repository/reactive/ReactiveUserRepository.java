@@ -0,0 +1,16 @@
+package com.hardi.Server.repository.reactive;
+
+import com.hardi.Server.domain.User;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking reads of the user table for the reactive profile, writes keep going through
+ * {@link com.hardi.Server.service.UserService} and JPA.
+ */
+@Repository
+public interface ReactiveUserRepository extends R2dbcRepository<User, Long>, ReactiveUserRepositoryCustom {
+
+    Mono<User> findUserByUsername(String username);
+}
@@ -0,0 +1,12 @@
+package com.hardi.Server.repository.reactive;
+
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserListQuery;
+import reactor.core.publisher.Flux;
+
+public interface ReactiveUserRepositoryCustom {
+
+    Flux<User> findPage(UserListQuery query, int maxResults);
+
+    Flux<User> streamAll(UserListQuery query);
+}
@@ -0,0 +1,80 @@
+package com.hardi.Server.repository.reactive;
+
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserSortField;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import reactor.core.publisher.Flux;
+
+/**
+ * Same filters, ordering and keyset predicate as the JPA {@code UserRepositoryImpl}, so both stacks
+ * return the same pages for the same cursor.
+ */
+public class ReactiveUserRepositoryImpl implements ReactiveUserRepositoryCustom {
+
+    private final R2dbcEntityTemplate template;
+
+    public ReactiveUserRepositoryImpl(R2dbcEntityTemplate template) {
+        this.template = template;
+    }
+
+    @Override
+    public Flux<User> findPage(UserListQuery query, int maxResults) {
+        Criteria criteria = getFilters(query);
+        if(query.hasCursor()) {
+            criteria = criteria.and(getKeysetCriteria(query));
+        }
+        return template.select(User.class)
+                .matching(Query.query(criteria).sort(getSort(query)).limit(maxResults))
+                .all();
+    }
+
+    @Override
+    public Flux<User> streamAll(UserListQuery query) {
+        //Rows are emitted as the driver reads them, demand from the response limits how far it reads ahead
+        return template.select(User.class)
+                .matching(Query.query(getFilters(query)).sort(getSort(query)))
+                .all();
+    }
+
+    private Criteria getFilters(UserListQuery query) {
+        Criteria criteria = Criteria.empty();
+        if(query.getRole() != null) {
+            criteria = criteria.and("role").is(query.getRole());
+        }
+        if(query.getActive() != null) {
+            criteria = criteria.and("isActive").is(query.getActive());
+        }
+        if(query.getNotLocked() != null) {
+            criteria = criteria.and("isNotLocked").is(query.getNotLocked());
+        }
+        return criteria;
+    }
+
+    private Criteria getKeysetCriteria(UserListQuery query) {
+        Criteria afterId = query.isAscending()
+                ? Criteria.where("id").greaterThan(query.getCursorId())
+                : Criteria.where("id").lessThan(query.getCursorId());
+        if(query.getSortField() == UserSortField.ID) {
+            return afterId;
+        }
+        //(sortValue, id) > (cursorValue, cursorId), the id breaks ties between equal sort values
+        String sortValue = query.getSortField().getAttribute();
+        Object cursorValue = query.getCursorValue();
+        Criteria afterValue = query.isAscending()
+                ? Criteria.where(sortValue).greaterThan(cursorValue)
+                : Criteria.where(sortValue).lessThan(cursorValue);
+        return afterValue.or(Criteria.where(sortValue).is(cursorValue).and(afterId));
+    }
+
+    private Sort getSort(UserListQuery query) {
+        Sort.Direction direction = query.isAscending() ? Sort.Direction.ASC : Sort.Direction.DESC;
+        if(query.getSortField() == UserSortField.ID) {
+            return Sort.by(direction, "id");
+        }
+        return Sort.by(direction, query.getSortField().getAttribute(), "id");
+    }
+}
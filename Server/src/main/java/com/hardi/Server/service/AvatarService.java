@@ -0,0 +1,102 @@
+package com.hardi.Server.service;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Renders the default profile image of a user as a symmetric 5x5 identicon derived from the username.
+ * The same username always gives the same image, so rendered PNGs are cached and can be cached by
+ * browsers indefinitely.
+ */
+@Service
+public class AvatarService implements MeterBinder {
+
+    private static final int GRID_SIZE = 5;
+
+    private static final String RENDER_VERSION = "identicon-v1"; //Change when the drawing changes, it is part of the ETag
+
+    private final int imageSize;
+
+    private final LoadingCache<String, byte[]> avatars;
+
+    public AvatarService(@Value("${avatar.size:120}") int imageSize,
+                         @Value("${avatar.cache.maximum-size:5000}") long maximumSize) {
+        this.imageSize = imageSize - imageSize % (GRID_SIZE + 1); //Whole pixels per cell, half a cell of margin on each side
+        //LoadingCache loads a key once, concurrent requests for the same username wait for that render
+        this.avatars = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<String, byte[]>() {
+                    @Override
+                    public byte[] load(String username) {
+                        return render(username);
+                    }
+                });
+    }
+
+    public byte[] getAvatar(String username) {
+        return avatars.getUnchecked(username);
+    }
+
+    public String getETag(String username) {
+        return Hashing.sha256().hashString(RENDER_VERSION + imageSize + username, StandardCharsets.UTF_8).toString().substring(0, 32);
+    }
+
+    public long getCachedAvatarCount() {
+        return avatars.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, avatars, "avatars");
+    }
+
+    private byte[] render(String username) {
+        byte[] hash = Hashing.sha256().hashString(username, StandardCharsets.UTF_8).asBytes();
+        float hue = ((hash[0] & 0xFF) << 8 | (hash[1] & 0xFF)) / 65536f;
+        Color foreground = Color.getHSBColor(hue, 0.45f + (hash[2] & 0xFF) / 1020f, 0.55f + (hash[3] & 0xFF) / 1275f);
+        Color background = new Color(240, 240, 240);
+
+        int cell = imageSize / (GRID_SIZE + 1);
+        int margin = cell / 2;
+        BufferedImage image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(background);
+            graphics.fillRect(0, 0, imageSize, imageSize);
+            graphics.setColor(foreground);
+            for(int row = 0; row < GRID_SIZE; row++) {
+                for(int column = 0; column <= GRID_SIZE / 2; column++) {
+                    if((hash[4 + row * 3 + column] & 1) == 1) { //Left half decides, right half mirrors it
+                        graphics.fillRect(margin + column * cell, margin + row * cell, cell, cell);
+                        graphics.fillRect(margin + (GRID_SIZE - 1 - column) * cell, margin + row * cell, cell, cell);
+                    }
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "png", outputStream);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
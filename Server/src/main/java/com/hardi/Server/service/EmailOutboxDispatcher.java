@@ -0,0 +1,264 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.EmailOutboxMessage;
+import com.hardi.Server.domain.EmailStatus;
+import com.hardi.Server.repository.EmailOutboxRepository;
+import com.hardi.Server.utils.EmailBodyCipher;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.EmailConstants.*;
+import static com.hardi.Server.utils.MetricsConstants.*;
+
+/**
+ * Drains the email outbox in batches over one SMTP connection that is kept open between batches.
+ * Failed messages are retried with exponential backoff and marked DEAD after the last attempt.
+ * <p>
+ * A batch is claimed in a short transaction that pushes its next attempt past the claim timeout,
+ * sent with no transaction or row lock held, and its results are written in a second transaction:
+ * sent messages are deleted, so the encrypted passwords they carry do not outlive the send.
+ * A node that dies while sending leaves the claimed messages to be picked up again after the timeout.
+ * <p>
+ * The scheduled jobs share spring.task.scheduling.pool, and one drain stops claiming batches after
+ * email.outbox.max-drain-time, so a slow SMTP server delays neither the other jobs nor the next poll for long.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "email.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class EmailOutboxDispatcher {
+
+    private static final int MAXIMUM_ERROR_LENGTH = 500;
+
+    private final EmailOutboxRepository emailOutboxRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final EmailBodyCipher emailBodyCipher;
+
+    private final Session session;
+
+    private final String protocol;
+
+    private final String host;
+
+    private final int port;
+
+    private final String username;
+
+    private final String password;
+
+    private final String fromEmail;
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final long retryBackoff;
+
+    private final long maxRetryBackoff;
+
+    private final long claimTimeout;
+
+    private final long maxDrainTime;
+
+    private final Timer sentTimer;
+
+    private final Timer failedTimer;
+
+    private Transport transport; //Only touched by the scheduler thread
+
+    public EmailOutboxDispatcher(EmailOutboxRepository emailOutboxRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 EmailBodyCipher emailBodyCipher,
+                                 @Value("${email.smtp.protocol:smtps}") String protocol,
+                                 @Value("${email.smtp.host:smtp.gmail.com}") String host,
+                                 @Value("${email.smtp.port:465}") int port,
+                                 @Value("${email.smtp.username:}") String username,
+                                 @Value("${email.smtp.password:}") String password,
+                                 @Value("${email.smtp.starttls:true}") boolean startTls,
+                                 @Value("${email.smtp.timeout:10000}") int timeout,
+                                 @Value("${email.from:}") String fromEmail,
+                                 @Value("${email.outbox.batch-size:50}") int batchSize,
+                                 @Value("${email.outbox.max-attempts:8}") int maxAttempts,
+                                 @Value("${email.outbox.retry-backoff:30000}") long retryBackoff,
+                                 @Value("${email.outbox.max-retry-backoff:3600000}") long maxRetryBackoff,
+                                 @Value("${email.outbox.claim-timeout:300000}") long claimTimeout,
+                                 @Value("${email.outbox.max-drain-time:30000}") long maxDrainTime,
+                                 MeterRegistry meterRegistry) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.emailBodyCipher = emailBodyCipher;
+        this.protocol = protocol;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.fromEmail = fromEmail;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        this.claimTimeout = claimTimeout;
+        this.maxDrainTime = maxDrainTime;
+        this.session = createEmailSession(StringUtils.isNotEmpty(username), startTls, timeout);
+        this.sentTimer = Timer.builder(EMAIL_SEND).description("SMTP send including connecting").tag(OUTCOME, "sent").register(meterRegistry);
+        this.failedTimer = Timer.builder(EMAIL_SEND).description("SMTP send including connecting").tag(OUTCOME, "failed").register(meterRegistry);
+        Gauge.builder(EMAIL_OUTBOX, this, EmailOutboxDispatcher::getPendingCount).tag("status", "pending").register(meterRegistry);
+        Gauge.builder(EMAIL_OUTBOX, this, EmailOutboxDispatcher::getDeadCount).tag("status", "dead").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval:2000}")
+    public void dispatch() {
+        long deadline = System.currentTimeMillis() + maxDrainTime;
+        int sent;
+        do {
+            sent = dispatchBatch();
+        } while (sent == batchSize && System.currentTimeMillis() < deadline); //A full batch means more messages may be waiting
+    }
+
+    private int dispatchBatch() {
+        Date now = new Date();
+        List<EmailOutboxMessage> messages = transactionTemplate.execute(status -> claimBatch(now));
+        if(messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        List<EmailOutboxMessage> sent = new ArrayList<>();
+        List<EmailOutboxMessage> failed = new ArrayList<>();
+        for(EmailOutboxMessage message : messages) {
+            try {
+                send(message); //Outside any transaction, a slow SMTP server holds no lock or connection
+                sent.add(message);
+            } catch (MessagingException | IllegalStateException e) {
+                scheduleRetry(message, e, now);
+                failed.add(message);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if(!sent.isEmpty()) {
+                emailOutboxRepository.deleteAllInBatch(sent);
+            }
+            emailOutboxRepository.saveAll(failed);
+        });
+        return messages.size();
+    }
+
+    private List<EmailOutboxMessage> claimBatch(Date now) {
+        List<EmailOutboxMessage> messages = emailOutboxRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                EmailStatus.PENDING, now, PageRequest.of(0, batchSize));
+        Date claimedUntil = new Date(now.getTime() + claimTimeout);
+        for(EmailOutboxMessage message : messages) {
+            message.setNextAttemptAt(claimedUntil); //Other nodes skip it until then
+        }
+        emailOutboxRepository.saveAll(messages);
+        return messages;
+    }
+
+    private void send(EmailOutboxMessage outboxMessage) throws MessagingException {
+        Message message = createEmail(outboxMessage);
+        long start = System.nanoTime();
+        Transport connectedTransport = null;
+        try {
+            connectedTransport = getConnectedTransport();
+            connectedTransport.sendMessage(message, message.getAllRecipients());
+            sentTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (MessagingException e) {
+            failedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if(connectedTransport != null && !connectedTransport.isConnected()) {
+                closeTransport(); //Reconnect with the next message
+            }
+            throw e;
+        }
+    }
+
+    private void scheduleRetry(EmailOutboxMessage message, Exception exception, Date now) {
+        int attempts = message.getAttempts() + 1;
+        message.setAttempts(attempts);
+        message.setLastError(StringUtils.abbreviate(String.valueOf(exception.getMessage()), MAXIMUM_ERROR_LENGTH));
+        if(attempts >= maxAttempts) {
+            message.setStatus(EmailStatus.DEAD);
+            message.setBody(null);
+            log.error("Email " + message.getId() + " to " + message.getRecipient() + " moved to dead letters after " + attempts + " attempts: " + exception.getMessage());
+        } else {
+            long backoff = Math.min(maxRetryBackoff, retryBackoff << Math.min(attempts - 1, 20));
+            message.setNextAttemptAt(new Date(now.getTime() + backoff));
+            log.warn("Email " + message.getId() + " could not be sent, retrying in " + backoff + " ms: " + exception.getMessage());
+        }
+    }
+
+    private Transport getConnectedTransport() throws MessagingException {
+        if(transport == null || !transport.isConnected()) {
+            closeTransport();
+            transport = session.getTransport(protocol);
+            transport.connect(host, port, StringUtils.defaultIfEmpty(username, null), StringUtils.defaultIfEmpty(password, null));
+        }
+        return transport;
+    }
+
+    private Message createEmail(EmailOutboxMessage outboxMessage) throws MessagingException {
+        Message message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(fromEmail));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(outboxMessage.getRecipient(), false));
+        message.setRecipients(Message.RecipientType.CC, InternetAddress.parse(CC_EMAIL));
+        message.setSubject(outboxMessage.getSubject());
+        message.setText(emailBodyCipher.decrypt(outboxMessage.getBody()));
+        message.setSentDate(new Date());
+        message.saveChanges();
+        return message;
+    }
+
+    private Session createEmailSession(boolean auth, boolean startTls, int timeout) {
+        Properties properties = new Properties(); //Not System.getProperties(), the session is built once and owned here
+        properties.put(String.format(SMTP_HOST, protocol), host);
+        properties.put(String.format(SMTP_PORT, protocol), port);
+        properties.put(String.format(SMTP_AUTH, protocol), auth);
+        properties.put(String.format(SMTP_STARTTLS_ENABLE, protocol), startTls);
+        properties.put(String.format(SMTP_STARTTLS_REQUIRED, protocol), startTls);
+        properties.put(String.format(SMTP_CONNECTION_TIMEOUT, protocol), timeout);
+        properties.put(String.format(SMTP_TIMEOUT, protocol), timeout);
+        properties.put(String.format(SMTP_WRITE_TIMEOUT, protocol), timeout);
+        return Session.getInstance(properties, null);
+    }
+
+    public long getPendingCount() {
+        return emailOutboxRepository.countByStatus(EmailStatus.PENDING);
+    }
+
+    public long getDeadCount() {
+        return emailOutboxRepository.countByStatus(EmailStatus.DEAD);
+    }
+
+    @PreDestroy
+    public void closeTransport() {
+        if(transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.warn("Could not close SMTP connection: " + e.getMessage());
+            }
+            transport = null;
+        }
+    }
+}
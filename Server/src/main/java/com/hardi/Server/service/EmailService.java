@@ -1,48 +1,81 @@
 package com.hardi.Server.service;
 
-import com.sun.mail.smtp.SMTPTransport;
+import com.hardi.Server.domain.EmailOutboxMessage;
+import com.hardi.Server.domain.EmailStatus;
+import com.hardi.Server.repository.EmailOutboxRepository;
+import com.hardi.Server.utils.EmailBodyCipher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.mail.Message;
-import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
+import java.sql.Timestamp;
 import java.util.Date;
-import java.util.Properties;
+import java.util.List;
 
-import static com.hardi.Server.utils.EmailConstants.*;
+import static com.hardi.Server.utils.EmailConstants.EMAIL_SUBJECT;
+import static com.hardi.Server.utils.EmailConstants.NEW_PASSWORD_EMAIL_TEXT;
 
 @Service
 public class EmailService {
 
-    public void sendNewPasswordEmail(String firstName, String password, String email) throws MessagingException {
-        Message message = createEmail(firstName, password, email);
-        SMTPTransport smtpTransport = (SMTPTransport) getEmailSession().getTransport(SIMPLE_MAIL_TRANSFER_PROTOCOL);
-        smtpTransport.connect(GMAIL_SMTP_SERVER, USERNAME, PASSWORD);
-        smtpTransport.sendMessage(message, message.getAllRecipients());
-        smtpTransport.close();
+    private static final String INSERT_MESSAGE = "INSERT INTO email_outbox (recipient, subject, body, status, attempts, next_attempt_at, created_at) "
+            + "VALUES (?, ?, ?, ?, 0, ?, ?)";
+
+    private EmailOutboxRepository emailOutboxRepository;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private EmailBodyCipher emailBodyCipher;
+
+    @Autowired
+    public EmailService(EmailOutboxRepository emailOutboxRepository, JdbcTemplate jdbcTemplate, EmailBodyCipher emailBodyCipher) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.emailBodyCipher = emailBodyCipher;
+    }
+
+    /**
+     * Stores the email in the outbox as part of the caller's transaction, EmailOutboxDispatcher sends it
+     * once the transaction commits. A rolled back registration therefore never sends a password.
+     * The body holding the password is stored encrypted and the row is deleted once sent.
+     */
+    @Transactional
+    public void sendNewPasswordEmail(String firstName, String password, String email) {
+        emailOutboxRepository.save(newPasswordEmail(firstName, password, email));
     }
 
-    private Message createEmail(String firstName, String password, String email) throws MessagingException {
-        Message message = new MimeMessage(getEmailSession());
-        message.setFrom(new InternetAddress(FROM_EMAIL));
-        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email, false));
-        message.setRecipients(Message.RecipientType.CC, InternetAddress.parse(CC_EMAIL));
+    /**
+     * Builds the message sendNewPasswordEmail stores, for callers that store many with sendAll.
+     */
+    public EmailOutboxMessage newPasswordEmail(String firstName, String password, String email) {
+        Date now = new Date();
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setRecipient(email);
         message.setSubject(EMAIL_SUBJECT);
-        message.setText("Hello " + firstName + ", \n \n Your new account password is: " + password + "\n \n The Support Team");
-        message.setSentDate(new Date());
-        message.saveChanges();
+        message.setBody(emailBodyCipher.encrypt(String.format(NEW_PASSWORD_EMAIL_TEXT, firstName, password)));
+        message.setStatus(EmailStatus.PENDING);
+        message.setCreatedAt(now);
+        message.setNextAttemptAt(now);
         return message;
     }
 
-    private Session getEmailSession() {
-        Properties properties = System.getProperties();
-        properties.put(SMTP_HOST, GMAIL_SMTP_SERVER);
-        properties.put(SMTP_AUTH, true);
-        properties.put(SMTP_PORT, DEFAULT_PORT);
-        properties.put(SMTP_STARTTLS_ENABLE, true);
-        properties.put(SMTP_STARTTLS_REQUIRED, true);
-        return Session.getInstance(properties, null);
+    /**
+     * Stores the messages like sendNewPasswordEmail, with one JDBC batch: the outbox ids come from an
+     * identity column, which keeps hibernate from batching the inserts.
+     */
+    @Transactional
+    public void sendAll(List<EmailOutboxMessage> messages) {
+        if(messages.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE, messages, messages.size(), (statement, message) -> {
+            statement.setString(1, message.getRecipient());
+            statement.setString(2, message.getSubject());
+            statement.setString(3, message.getBody());
+            statement.setString(4, message.getStatus().name());
+            statement.setTimestamp(5, new Timestamp(message.getNextAttemptAt().getTime()));
+            statement.setTimestamp(6, new Timestamp(message.getCreatedAt().getTime()));
+        });
     }
 }
@@ -0,0 +1,282 @@
+package com.hardi.Server.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts shared by all nodes in the login_attempt table. Failures and resets are only added to local
+ * maps on the login path and written with periodic batches; reads combine a briefly cached row with
+ * the local, not yet written changes. Rows hold the same sliding window as the in-memory store: the
+ * current and previous window's counts.
+ * <p>
+ * A flush swaps the pending changes out under a short lock and writes them without holding it, so
+ * logins never wait on the database. The upsert is the MySQL dialect, which H2 accepts in MySQL mode.
+ * <p>
+ * Once written, the flushed keys are dropped from the near cache and the flush generation is raised in
+ * the same lock section that stops counting them locally. A row read while a flush was writing may
+ * predate it, so it is only cached when the generation did not change during the read.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "login-attempts.store", havingValue = "jdbc")
+public class JdbcLoginAttemptStore implements LoginAttemptStore {
+
+    private static final String USERNAME_KEY = "user:";
+
+    private static final String IP_ADDRESS_KEY = "ip:";
+
+    //MySQL assigns left to right, previous_count must read current_count before it changes. H2 reads the old row throughout
+    //and does not parse VALUES(...) - 1, hence window_number + 1
+    private static final String UPSERT_ATTEMPTS = "INSERT INTO login_attempt (attempt_key, window_number, current_count, previous_count) VALUES (?, ?, ?, 0) "
+            + "ON DUPLICATE KEY UPDATE "
+            + "previous_count = CASE WHEN window_number = VALUES(window_number) THEN previous_count WHEN window_number + 1 = VALUES(window_number) THEN current_count ELSE 0 END, "
+            + "current_count = CASE WHEN window_number = VALUES(window_number) THEN current_count + VALUES(current_count) ELSE VALUES(current_count) END, "
+            + "window_number = VALUES(window_number)";
+
+    private static final String SELECT_ATTEMPTS = "SELECT window_number, current_count, previous_count FROM login_attempt WHERE attempt_key = ?";
+
+    private static final String DELETE_ATTEMPTS = "DELETE FROM login_attempt WHERE attempt_key = ?";
+
+    private static final String PURGE_ATTEMPTS = "DELETE FROM login_attempt WHERE window_number < ?";
+
+    private final Object pendingLock = new Object();
+
+    private final Object flushLock = new Object();
+
+    private PendingWrites pending = new PendingWrites(); //Guarded by pendingLock
+
+    private PendingWrites writing = new PendingWrites(); //Being flushed, still counted by reads. Guarded by pendingLock
+
+    private long flushGeneration; //Raised when a flush stops counting its writes locally. Guarded by pendingLock
+
+    private final Cache<String, StoredAttempts> storedAttempts;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final long window;
+
+    private final int batchSize;
+
+    private final LongAdder writtenFailures = new LongAdder();
+
+    public JdbcLoginAttemptStore(JdbcTemplate jdbcTemplate,
+                                 @Value("${login-attempts.window:900000}") long window,
+                                 @Value("${login-attempts.jdbc.batch-size:500}") int batchSize,
+                                 @Value("${login-attempts.jdbc.read-ttl:1000}") long readTtl,
+                                 @Value("${login-attempts.jdbc.near-cache-size:100000}") long nearCacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.window = window;
+        this.batchSize = batchSize;
+        this.storedAttempts = CacheBuilder.newBuilder()
+                .expireAfterWrite(readTtl, TimeUnit.MILLISECONDS)
+                .maximumSize(nearCacheSize)
+                .build();
+    }
+
+    @Override
+    public void recordFailure(String username, String ipAddress) {
+        synchronized(pendingLock) {
+            if(username != null) {
+                pending.failures.merge(USERNAME_KEY + username, 1, Integer::sum);
+            }
+            if(ipAddress != null) {
+                pending.failures.merge(IP_ADDRESS_KEY + ipAddress, 1, Integer::sum);
+            }
+        }
+    }
+
+    @Override
+    public double getUsernameAttempts(String username) {
+        return getAttempts(USERNAME_KEY + username);
+    }
+
+    @Override
+    public double getIpAttempts(String ipAddress) {
+        return getAttempts(IP_ADDRESS_KEY + ipAddress);
+    }
+
+    @Override
+    public void resetUsername(String username) {
+        String key = USERNAME_KEY + username;
+        synchronized(pendingLock) {
+            pending.failures.remove(key);
+            pending.resets.add(key); //Deleted by the next flush, before the failures that follow it are added
+        }
+    }
+
+    /**
+     * Writes the resets and then the failures taken from the pending maps. Flushes run one at a time,
+     * so a reset is never overtaken by the failures that preceded it.
+     */
+    @Scheduled(fixedDelayString = "${login-attempts.jdbc.flush-interval:1000}")
+    public void flush() {
+        synchronized(flushLock) {
+            PendingWrites batch;
+            synchronized(pendingLock) {
+                if(pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new PendingWrites();
+                writing = batch;
+            }
+            List<Map.Entry<String, Integer>> failures = new ArrayList<>(batch.failures.entrySet());
+            long windowNumber = System.currentTimeMillis() / window;
+            try {
+                jdbcTemplate.batchUpdate(DELETE_ATTEMPTS, new ArrayList<>(batch.resets), batchSize, (statement, key) -> statement.setString(1, key));
+                jdbcTemplate.batchUpdate(UPSERT_ATTEMPTS, failures, batchSize, (statement, entry) -> {
+                    statement.setString(1, entry.getKey());
+                    statement.setLong(2, windowNumber);
+                    statement.setInt(3, entry.getValue());
+                });
+            } catch (DataAccessException e) {
+                log.error("Could not write login attempts, retrying with the next flush: " + e.getMessage());
+                synchronized(pendingLock) {
+                    pending = batch.followedBy(pending);
+                    writing = new PendingWrites();
+                }
+                return;
+            }
+            synchronized(pendingLock) {
+                //In the section that drops the local counts, so no read misses both them and the written row
+                batch.resets.forEach(storedAttempts::invalidate);
+                batch.failures.keySet().forEach(storedAttempts::invalidate);
+                writing = new PendingWrites();
+                flushGeneration++;
+            }
+            failures.forEach(entry -> writtenFailures.add(entry.getValue()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${login-attempts.jdbc.purge-interval:3600000}")
+    public void purge() {
+        int purged = jdbcTemplate.update(PURGE_ATTEMPTS, System.currentTimeMillis() / window - 1);
+        log.debug("Purged " + purged + " expired login attempt row(s)");
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public int getPendingCount() {
+        synchronized(pendingLock) {
+            return pending.failures.size();
+        }
+    }
+
+    public long getWrittenFailureCount() {
+        return writtenFailures.sum();
+    }
+
+    private double getAttempts(String key) {
+        int local;
+        long generation;
+        synchronized(pendingLock) {
+            generation = flushGeneration;
+            local = pending.failures.getOrDefault(key, 0);
+            if(pending.resets.contains(key)) {
+                return local; //The stored row is about to be deleted
+            }
+            local += writing.failures.getOrDefault(key, 0);
+            if(writing.resets.contains(key)) {
+                return local;
+            }
+        }
+        long now = System.currentTimeMillis();
+        StoredAttempts stored = storedAttempts.getIfPresent(key);
+        if(stored == null) {
+            try {
+                stored = loadAttempts(key);
+            } catch (DataAccessException e) {
+                log.warn("Could not read login attempts of " + key + ": " + e.getMessage());
+                return local; //Fails open to the attempts seen by this node
+            }
+            synchronized(pendingLock) {
+                if(generation == flushGeneration) {
+                    storedAttempts.put(key, stored); //Otherwise a flush may have written after the read, and stopped counting it locally
+                }
+            }
+        }
+        return stored.estimate(now, window) + local;
+    }
+
+    private StoredAttempts loadAttempts(String key) {
+        List<StoredAttempts> rows = jdbcTemplate.query(SELECT_ATTEMPTS, (resultSet, row) ->
+                new StoredAttempts(resultSet.getLong(1), resultSet.getInt(2), resultSet.getInt(3)), key);
+        return rows.isEmpty() ? StoredAttempts.NONE : rows.get(0);
+    }
+
+    /**
+     * Failures and resets not yet written. A key can be in both, the failures then came after the reset.
+     */
+    private static class PendingWrites {
+
+        private final Map<String, Integer> failures = new HashMap<>();
+
+        private final Set<String> resets = new HashSet<>();
+
+        private boolean isEmpty() {
+            return failures.isEmpty() && resets.isEmpty();
+        }
+
+        /**
+         * These writes and then the later ones, as one batch.
+         */
+        private PendingWrites followedBy(PendingWrites later) {
+            PendingWrites combined = new PendingWrites();
+            combined.resets.addAll(resets);
+            combined.resets.addAll(later.resets);
+            combined.failures.putAll(failures);
+            later.resets.forEach(combined.failures::remove);
+            later.failures.forEach((key, count) -> combined.failures.merge(key, count, Integer::sum));
+            return combined;
+        }
+    }
+
+    private static class StoredAttempts {
+
+        private static final StoredAttempts NONE = new StoredAttempts(0, 0, 0);
+
+        private final long windowNumber;
+
+        private final int currentCount;
+
+        private final int previousCount;
+
+        private StoredAttempts(long windowNumber, int currentCount, int previousCount) {
+            this.windowNumber = windowNumber;
+            this.currentCount = currentCount;
+            this.previousCount = previousCount;
+        }
+
+        private double estimate(long now, long window) {
+            long currentWindow = now / window;
+            double previousWeight = 1d - (double) (now % window) / window;
+            if(windowNumber == currentWindow) {
+                return currentCount + previousCount * previousWeight;
+            }
+            if(windowNumber == currentWindow - 1) {
+                return currentCount * previousWeight;
+            }
+            return 0;
+        }
+    }
+}
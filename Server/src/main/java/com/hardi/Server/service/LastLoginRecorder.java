@@ -0,0 +1,110 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps last login timestamps in memory and writes them with periodic JDBC batches,
+ * so a login never waits on a row write. Several logins of one user between two flushes
+ * are coalesced into a single UPDATE.
+ */
+@Service
+@Slf4j
+public class LastLoginRecorder {
+
+    private static final String UPDATE_LAST_LOGIN = "UPDATE user SET last_login_date = ?, last_login_date_display = ? WHERE id = ?";
+
+    private final ConcurrentHashMap<Long, LastLogin> pendingLogins = new ConcurrentHashMap<>();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int batchSize;
+
+    public LastLoginRecorder(JdbcTemplate jdbcTemplate, @Value("${user.last-login.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    public void recordLogin(User user) {
+        LastLogin login = new LastLogin(new Date(), user.getLastLoginDate());
+        //A login coalesced with a pending one displays the pending login as the previous one
+        pendingLogins.merge(user.getId(), login, (pending, current) -> new LastLogin(current.lastLoginDate, pending.lastLoginDate));
+    }
+
+    /**
+     * Copies a not yet flushed login into the given (detached) user so responses show the current values.
+     */
+    public void applyPendingLogin(User user) {
+        LastLogin login = user == null ? null : pendingLogins.get(user.getId());
+        if(login != null) {
+            user.setLastLoginDate(login.lastLoginDate);
+            user.setLastLoginDateDisplay(login.lastLoginDateDisplay);
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingLogins.size();
+    }
+
+    @Scheduled(fixedDelayString = "${user.last-login.max-staleness:10000}")
+    public void flush() {
+        if(pendingLogins.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, LastLogin>> batch = new ArrayList<>();
+        for(Long userId : pendingLogins.keySet()) {
+            LastLogin login = pendingLogins.remove(userId);
+            if(login != null) {
+                batch.add(new AbstractMap.SimpleImmutableEntry<>(userId, login));
+            }
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_LAST_LOGIN, batch, batchSize, (statement, entry) -> {
+                statement.setTimestamp(1, toTimestamp(entry.getValue().lastLoginDate));
+                statement.setTimestamp(2, toTimestamp(entry.getValue().lastLoginDateDisplay));
+                statement.setLong(3, entry.getKey());
+            });
+            log.debug("Flushed last login dates of " + batch.size() + " user(s)");
+        } catch (DataAccessException e) {
+            log.error("Could not flush last login dates, retrying with the next flush: " + e.getMessage());
+            for(Map.Entry<Long, LastLogin> entry : batch) {
+                pendingLogins.merge(entry.getKey(), entry.getValue(), (newer, failed) -> new LastLogin(newer.lastLoginDate, failed.lastLoginDate));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private Timestamp toTimestamp(Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    private static class LastLogin {
+
+        private final Date lastLoginDate;
+
+        private final Date lastLoginDateDisplay;
+
+        private LastLogin(Date lastLoginDate, Date lastLoginDateDisplay) {
+            this.lastLoginDate = lastLoginDate;
+            this.lastLoginDateDisplay = lastLoginDateDisplay;
+        }
+    }
+}
@@ -1,55 +1,93 @@
 package com.hardi.Server.service;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
-import static java.util.concurrent.TimeUnit.MINUTES;
+import static com.hardi.Server.utils.MetricsConstants.*;
 
+/**
+ * Failed login attempts per username and per client IP over a sliding window,
+ * counted by the configured LoginAttemptStore.
+ */
 @Service
-public class LoginAttemptService {
+public class LoginAttemptService implements MeterBinder {
 
-    private static final int MAXIMUM_NUMBER_OF_ATTEMPTS = 5;
+    private final LoginAttemptStore loginAttemptStore;
 
-    private static final int ATTEMPT_INCREMENT = 1;
+    private final int maxAttempts;
 
-    private LoadingCache<String, Integer> loginAttemptCache;
+    private final int maxAttemptsPerIp;
 
-    public LoginAttemptService() {
-        super();
-        loginAttemptCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(15, MINUTES)
-                .maximumSize(100)
-                .build(new CacheLoader<String, Integer>() {
-                    @Override
-                    public Integer load(String s) throws Exception {
-                        return 0;
-                    }
-                });
+    private final LongAdder failedAttempts = new LongAdder();
+
+    private final LongAdder blockedRequests = new LongAdder();
+
+    private final LongAdder lockouts = new LongAdder();
+
+    public LoginAttemptService(LoginAttemptStore loginAttemptStore,
+                               @Value("${login-attempts.max-attempts:5}") int maxAttempts,
+                               @Value("${login-attempts.max-attempts-per-ip:100}") int maxAttemptsPerIp) {
+        this.loginAttemptStore = loginAttemptStore;
+        this.maxAttempts = maxAttempts;
+        this.maxAttemptsPerIp = maxAttemptsPerIp;
     }
 
-    public void  evictUserFromLoginAttemptCache(String username) {
-        loginAttemptCache.invalidate(username);
+    public void evictUserFromLoginAttemptCache(String username) {
+        loginAttemptStore.resetUsername(username);
     }
 
     public void addUserToLoginAttemptCache(String username) {
-        int attempts = 0;
-        try {
-            attempts = ATTEMPT_INCREMENT + loginAttemptCache.get(username); //find num of attempts by unique key (username f.e.) and add + 1 attempt
-            loginAttemptCache.put(username, attempts);
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
+        addUserToLoginAttemptCache(username, null);
+    }
+
+    public void addUserToLoginAttemptCache(String username, String ipAddress) {
+        failedAttempts.increment();
+        loginAttemptStore.recordFailure(username, ipAddress);
+    }
+
+    /**
+     * True when the account has to be locked, only asked for accounts that are not locked yet.
+     */
+    public boolean hasExceededMaxAttempts(String username) {
+        boolean exceeded = loginAttemptStore.getUsernameAttempts(username) >= maxAttempts;
+        if(exceeded) {
+            lockouts.increment();
         }
+        return exceeded;
     }
 
-    public boolean hasExceededMaxAttempts (String username) {
-        try {
-            return loginAttemptCache.get(username) >= MAXIMUM_NUMBER_OF_ATTEMPTS;
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
+    /**
+     * True when the address failed too often to be let through to password checking at all.
+     */
+    public boolean isBlocked(String ipAddress) {
+        boolean blocked = ipAddress != null && loginAttemptStore.getIpAttempts(ipAddress) >= maxAttemptsPerIp;
+        if(blocked) {
+            blockedRequests.increment();
         }
+        return blocked;
+    }
+
+    public long getFailedAttemptCount() {
+        return failedAttempts.sum();
+    }
+
+    public long getBlockedRequestCount() {
+        return blockedRequests.sum();
+    }
+
+    public long getLockoutCount() {
+        return lockouts.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(LOGIN_FAILURES, failedAttempts, LongAdder::sum).description("Failed logins").register(registry);
+        FunctionCounter.builder(LOGIN_BLOCKED_REQUESTS, blockedRequests, LongAdder::sum).description("Logins refused with 429 for the client address").register(registry);
+        FunctionCounter.builder(LOGIN_LOCKOUTS, lockouts, LongAdder::sum).description("Accounts locked for too many failed logins").register(registry);
     }
 }
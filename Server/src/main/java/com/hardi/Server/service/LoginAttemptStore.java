@@ -0,0 +1,18 @@
+package com.hardi.Server.service;
+
+/**
+ * Where failed login attempts are counted. Counts are sliding over {@code login-attempts.window}
+ * and may be approximate, but never lower than the attempts actually recorded and not reset.
+ * Select the implementation with {@code login-attempts.store} (memory by default, jdbc to share
+ * the counts between nodes and keep them over restarts).
+ */
+public interface LoginAttemptStore {
+
+    void recordFailure(String username, String ipAddress);
+
+    double getUsernameAttempts(String username);
+
+    double getIpAttempts(String ipAddress);
+
+    void resetUsername(String username);
+}
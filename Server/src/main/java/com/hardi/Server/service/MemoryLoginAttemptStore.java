@@ -0,0 +1,61 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.utils.SlidingWindowCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-node counts in two fixed-size sliding window sketches, one keyed by username and one by
+ * client address. Memory is width x depth x 4 bytes per sketch however many keys are tried,
+ * so an attack cannot evict the counts of real users.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "login-attempts.store", havingValue = "memory", matchIfMissing = true)
+public class MemoryLoginAttemptStore implements LoginAttemptStore {
+
+    private final SlidingWindowCounter usernameAttempts;
+
+    private final SlidingWindowCounter ipAttempts;
+
+    public MemoryLoginAttemptStore(@Value("${login-attempts.window:900000}") long window,
+                                   @Value("${login-attempts.username.width:1048576}") int usernameWidth,
+                                   @Value("${login-attempts.ip.width:262144}") int ipWidth,
+                                   @Value("${login-attempts.depth:2}") int depth) {
+        this.usernameAttempts = new SlidingWindowCounter(usernameWidth, depth, window);
+        this.ipAttempts = new SlidingWindowCounter(ipWidth, depth, window);
+        log.info("Login attempt counters use " + getMemoryBytes() / 1024 + " KiB");
+    }
+
+    @Override
+    public void recordFailure(String username, String ipAddress) {
+        long now = System.currentTimeMillis();
+        if(username != null) {
+            usernameAttempts.increment(username, now);
+        }
+        if(ipAddress != null) {
+            ipAttempts.increment(ipAddress, now);
+        }
+    }
+
+    @Override
+    public double getUsernameAttempts(String username) {
+        return usernameAttempts.estimate(username, System.currentTimeMillis());
+    }
+
+    @Override
+    public double getIpAttempts(String ipAddress) {
+        return ipAttempts.estimate(ipAddress, System.currentTimeMillis());
+    }
+
+    @Override
+    public void resetUsername(String username) {
+        usernameAttempts.reset(username, System.currentTimeMillis());
+    }
+
+    public long getMemoryBytes() {
+        return usernameAttempts.getMemoryBytes() + ipAttempts.getMemoryBytes();
+    }
+}
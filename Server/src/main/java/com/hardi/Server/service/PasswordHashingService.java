@@ -0,0 +1,167 @@
+package com.hardi.Server.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hardi.Server.exceptions.domain.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hardi.Server.utils.ErrorMessageConstants.PASSWORD_HASHING_UNAVAILABLE;
+import static com.hardi.Server.utils.MetricsConstants.*;
+
+/**
+ * BCrypt encoder that runs every hash on its own bounded pool instead of the request thread.
+ * When the pool and its queue are full, or a hash waits longer than the timeout, callers get a
+ * PasswordHashingUnavailableException (503) instead of piling up on Tomcat's worker threads.
+ */
+@Service
+@Slf4j
+public class PasswordHashingService implements PasswordEncoder {
+
+    private final BCryptPasswordEncoder bCryptPasswordEncoder;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long timeoutMillis;
+
+    private final Timer encodeTimer;
+
+    private final Timer matchesTimer;
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public PasswordHashingService(@Value("${security.password.bcrypt-strength:10}") int strength,
+                                  @Value("${security.password.hashing.threads:0}") int threads,
+                                  @Value("${security.password.hashing.queue-capacity:64}") int queueCapacity,
+                                  @Value("${security.password.hashing.timeout:3000}") long timeoutMillis,
+                                  MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.bCryptPasswordEncoder = new BCryptPasswordEncoder(strength);
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("password-hashing-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.encodeTimer = Timer.builder(PASSWORD_HASHING).description("BCrypt time on the hashing pool").tag("operation", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder(PASSWORD_HASHING).description("BCrypt time on the hashing pool").tag("operation", "matches").register(meterRegistry);
+        Gauge.builder(PASSWORD_HASHING_QUEUE, this, PasswordHashingService::getQueueDepth).register(meterRegistry);
+        Gauge.builder(PASSWORD_HASHING_ACTIVE, this, PasswordHashingService::getActiveCount).register(meterRegistry);
+        FunctionCounter.builder(PASSWORD_HASHING_REJECTED, rejectedCount, LongAdder::sum).description("Hashes refused with 503").register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return hash(encodeTimer, () -> bCryptPasswordEncoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return hash(matchesTimer, () -> bCryptPasswordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return bCryptPasswordEncoder.upgradeEncoding(encodedPassword); //True when the stored cost is lower than the configured one
+    }
+
+    public Future<String> encodeAsync(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> bCryptPasswordEncoder.encode(rawPassword));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getHashCount() {
+        return encodeTimer.count() + matchesTimer.count();
+    }
+
+    public double getAverageHashMillis() {
+        long count = getHashCount();
+        return count == 0 ? 0 : (encodeTimer.totalTime(TimeUnit.MILLISECONDS) + matchesTimer.totalTime(TimeUnit.MILLISECONDS)) / count;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Encodes in order with at most maxInFlight hashes queued or running at a time, so a bulk caller keeps
+     * the pool busy without taking the queue space that logins rely on. 0 allows one hash per pool thread.
+     */
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords, int maxInFlight) {
+        int window = maxInFlight > 0 ? maxInFlight : executor.getMaximumPoolSize();
+        List<String> encodedPasswords = new ArrayList<>(rawPasswords.size());
+        Deque<Future<String>> inFlight = new ArrayDeque<>();
+        try {
+            for(CharSequence rawPassword : rawPasswords) {
+                if(inFlight.size() >= window) {
+                    encodedPasswords.add(await(inFlight.poll()));
+                }
+                inFlight.add(submit(encodeTimer, () -> bCryptPasswordEncoder.encode(rawPassword)));
+            }
+            while(!inFlight.isEmpty()) {
+                encodedPasswords.add(await(inFlight.poll()));
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true)); //Left over when a hash failed
+        }
+        return encodedPasswords;
+    }
+
+    private <T> T hash(Timer timer, Callable<T> task) {
+        return await(submit(timer, task));
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true); //Still queued hashes are dropped, running ones are interrupted
+            rejectedCount.increment();
+            throw new PasswordHashingUnavailableException(PASSWORD_HASHING_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException(PASSWORD_HASHING_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private <T> Future<T> submit(Timer timer, Callable<T> task) {
+        try {
+            return executor.submit(() -> timer.recordCallable(task)); //Time on the pool, queueing shows in the request timers
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            log.warn("Password hashing pool is saturated, queue depth: " + executor.getQueue().size());
+            throw new PasswordHashingUnavailableException(PASSWORD_HASHING_UNAVAILABLE);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,209 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.ImageSize;
+import com.hardi.Server.exceptions.domain.NotImageFileException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.FileConstants.*;
+import static com.hardi.Server.utils.MetricsConstants.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Validates uploaded profile images by their content, stores them as JPEG and produces the resized
+ * variants (see ImageSize) on a small background pool, so the upload request only pays for one encode.
+ */
+@Service
+@Slf4j
+public class ProfileImageProcessor {
+
+    private static final List<String> SUPPORTED_FORMATS = Arrays.asList("jpeg", "png", "gif");
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final float jpegQuality;
+
+    private final long maxPixels;
+
+    private final Timer originalWriteTimer;
+
+    private final Timer variantWriteTimer;
+
+    public ProfileImageProcessor(@Value("${image.processing.threads:2}") int threads,
+                                 @Value("${image.processing.queue-capacity:100}") int queueCapacity,
+                                 @Value("${image.processing.jpeg-quality:0.8}") float jpegQuality,
+                                 @Value("${image.processing.max-pixels:40000000}") long maxPixels,
+                                 MeterRegistry meterRegistry) {
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(threads);
+        this.executor.setMaxPoolSize(threads);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setThreadNamePrefix("image-processing-");
+        this.executor.initialize();
+        this.originalWriteTimer = Timer.builder(IMAGE_WRITE).description("Profile image writes to disk").tag("size", ImageSize.ORIGINAL.getPathName()).register(meterRegistry);
+        this.variantWriteTimer = Timer.builder(IMAGE_WRITE).description("Profile image writes to disk").tag("size", "variant").register(meterRegistry);
+        Gauge.builder(IMAGE_PROCESSING_QUEUE, this, ProfileImageProcessor::getQueueDepth).register(meterRegistry);
+    }
+
+    /**
+     * Checks that the upload decodes as a supported image, whatever content type the client sent.
+     */
+    public void validate(MultipartFile profileImage) throws IOException, NotImageFileException {
+        try (InputStream inputStream = profileImage.getInputStream();
+             ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = imageInputStream == null ? null : ImageIO.getImageReaders(imageInputStream);
+            if(readers == null || !readers.hasNext()) {
+                throw new NotImageFileException(profileImage.getOriginalFilename() + NOT_AN_IMAGE_FILE);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0); //Read from the header, nothing is decoded yet
+                if(!SUPPORTED_FORMATS.contains(format) || pixels <= 0 || pixels > maxPixels) {
+                    throw new NotImageFileException(profileImage.getOriginalFilename() + NOT_AN_IMAGE_FILE);
+                }
+            } catch (IOException e) {
+                throw new NotImageFileException(profileImage.getOriginalFilename() + NOT_AN_IMAGE_FILE);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Drops the variants of the previous image, until the new ones are written the original is served.
+     */
+    public void deleteVariants(String username) throws IOException {
+        for(ImageSize size : ImageSize.values()) {
+            if(size != ImageSize.ORIGINAL) {
+                Files.deleteIfExists(getVariantPath(username, size));
+            }
+        }
+    }
+
+    /**
+     * Re-encodes the upload as a JPEG at full size, so PNG and GIF uploads are served with the
+     * content type of their .jpg name and large originals are compressed like the variants.
+     */
+    public void saveOriginal(String username, MultipartFile profileImage) throws IOException, NotImageFileException {
+        long start = System.nanoTime();
+        BufferedImage source;
+        try (InputStream inputStream = profileImage.getInputStream()) {
+            source = ImageIO.read(inputStream);
+        }
+        if(source == null) {
+            throw new NotImageFileException(profileImage.getOriginalFilename() + NOT_AN_IMAGE_FILE);
+        }
+        writeJpeg(resize(source, Math.max(source.getWidth(), source.getHeight())), getVariantPath(username, ImageSize.ORIGINAL));
+        originalWriteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void processAsync(String username) {
+        try {
+            executor.execute(() -> process(username));
+        } catch (TaskRejectedException e) {
+            log.warn("Image processing queue is full, " + username + " is served the original image");
+        }
+    }
+
+    public Path getVariantPath(String username, ImageSize size) {
+        String fileName = size == ImageSize.ORIGINAL ? username + DOT + JPG_EXTENSION
+                : username + DASH + size.getPathName() + DOT + JPG_EXTENSION;
+        return Paths.get(USER_FOLDER, username, fileName).toAbsolutePath().normalize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getThreadPoolExecutor().getQueue().size();
+    }
+
+    private void process(String username) {
+        Path original = getVariantPath(username, ImageSize.ORIGINAL);
+        try {
+            BufferedImage source = ImageIO.read(original.toFile());
+            if(source == null) {
+                log.warn("Profile image of " + username + " could not be decoded");
+                return;
+            }
+            for(ImageSize size : ImageSize.values()) {
+                if(size != ImageSize.ORIGINAL) {
+                    long start = System.nanoTime();
+                    writeJpeg(resize(source, size.getMaxDimension()), getVariantPath(username, size));
+                    variantWriteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+            log.info(IMAGE_VARIANTS_CREATED + username);
+        } catch (IOException e) {
+            log.error("Could not create image variants for " + username + ": " + e.getMessage());
+        }
+    }
+
+    private BufferedImage resize(BufferedImage source, int maxDimension) {
+        double scale = Math.min(1d, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB); //JPEG has no alpha
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(temporary.toFile())) {
+            ImageWriteParam parameters = writer.getDefaultWriteParam();
+            parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parameters.setCompressionQuality(jpegQuality);
+            writer.setOutput(outputStream);
+            writer.write(null, new IIOImage(image, null, null), parameters);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(temporary, target, REPLACE_EXISTING, ATOMIC_MOVE); //Readers never see a half written image
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,158 @@
+package com.hardi.Server.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hardi.Server.domain.ImageSize;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import static com.hardi.Server.utils.FileConstants.*;
+import static com.hardi.Server.utils.MetricsConstants.IMAGE_READ;
+
+/**
+ * Serves stored profile images with validators (strong ETag, Last-Modified) and byte range support.
+ * Small, frequently requested files come from a bounded in-memory cache, large ones are handed to
+ * Tomcat's sendfile when the connector supports it (Netty's zero-copy transfer on the reactive stack),
+ * everything else is streamed from disk.
+ */
+@Service
+@Slf4j
+public class ProfileImageService {
+
+    private final Path userFolder;
+
+    private final Cache<Path, CachedImage> hotImages;
+
+    private final long maxCachedFileSize;
+
+    private final CacheControl cacheControl;
+
+    private final Timer readTimer;
+
+    public ProfileImageService(@Value("${image.cache.maximum-bytes:16777216}") long maximumBytes,
+                               @Value("${image.cache.max-file-size:65536}") long maxCachedFileSize,
+                               @Value("${image.cache-control.max-age:3600}") long maxAge,
+                               MeterRegistry meterRegistry) {
+        this.userFolder = Paths.get(USER_FOLDER).toAbsolutePath().normalize();
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.cacheControl = CacheControl.maxAge(maxAge, TimeUnit.SECONDS).cachePublic();
+        this.hotImages = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((Path path, CachedImage image) -> image.bytes.length)
+                .recordStats()
+                .build();
+        this.readTimer = Timer.builder(IMAGE_READ).description("Profile image reads from disk into the cache").register(meterRegistry);
+        GuavaCacheMetrics.monitor(meterRegistry, hotImages, "profile-images");
+    }
+
+    /**
+     * For the reactive stack, Netty writes a FileSystemResource with zero-copy transfer by itself.
+     */
+    public ResponseEntity<Resource> getProfileImage(String username, String fileName) throws IOException {
+        return getProfileImage(username, fileName, null);
+    }
+
+    public ResponseEntity<Resource> getProfileImage(String username, String fileName, HttpServletRequest request) throws IOException {
+        Path image = resolveImage(username, fileName);
+        if(!image.startsWith(userFolder) || !Files.isRegularFile(image)) {
+            return ResponseEntity.notFound().build();
+        }
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        //304 and 206 are produced by Spring MVC or WebFlux from these headers and the Range request header
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(Long.toHexString(lastModified) + "-" + Long.toHexString(size))
+                .lastModified(lastModified)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(MediaTypeFactory.getMediaType(image.getFileName().toString()).orElse(MediaType.IMAGE_JPEG));
+
+        if(size <= maxCachedFileSize) {
+            return response.body(new ByteArrayResource(getCachedBytes(image, size, lastModified)));
+        }
+        if(request != null && canUseSendfile(request)) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, image.toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, 0L);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, size);
+            return response.contentLength(size).build(); //Tomcat writes the file after the headers
+        }
+        return response.body(new FileSystemResource(image));
+    }
+
+    /**
+     * A size name (thumbnail, medium, original) picks the resized variant, falling back to the
+     * original while the variant is still being processed. Anything else is a file name.
+     */
+    private Path resolveImage(String username, String fileName) {
+        ImageSize size = ImageSize.fromPathName(fileName);
+        if(size == null) {
+            return userFolder.resolve(username).resolve(fileName).normalize();
+        }
+        Path original = userFolder.resolve(username).resolve(username + DOT + JPG_EXTENSION).normalize();
+        if(size == ImageSize.ORIGINAL) {
+            return original;
+        }
+        Path variant = userFolder.resolve(username).resolve(username + DASH + size.getPathName() + DOT + JPG_EXTENSION).normalize();
+        return Files.isRegularFile(variant) ? variant : original;
+    }
+
+    private byte[] getCachedBytes(Path image, long size, long lastModified) throws IOException {
+        CachedImage cached = hotImages.getIfPresent(image);
+        if(cached == null || cached.size != size || cached.lastModified != lastModified) {
+            long start = System.nanoTime();
+            cached = new CachedImage(Files.readAllBytes(image), size, lastModified);
+            readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            hotImages.put(image, cached);
+        }
+        return cached.bytes;
+    }
+
+    private boolean canUseSendfile(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))
+                && "GET".equals(request.getMethod())
+                && request.getHeader(HttpHeaders.RANGE) == null
+                && request.getHeader(HttpHeaders.IF_NONE_MATCH) == null
+                && request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) == null;
+    }
+
+    public long getCachedImageCount() {
+        return hotImages.size();
+    }
+
+    private static class CachedImage {
+
+        private final byte[] bytes;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private CachedImage(byte[] bytes, long size, long lastModified) {
+            this.bytes = bytes;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
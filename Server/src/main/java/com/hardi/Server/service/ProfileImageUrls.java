@@ -0,0 +1,38 @@
+package com.hardi.Server.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import static com.hardi.Server.utils.FileConstants.*;
+
+/**
+ * Urls stored as a user's profile image, relative to the server the request came in on.
+ */
+@Service
+public class ProfileImageUrls {
+
+    private final String imageBaseUrl;
+
+    public ProfileImageUrls(@Value("${user.image.base-url:http://localhost:8081}") String imageBaseUrl) {
+        this.imageBaseUrl = imageBaseUrl;
+    }
+
+    public String getUploadedImageUrl(String username) {
+        return getBaseUrl() + USER_IMAGE_PATH + username + FORWARD_SLASH + username + DOT + JPG_EXTENSION;
+    }
+
+    public String getTemporaryImageUrl(String username) {
+        return getBaseUrl() + DEFAULT_USER_IMAGE_PATH + username; //Default base url (8080/dev/prod)
+    }
+
+    public String getBaseUrl() {
+        //The reactive stack calls in from a scheduler thread with no servlet request bound
+        if(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes) {
+            return ServletUriComponentsBuilder.fromCurrentContextPath().toUriString();
+        }
+        return imageBaseUrl;
+    }
+}
@@ -0,0 +1,251 @@
+package com.hardi.Server.service;
+
+import com.google.common.collect.Iterators;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserChanges;
+import com.hardi.Server.domain.UserFileFormat;
+import com.hardi.Server.domain.UserImportReport;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserPage;
+import com.hardi.Server.domain.UserSearchQuery;
+import com.hardi.Server.repository.reactive.ReactiveUserRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * {@link UserService} behind reactive types. Reads come from the user cache or R2DBC and never block,
+ * writes still run through UserService (JPA, password hashing, outbox) on the bounded elastic scheduler
+ * so the event loop is never held by a JDBC call.
+ * <p>
+ * Uploaded profile images are written to a temporary file as they arrive and handed to UserService
+ * as a MultipartFile, imports are read and exports written through streams on the same scheduler.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserService {
+
+    private static final int IMPORT_DEMAND = 16;
+
+    private final UserService userService;
+
+    private final ReactiveUserRepository reactiveUserRepository;
+
+    private final UserCache userCache;
+
+    private final UserSearchIndex userSearchIndex;
+
+    private final UserImportService userImportService;
+
+    public ReactiveUserService(UserService userService, ReactiveUserRepository reactiveUserRepository, UserCache userCache,
+                               UserSearchIndex userSearchIndex, UserImportService userImportService) {
+        this.userService = userService;
+        this.reactiveUserRepository = reactiveUserRepository;
+        this.userCache = userCache;
+        this.userSearchIndex = userSearchIndex;
+        this.userImportService = userImportService;
+    }
+
+    public Mono<User> register(String firstName, String lastName, String username, String email) {
+        return blocking(() -> userService.register(firstName, lastName, username, email));
+    }
+
+    public Mono<User> addNewUser(String firstName, String lastName, String username, String email, String role,
+                                 boolean isNonBlocked, boolean isActive, FilePart profileImage) {
+        return withUpload(profileImage, file -> userService.addNewUser(firstName, lastName, username, email, role, isNonBlocked, isActive, file));
+    }
+
+    public Mono<User> updateUser(String currentUsername, String firstName, String lastName, String username, String email, String role,
+                                 boolean isNonBlocked, boolean isActive, FilePart profileImage, Long expectedVersion) {
+        return withUpload(profileImage, file -> userService.updateUser(currentUsername, firstName, lastName, username, email, role,
+                isNonBlocked, isActive, file, expectedVersion));
+    }
+
+    public Mono<User> updateProfileImage(String username, FilePart profileImage) {
+        return withUpload(profileImage, file -> userService.updateProfileImage(username, file));
+    }
+
+    public Mono<UserImportReport> importUsers(Flux<DataBuffer> content, UserFileFormat format) {
+        return blocking(() -> {
+            //Blocks this worker, not the event loop, for the next buffer. At most IMPORT_DEMAND buffers are requested ahead
+            Iterator<InputStream> buffers = content.map(buffer -> buffer.asInputStream(true)).toIterable(IMPORT_DEMAND).iterator();
+            try(InputStream input = new SequenceInputStream(Iterators.asEnumeration(buffers))) {
+                return userImportService.importUsers(input, format); //Read as it arrives, not buffered
+            }
+        });
+    }
+
+    public Flux<DataBuffer> exportUsers(UserListQuery query, UserFileFormat format, DataBufferFactory bufferFactory) {
+        return Flux.from(DataBufferUtils.outputStreamPublisher(output -> {
+            try {
+                userImportService.exportUsers(query, format, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, bufferFactory, Schedulers.boundedElastic()::schedule));
+    }
+
+    public Mono<UserChanges> getUserChanges(Long since, Integer limit) {
+        return blocking(() -> userService.getUserChanges(since, limit));
+    }
+
+    public Mono<User> findUserByUsername(String username) {
+        User cached = userCache.getIfPresent(username);
+        if(cached != null) {
+            return Mono.just(cached);
+        }
+        return reactiveUserRepository.findUserByUsername(username)
+                .map(user -> userCache.getByUsername(username, key -> user)); //Caches it and applies a pending login date
+    }
+
+    public Mono<UserPage> getUsers(UserListQuery query) {
+        return reactiveUserRepository.findPage(query, query.getLimit() + 1) //One extra row tells if there is a next page
+                .collectList()
+                .map(users -> {
+                    if(users.size() <= query.getLimit()) {
+                        return new UserPage(users, null);
+                    }
+                    List<User> page = new ArrayList<>(users.subList(0, query.getLimit()));
+                    return new UserPage(page, query.encodeCursor(page.get(page.size() - 1)));
+                });
+    }
+
+    public Mono<UserPage> searchUsers(UserSearchQuery query) {
+        UserSearchIndex.Hits hits = userSearchIndex.search(query.getText(), query.getOffset(), query.getLimit());
+        return reactiveUserRepository.findAllById(hits.getIds())
+                .collectMap(User::getId)
+                .map(usersById -> {
+                    List<User> users = new ArrayList<>();
+                    for(Long id : hits.getIds()) {
+                        if(usersById.containsKey(id)) {
+                            users.add(usersById.get(id)); //Rank order
+                        }
+                    }
+                    return new UserPage(users, query.getNextCursor(hits.getTotal()));
+                });
+    }
+
+    public Flux<User> streamUsers(UserListQuery query) {
+        return reactiveUserRepository.streamAll(query);
+    }
+
+    public Mono<Void> deleteUser(String username) {
+        return blocking(() -> {
+            userService.deleteUser(username);
+            return null;
+        });
+    }
+
+    public Mono<Void> resetPassword(String email) {
+        return blocking(() -> {
+            userService.resetPassword(email);
+            return null;
+        });
+    }
+
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static <T> Mono<T> withUpload(FilePart filePart, UploadCall<T> call) {
+        if(filePart == null) {
+            return blocking(() -> call.call(null));
+        }
+        return blocking(() -> Files.createTempFile("upload-", null))
+                .flatMap(path -> filePart.transferTo(path)
+                        .then(blocking(() -> call.call(new PathMultipartFile(filePart, path))))
+                        .doFinally(signal -> deleteTempFile(path)));
+    }
+
+    private static void deleteTempFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    private interface UploadCall<T> {
+
+        T call(MultipartFile file) throws Exception;
+    }
+
+    /**
+     * An uploaded part already written to a temporary file, as UserService reads uploads.
+     */
+    private static class PathMultipartFile implements MultipartFile {
+
+        private final FilePart filePart;
+
+        private final Path path;
+
+        private PathMultipartFile(FilePart filePart, Path path) {
+            this.filePart = filePart;
+            this.path = path;
+        }
+
+        @Override
+        public String getName() {
+            return filePart.name();
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return filePart.filename();
+        }
+
+        @Override
+        public String getContentType() {
+            return filePart.headers().getContentType() == null ? null : filePart.headers().getContentType().toString();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return getSize() == 0;
+        }
+
+        @Override
+        public long getSize() {
+            try {
+                return Files.size(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            return Files.readAllBytes(path);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.copy(path, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
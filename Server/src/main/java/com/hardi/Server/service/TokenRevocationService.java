@@ -0,0 +1,198 @@
+package com.hardi.Server.service;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.VerifiedToken;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hardi.Server.utils.MetricsConstants.*;
+import static com.hardi.Server.utils.SecurityConstants.EXPIRATION_TIME;
+
+/**
+ * Revokes every token of a user by raising the user's token version; tokens carry the version
+ * they were issued with. Revocations are kept in the token_revocation table until the last token
+ * they cover has expired. Checks go through an in-memory Bloom filter first, so a token of a
+ * user who was never revoked is accepted without a map lookup or any I/O.
+ */
+@Service
+@Slf4j
+@DependsOn("flywayInitializer") //The table must exist before the first rebuild
+public class TokenRevocationService implements MeterBinder {
+
+    private static final String UPSERT_REVOCATION = "INSERT INTO token_revocation (user_id, token_version, expires_at) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE token_version = GREATEST(token_version, VALUES(token_version)), expires_at = VALUES(expires_at)";
+
+    private static final String SELECT_REVOCATIONS = "SELECT user_id, token_version, expires_at FROM token_revocation WHERE expires_at > ?";
+
+    private static final String DELETE_EXPIRED_REVOCATIONS = "DELETE FROM token_revocation WHERE expires_at <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int expectedRevocations;
+
+    private final double falsePositiveProbability;
+
+    private volatile Revocations revocations;
+
+    private final LongAdder bloomFilterPasses = new LongAdder();
+
+    private final LongAdder falsePositives = new LongAdder();
+
+    private final LongAdder rejectedTokens = new LongAdder();
+
+    public TokenRevocationService(JdbcTemplate jdbcTemplate,
+                                  @Value("${token-revocation.expected-revocations:100000}") int expectedRevocations,
+                                  @Value("${token-revocation.false-positive-probability:0.01}") double falsePositiveProbability) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.expectedRevocations = expectedRevocations;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.revocations = newRevocations();
+    }
+
+    /**
+     * Invalidates all tokens issued to the user so far. The raised version is set on the given
+     * user, which the caller saves (or deletes) in the same transaction.
+     */
+    public void revokeTokens(User user) {
+        int minimumVersion = user.getTokenVersion() + 1;
+        long expiresAt = System.currentTimeMillis() + EXPIRATION_TIME;
+        user.setTokenVersion(minimumVersion);
+        jdbcTemplate.update(UPSERT_REVOCATION, user.getId(), minimumVersion, expiresAt);
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addRevocation(user.getId(), minimumVersion, expiresAt);
+                }
+            });
+        } else {
+            addRevocation(user.getId(), minimumVersion, expiresAt);
+        }
+        log.info("Revoked tokens of " + user.getUsername() + " below version " + minimumVersion);
+    }
+
+    public boolean isRevoked(VerifiedToken verifiedToken) {
+        if(verifiedToken.getUserId() == null) {
+            return false; //Issued before revocation support, expires on its own
+        }
+        Revocations current = revocations;
+        if(!current.bloomFilter.mightContain(verifiedToken.getUserId())) {
+            bloomFilterPasses.increment();
+            return false;
+        }
+        Revocation revocation = current.byUserId.get(verifiedToken.getUserId());
+        if(revocation == null) {
+            falsePositives.increment();
+            return false;
+        }
+        boolean revoked = verifiedToken.getTokenVersion() < revocation.minimumVersion;
+        if(revoked) {
+            rejectedTokens.increment();
+        }
+        return revoked;
+    }
+
+    /**
+     * Reloads the live revocations, dropping the ones past token expiry, and picks up revocations
+     * made by other nodes. A Bloom filter cannot remove entries, so it is rebuilt rather than updated.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${token-revocation.rebuild-interval:60000}", initialDelayString = "${token-revocation.rebuild-interval:60000}")
+    public void rebuild() {
+        long now = System.currentTimeMillis();
+        jdbcTemplate.update(DELETE_EXPIRED_REVOCATIONS, now);
+        Map<Long, Revocation> stored = new HashMap<>();
+        jdbcTemplate.query(SELECT_REVOCATIONS, resultSet -> {
+            stored.put(resultSet.getLong(1), new Revocation(resultSet.getInt(2), resultSet.getLong(3)));
+        }, now);
+        synchronized (this) {
+            Revocations rebuilt = newRevocations();
+            stored.forEach(rebuilt::add);
+            revocations.byUserId.forEach((userId, revocation) -> { //Made while the rows were read
+                if(revocation.expiresAt > now) {
+                    rebuilt.add(userId, revocation);
+                }
+            });
+            revocations = rebuilt;
+        }
+        log.debug("Rebuilt token revocations, " + stored.size() + " live");
+    }
+
+    public int getRevocationCount() {
+        return revocations.byUserId.size();
+    }
+
+    public long getBloomFilterPassCount() {
+        return bloomFilterPasses.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    public long getRejectedTokenCount() {
+        return rejectedTokens.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(TOKEN_REVOCATIONS, this, TokenRevocationService::getRevocationCount).description("Live revocations").register(registry);
+        FunctionCounter.builder(TOKEN_REVOCATION_CHECKS, bloomFilterPasses, LongAdder::sum).tag(RESULT, "bloom-filter-pass").register(registry);
+        FunctionCounter.builder(TOKEN_REVOCATION_CHECKS, falsePositives, LongAdder::sum).tag(RESULT, "false-positive").register(registry);
+        FunctionCounter.builder(TOKEN_REVOCATION_CHECKS, rejectedTokens, LongAdder::sum).tag(RESULT, "revoked").register(registry);
+    }
+
+    private synchronized void addRevocation(Long userId, int minimumVersion, long expiresAt) {
+        revocations.add(userId, new Revocation(minimumVersion, expiresAt));
+    }
+
+    private Revocations newRevocations() {
+        return new Revocations(BloomFilter.create(Funnels.longFunnel(), expectedRevocations, falsePositiveProbability));
+    }
+
+    private static class Revocations {
+
+        private final BloomFilter<Long> bloomFilter;
+
+        private final ConcurrentHashMap<Long, Revocation> byUserId = new ConcurrentHashMap<>();
+
+        private Revocations(BloomFilter<Long> bloomFilter) {
+            this.bloomFilter = bloomFilter;
+        }
+
+        private void add(Long userId, Revocation revocation) {
+            byUserId.merge(userId, revocation, (existing, added) -> existing.minimumVersion >= added.minimumVersion ? existing : added);
+            bloomFilter.put(userId); //After the map, a filter hit always finds the entry
+        }
+    }
+
+    private static class Revocation {
+
+        private final int minimumVersion;
+
+        private final long expiresAt;
+
+        private Revocation(int minimumVersion, long expiresAt) {
+            this.minimumVersion = minimumVersion;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
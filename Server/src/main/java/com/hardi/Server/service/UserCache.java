@@ -0,0 +1,169 @@
+package com.hardi.Server.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.hardi.Server.domain.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded, time limited read-through cache of users by username and by email.
+ * Entries are detached copies and every read hands out a new copy, so callers may modify
+ * what they get without touching the cache. Writers invalidate the keys they change.
+ * Logins not yet written by the LastLoginRecorder are applied to the cached copy.
+ * <p>
+ * Invalidation only reaches this instance, a copy may lag a change made on another one until
+ * the ttl. It is therefore only used to serve reads: writes load the row they change and logins
+ * reload it, so the password, the lock and active flags and the token version never come from here.
+ */
+@Service
+public class UserCache implements MeterBinder {
+
+    private final Cache<String, User> usersByUsername;
+
+    private final Cache<String, User> usersByEmail;
+
+    private final LastLoginRecorder lastLoginRecorder;
+
+    public UserCache(LastLoginRecorder lastLoginRecorder,
+                     @Value("${user.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${user.cache.ttl:300000}") long ttl) {
+        this.lastLoginRecorder = lastLoginRecorder;
+        this.usersByUsername = newCache(maximumSize, ttl);
+        this.usersByEmail = newCache(maximumSize, ttl);
+    }
+
+    public User getByUsername(String username, Function<String, User> loader) {
+        return get(usersByUsername, username, loader);
+    }
+
+    public User getByEmail(String email, Function<String, User> loader) {
+        return get(usersByEmail, email, loader);
+    }
+
+    /**
+     * Reads the user from the loader even when it is cached and caches what was read.
+     */
+    public User reloadByUsername(String username, Function<String, User> loader) {
+        User user = username == null ? null : loader.apply(username);
+        if(user == null) {
+            invalidate(username, null); //Deleted on another instance
+            return null;
+        }
+        user = copy(user); //Detached before the pending login is applied, the entity must not become dirty
+        lastLoginRecorder.applyPendingLogin(user);
+        put(user);
+        return user;
+    }
+
+    /**
+     * Cached copy or null, for callers that load the user without blocking and cache it afterwards.
+     */
+    public User getIfPresent(String username) {
+        User user = username == null ? null : usersByUsername.getIfPresent(username);
+        return user == null ? null : copy(user);
+    }
+
+    public void put(User user) {
+        if(user.getUsername() != null) {
+            usersByUsername.put(user.getUsername(), copy(user));
+        }
+        if(user.getEmail() != null) {
+            usersByEmail.put(user.getEmail(), copy(user));
+        }
+    }
+
+    public void invalidate(User user) {
+        if(user != null) {
+            invalidate(user.getUsername(), user.getEmail());
+        }
+    }
+
+    /**
+     * Evicts right away and, inside a transaction, once more after it completes so a read
+     * racing with the write cannot leave the pre-commit row in the cache.
+     */
+    public void invalidate(String username, String email) {
+        evict(username, email);
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(username, email);
+                }
+            });
+        }
+    }
+
+    public CacheStats getUsernameStats() {
+        return usersByUsername.stats();
+    }
+
+    public CacheStats getEmailStats() {
+        return usersByEmail.stats();
+    }
+
+    public double getHitRate() {
+        return getUsernameStats().plus(getEmailStats()).hitRate();
+    }
+
+    public long size() {
+        return usersByUsername.size() + usersByEmail.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, usersByUsername, "users-by-username");
+        GuavaCacheMetrics.monitor(registry, usersByEmail, "users-by-email");
+    }
+
+    private User get(Cache<String, User> cache, String key, Function<String, User> loader) {
+        if(key == null) {
+            return null;
+        }
+        User user = cache.getIfPresent(key);
+        if(user == null) {
+            user = loader.apply(key);
+            if(user == null) {
+                return null; //Unknown users are not cached, a registration would have to evict them
+            }
+            user = copy(user); //Detached before the pending login is applied, the entity must not become dirty
+            lastLoginRecorder.applyPendingLogin(user);
+            cache.put(key, user);
+        }
+        return copy(user);
+    }
+
+    private void evict(String username, String email) {
+        if(username != null) {
+            usersByUsername.invalidate(username);
+        }
+        if(email != null) {
+            usersByEmail.invalidate(email);
+        }
+    }
+
+    private User copy(User user) {
+        User copy = new User();
+        BeanUtils.copyProperties(user, copy);
+        return copy;
+    }
+
+    private static Cache<String, User> newCache(long maximumSize, long ttl) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+}
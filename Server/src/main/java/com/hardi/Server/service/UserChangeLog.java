@@ -0,0 +1,206 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserChangeType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Versioned log of user inserts, updates and deletes, written in the transaction of the change
+ * so clients can fetch what changed since the version they last saw instead of the whole list.
+ * <p>
+ * Versions come from an auto increment and are taken at insert time, so a transaction still open
+ * can commit a version lower than one already visible. A client's version therefore only moves past
+ * changes older than the settle window; newer ones are sent again on the next call, which is harmless
+ * since a change carries the whole user. Change times and the windows are measured on the database
+ * clock, instances with skewed clocks agree on what has settled.
+ * <p>
+ * Compaction keeps the latest change per user and drops deletes past the retention. The highest
+ * dropped delete is the horizon, clients behind it are told to reload.
+ */
+@Service
+@Slf4j
+public class UserChangeLog {
+
+    //The database time the given number of microseconds ago
+    private static final String DATABASE_TIME_BEFORE = "TIMESTAMPADD(MICROSECOND, -?, CURRENT_TIMESTAMP(3))";
+
+    private static final String INSERT_CHANGE = "INSERT INTO user_change (user_id, operation) VALUES (?, ?)"; //changed_at defaults to the database time
+
+    private static final String SELECT_CHANGES = "SELECT version, user_id, operation, changed_at < " + DATABASE_TIME_BEFORE
+            + " FROM user_change WHERE version > ? ORDER BY version LIMIT ?";
+
+    private static final String SELECT_HORIZON = "SELECT version FROM user_change_horizon WHERE id = 1";
+
+    private static final String SELECT_SETTLED_VERSION = "SELECT MAX(version) FROM user_change WHERE changed_at < " + DATABASE_TIME_BEFORE;
+
+    //The derived table lets MySQL delete from the table the subquery reads
+    private static final String DELETE_SUPERSEDED_CHANGES = "DELETE FROM user_change WHERE version IN (SELECT version FROM "
+            + "(SELECT c.version FROM user_change c JOIN user_change n ON n.user_id = c.user_id AND n.version > c.version) superseded)";
+
+    private static final String SELECT_EXPIRED_DELETE_VERSION = "SELECT MAX(version) FROM user_change WHERE operation = 'DELETE' AND changed_at < "
+            + DATABASE_TIME_BEFORE;
+
+    private static final String UPDATE_HORIZON = "UPDATE user_change_horizon SET version = GREATEST(version, ?) WHERE id = 1";
+
+    private static final String DELETE_EXPIRED_DELETES = "DELETE FROM user_change WHERE operation = 'DELETE' AND version <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final long settleWindow;
+
+    private final long deleteRetention;
+
+    public UserChangeLog(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${user.changes.settle-window:5000}") long settleWindow,
+                         @Value("${user.changes.delete-retention:2592000000}") long deleteRetention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settleWindow = settleWindow;
+        this.deleteRetention = deleteRetention;
+    }
+
+    /**
+     * Joins the caller's transaction, the change is visible exactly when the user row is.
+     */
+    public void record(User user, UserChangeType type) {
+        jdbcTemplate.update(INSERT_CHANGE, user.getUserId(), type.name());
+    }
+
+    public void recordAll(Collection<String> userIds, UserChangeType type) {
+        List<Object[]> rows = new ArrayList<>(userIds.size());
+        for(String userId : userIds) {
+            rows.add(new Object[]{userId, type.name()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_CHANGE, rows);
+    }
+
+    /**
+     * Changes after the given version, at most limit of them. Run it in a transaction so the horizon
+     * and the changes are read from the same snapshot. A null version asks for the version to sync
+     * from after a full load.
+     */
+    public Changes getChanges(Long since, int limit) {
+        long settleMicros = settleWindow * 1000;
+        if(since == null) {
+            return new Changes(getSettledVersion(settleMicros), true, false, new ArrayList<>());
+        }
+        List<Change> changes = jdbcTemplate.query(SELECT_CHANGES, (resultSet, rowNumber) -> new Change(resultSet.getLong(1),
+                resultSet.getString(2), UserChangeType.valueOf(resultSet.getString(3)), resultSet.getBoolean(4)), settleMicros, since, limit + 1);
+        if(since < getHorizon()) {
+            return new Changes(getSettledVersion(settleMicros), true, false, new ArrayList<>());
+        }
+        boolean hasMore = changes.size() > limit;
+        if(hasMore) {
+            changes = changes.subList(0, limit);
+        }
+        long version = since;
+        for(Change change : changes) {
+            if(!change.settled) {
+                hasMore = false; //Paging on would skip what the open transactions commit
+                break;
+            }
+            version = change.version;
+        }
+        return new Changes(version, false, hasMore, changes);
+    }
+
+    @Scheduled(fixedDelayString = "${user.changes.compaction-interval:3600000}", initialDelayString = "${user.changes.compaction-interval:3600000}")
+    public void compact() {
+        long retentionMicros = deleteRetention * 1000;
+        transactionTemplate.executeWithoutResult(status -> {
+            int superseded = jdbcTemplate.update(DELETE_SUPERSEDED_CHANGES);
+            Long expiredVersion = jdbcTemplate.queryForObject(SELECT_EXPIRED_DELETE_VERSION, Long.class, retentionMicros);
+            int expired = 0;
+            if(expiredVersion != null) {
+                jdbcTemplate.update(UPDATE_HORIZON, expiredVersion);
+                expired = jdbcTemplate.update(DELETE_EXPIRED_DELETES, expiredVersion);
+            }
+            log.debug("Compacted user changes, removed " + superseded + " superseded and " + expired + " expired");
+        });
+    }
+
+    private long getHorizon() {
+        return jdbcTemplate.queryForObject(SELECT_HORIZON, Long.class);
+    }
+
+    private long getSettledVersion(long settleMicros) {
+        Long settled = jdbcTemplate.queryForObject(SELECT_SETTLED_VERSION, Long.class, settleMicros);
+        return settled == null ? getHorizon() : settled;
+    }
+
+    public static class Changes {
+
+        private final long version;
+
+        private final boolean reset;
+
+        private final boolean hasMore;
+
+        private final List<Change> changes;
+
+        private Changes(long version, boolean reset, boolean hasMore, List<Change> changes) {
+            this.version = version;
+            this.reset = reset;
+            this.hasMore = hasMore;
+            this.changes = changes;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isReset() {
+            return reset;
+        }
+
+        public boolean hasMore() {
+            return hasMore;
+        }
+
+        public List<Change> getChanges() {
+            return changes;
+        }
+    }
+
+    public static class Change {
+
+        private final long version;
+
+        private final String userId;
+
+        private final UserChangeType type;
+
+        private final boolean settled;
+
+        private Change(long version, String userId, UserChangeType type, boolean settled) {
+            this.version = version;
+            this.userId = userId;
+            this.type = type;
+            this.settled = settled;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public UserChangeType getType() {
+            return type;
+        }
+    }
+}
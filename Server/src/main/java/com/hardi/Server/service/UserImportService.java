@@ -0,0 +1,382 @@
+package com.hardi.Server.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.hardi.Server.domain.EmailOutboxMessage;
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserChangeType;
+import com.hardi.Server.domain.UserFileFormat;
+import com.hardi.Server.domain.UserImportReport;
+import com.hardi.Server.domain.UserImportResult;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserRecord;
+import com.hardi.Server.exceptions.domain.InvalidUserFileException;
+import com.hardi.Server.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+
+import static com.hardi.Server.domain.UserImportStatus.CREATED;
+import static com.hardi.Server.domain.UserImportStatus.REJECTED;
+import static com.hardi.Server.utils.ErrorMessageConstants.*;
+
+/**
+ * Bulk import and export of users as csv or ndjson. Imports are read record by record and handled in batches:
+ * uniqueness is checked with one query per column for the whole batch, the generated passwords are hashed
+ * in parallel on the hashing pool, and users and their password emails are written with JDBC batches.
+ * Each batch commits on its own, a batch that fails is reported as rejected and the import goes on.
+ * Exports write the rows to the response as they are read.
+ * <p>
+ * A quoted csv value may hold line breaks, up to MAXIMUM_RECORD_LENGTH characters per record. A quote
+ * still open after that rejects the record and reading resumes with the next line.
+ */
+@Service
+@Slf4j
+public class UserImportService {
+
+    private static final String INSERT_USER = "INSERT INTO user (user_id, first_name, last_name, username, password, email, profile_image_url, "
+            + "join_date, role, permissions, token_version, is_active, is_not_locked) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+
+    private static final int MAXIMUM_VALUE_LENGTH = 255; //VARCHAR(255), one longer value would fail the whole JDBC batch
+
+    private static final int MAXIMUM_RECORD_LENGTH = 8192; //One unclosed quote must not read the rest of the file into memory
+
+    private final UserRepository userRepository;
+
+    private final UserService userService;
+
+    private final PasswordHashingService passwordHashingService;
+
+    private final UserSearchIndex userSearchIndex;
+
+    private final UserChangeLog userChangeLog;
+
+    private final EmailService emailService;
+
+    private final ProfileImageUrls profileImageUrls;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final CsvMapper csvMapper;
+
+    private final int batchSize;
+
+    private final int hashingInFlight;
+
+    public UserImportService(UserRepository userRepository, UserService userService, PasswordHashingService passwordHashingService,
+                             UserSearchIndex userSearchIndex, UserChangeLog userChangeLog, EmailService emailService, ProfileImageUrls profileImageUrls,
+                             JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                             @Value("${user.import.batch-size:500}") int batchSize,
+                             @Value("${user.import.hashing-in-flight:0}") int hashingInFlight) {
+        this.userRepository = userRepository;
+        this.userService = userService;
+        this.passwordHashingService = passwordHashingService;
+        this.userSearchIndex = userSearchIndex;
+        this.userChangeLog = userChangeLog;
+        this.emailService = emailService;
+        this.profileImageUrls = profileImageUrls;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.csvMapper = new CsvMapper();
+        this.csvMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); //ISO dates, like the JSON responses
+        this.batchSize = batchSize;
+        this.hashingInFlight = hashingInFlight;
+    }
+
+    /**
+     * Creates the users of the file, which is read as it arrives. Csv files start with a header naming
+     * the columns of UserRecord, ndjson files hold one UserRecord object per line.
+     */
+    public UserImportReport importUsers(InputStream input, UserFileFormat format) throws IOException, InvalidUserFileException {
+        LineNumberReader reader = new LineNumberReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        ObjectReader recordReader = objectMapper.readerFor(UserRecord.class);
+        if(format == UserFileFormat.CSV) {
+            recordReader = getCsvReader(reader.readLine());
+        }
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        UserImportReport report = new UserImportReport();
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+        String line;
+        while((line = reader.readLine()) != null) {
+            long lineNumber = reader.getLineNumber(); //Of the record's first line
+            if(StringUtils.isBlank(line)) {
+                continue;
+            }
+            if(format == UserFileFormat.CSV) {
+                line = readCsvRecord(reader, line);
+            }
+            batch.add(line == null ? new ImportRow(lineNumber, null, UNCLOSED_IMPORT_QUOTE) : readRow(recordReader, line, lineNumber));
+            if(batch.size() == batchSize) {
+                importBatch(batch, usernames, emails, report);
+                batch.clear();
+            }
+        }
+        if(!batch.isEmpty()) {
+            importBatch(batch, usernames, emails, report);
+        }
+        log.info("Imported " + report.getCreated() + " user(s), rejected " + report.getRejected());
+        return report;
+    }
+
+    public void exportUsers(UserListQuery query, UserFileFormat format, OutputStream output) throws IOException {
+        ObjectWriter writer = format == UserFileFormat.CSV
+                ? csvMapper.writer(csvMapper.schemaFor(UserRecord.class).withHeader())
+                : objectMapper.writerFor(UserRecord.class).withRootValueSeparator("\n");
+        try (SequenceWriter records = writer.writeValues(output)) {
+            userService.streamUsers(query, user -> {
+                try {
+                    records.write(UserRecord.of(user));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private ObjectReader getCsvReader(String header) throws IOException, InvalidUserFileException {
+        if(header == null) {
+            throw new InvalidUserFileException(MISSING_IMPORT_HEADER);
+        }
+        String[] columns = csvMapper.readerForArrayOf(String.class)
+                .readValue(StringUtils.removeStart(header, "\uFEFF")); //Byte order mark of spreadsheet exports
+        CsvSchema.Builder schema = CsvSchema.builder();
+        Set<String> names = new HashSet<>();
+        for(String column : columns) {
+            schema.addColumn(column.trim());
+            names.add(column.trim());
+        }
+        if(!names.contains("username") || !names.contains("email")) {
+            throw new InvalidUserFileException(MISSING_IMPORT_HEADER);
+        }
+        return csvMapper.readerFor(UserRecord.class).with(schema.build()).with(CsvParser.Feature.EMPTY_STRING_AS_NULL);
+    }
+
+    /**
+     * The csv record starting with this line. A quoted value may hold line breaks, the record then goes
+     * on until its quotes are balanced (an escaped quote is two). Null when a quote is still open after
+     * MAXIMUM_RECORD_LENGTH characters.
+     */
+    private String readCsvRecord(BufferedReader reader, String line) throws IOException {
+        StringBuilder record = new StringBuilder(line);
+        int quotes = StringUtils.countMatches(line, "\"");
+        while(quotes % 2 == 1) {
+            if(record.length() > MAXIMUM_RECORD_LENGTH) {
+                return null;
+            }
+            String nextLine = reader.readLine();
+            if(nextLine == null) {
+                break; //Left to the csv parser, which rejects the unclosed quote
+            }
+            record.append('\n').append(nextLine);
+            quotes += StringUtils.countMatches(nextLine, "\"");
+        }
+        return record.toString();
+    }
+
+    private ImportRow readRow(ObjectReader recordReader, String line, long lineNumber) {
+        try {
+            UserRecord record = recordReader.readValue(line);
+            return new ImportRow(lineNumber, record, validate(record));
+        } catch (JsonProcessingException e) {
+            return new ImportRow(lineNumber, null, UNREADABLE_IMPORT_ROW + e.getOriginalMessage());
+        }
+    }
+
+    private void importBatch(List<ImportRow> batch, Set<String> usernames, Set<String> emails, UserImportReport report) {
+        List<ImportRow> rows = new ArrayList<>();
+        for(ImportRow row : batch) {
+            if(row.error != null) {
+                continue;
+            }
+            //Lower case like MySQL's default collation, which the unique indexes compare with
+            String username = row.record.getUsername().toLowerCase(Locale.ROOT);
+            String email = row.record.getEmail().toLowerCase(Locale.ROOT);
+            if(usernames.contains(username)) {
+                row.error = USERNAME_ALREADY_EXISTS.trim();
+            } else if(emails.contains(email)) {
+                row.error = EMAIL_ALREADY_EXISTS.trim();
+            } else {
+                usernames.add(username);
+                emails.add(email);
+                rows.add(row);
+            }
+        }
+        try {
+            List<ImportRow> remaining = rejectExisting(rows);
+            hashPasswords(remaining);
+            try {
+                insert(remaining);
+            } catch (DataIntegrityViolationException e) {
+                //Added by someone else since the check, or a generated user id taken. The batch is checked
+                //again and the rest inserted with new user ids
+                insert(rejectExisting(remaining));
+            }
+        } catch (RuntimeException e) {
+            //Earlier batches are committed and stay in the report, the rows of this one were not created
+            log.error("Import batch failed: " + e.getMessage());
+            for(ImportRow row : rows) {
+                if(row.error == null) {
+                    row.error = IMPORT_BATCH_FAILED;
+                }
+            }
+        }
+        for(ImportRow row : batch) {
+            String username = row.record == null ? null : row.record.getUsername();
+            report.add(new UserImportResult(row.line, username, row.error == null ? CREATED : REJECTED, row.error));
+        }
+    }
+
+    /**
+     * One query per column for the whole batch instead of two lookups per row.
+     */
+    private List<ImportRow> rejectExisting(List<ImportRow> rows) {
+        if(rows.isEmpty()) {
+            return rows;
+        }
+        List<String> usernames = new ArrayList<>();
+        List<String> emails = new ArrayList<>();
+        for(ImportRow row : rows) {
+            usernames.add(row.record.getUsername());
+            emails.add(row.record.getEmail());
+        }
+        Set<String> existingUsernames = toLowerCase(userRepository.findExistingUsernames(usernames));
+        Set<String> existingEmails = toLowerCase(userRepository.findExistingEmails(emails));
+        List<ImportRow> remaining = new ArrayList<>();
+        for(ImportRow row : rows) {
+            if(existingUsernames.contains(row.record.getUsername().toLowerCase(Locale.ROOT))) {
+                row.error = USERNAME_ALREADY_EXISTS.trim();
+            } else if(existingEmails.contains(row.record.getEmail().toLowerCase(Locale.ROOT))) {
+                row.error = EMAIL_ALREADY_EXISTS.trim();
+            } else {
+                remaining.add(row);
+            }
+        }
+        return remaining;
+    }
+
+    private void hashPasswords(List<ImportRow> rows) {
+        List<String> passwords = new ArrayList<>(rows.size());
+        for(ImportRow row : rows) {
+            row.password = RandomStringUtils.randomAlphabetic(10);
+            passwords.add(row.password);
+        }
+        List<String> encodedPasswords = passwordHashingService.encodeAll(passwords, hashingInFlight);
+        for(int i = 0; i < rows.size(); i++) {
+            rows.get(i).encodedPassword = encodedPasswords.get(i);
+        }
+    }
+
+    /**
+     * Users, their password emails and change log entries in one transaction, the outbox sends the
+     * emails and the search index adds the users once it commits. Unknown users are never cached, so there is nothing to invalidate.
+     */
+    private void insert(List<ImportRow> rows) {
+        if(rows.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_USER, rows, batchSize, (statement, row) -> {
+                Role role = getRole(row.record.getRole());
+                statement.setString(1, UserServiceImpl.generateUserId());
+                statement.setString(2, row.record.getFirstName());
+                statement.setString(3, row.record.getLastName());
+                statement.setString(4, row.record.getUsername());
+                statement.setString(5, row.encodedPassword);
+                statement.setString(6, row.record.getEmail());
+                statement.setString(7, profileImageUrls.getTemporaryImageUrl(row.record.getUsername()));
+                statement.setTimestamp(8, now);
+                statement.setString(9, role.name());
+                statement.setInt(10, role.getPermissions());
+                statement.setBoolean(11, !Boolean.FALSE.equals(row.record.getIsActive()));
+                statement.setBoolean(12, !Boolean.FALSE.equals(row.record.getIsNotLocked()));
+            });
+            List<EmailOutboxMessage> emails = new ArrayList<>(rows.size());
+            rows.forEach(row -> emails.add(emailService.newPasswordEmail(row.record.getFirstName(), row.password, row.record.getEmail())));
+            emailService.sendAll(emails);
+            List<String> usernames = new ArrayList<>();
+            rows.forEach(row -> usernames.add(row.record.getUsername()));
+            List<String> userIds = new ArrayList<>();
+            for(User user : userRepository.findByUsernameIn(usernames)) { //Batches return no generated ids
+                userSearchIndex.index(user);
+                userIds.add(user.getUserId());
+            }
+            userChangeLog.recordAll(userIds, UserChangeType.INSERT);
+        });
+    }
+
+    private String validate(UserRecord record) {
+        String[][] values = {{"firstName", record.getFirstName()}, {"lastName", record.getLastName()},
+                {"username", record.getUsername()}, {"email", record.getEmail()}};
+        for(String[] value : values) {
+            if(StringUtils.isBlank(value[1])) {
+                return MISSING_IMPORT_VALUE + value[0];
+            }
+            if(value[1].length() > MAXIMUM_VALUE_LENGTH) {
+                return IMPORT_VALUE_TOO_LONG + value[0];
+            }
+        }
+        try {
+            getRole(record.getRole());
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN_ROLE + record.getRole();
+        }
+        return null;
+    }
+
+    private Role getRole(String role) {
+        return StringUtils.isBlank(role) ? Role.ROLE_USER : Role.valueOf(role.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private Set<String> toLowerCase(Collection<String> values) {
+        Set<String> lowerCase = new HashSet<>();
+        for(String value : values) {
+            lowerCase.add(value.toLowerCase(Locale.ROOT));
+        }
+        return lowerCase;
+    }
+
+    private static class ImportRow {
+
+        private final long line;
+
+        private final UserRecord record;
+
+        private String error;
+
+        private String password;
+
+        private String encodedPassword;
+
+        private ImportRow(long line, UserRecord record, String error) {
+            this.line = line;
+            this.record = record;
+            this.error = error;
+        }
+    }
+}
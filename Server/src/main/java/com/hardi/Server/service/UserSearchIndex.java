@@ -0,0 +1,480 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import static com.hardi.Server.utils.MetricsConstants.*;
+
+/**
+ * In-memory search over username, userId, email, first and last name. Every value is split into
+ * trigrams, plus the first one and two characters of each word marked as word starts, and each gram
+ * maps to the sorted list of documents containing it. Terms of three or more characters match anywhere
+ * in a value, shorter terms match the start of a word. Candidates are verified against the values and
+ * ranked: exact before prefix before word start before substring, username and userId before email
+ * before names. Only ids are returned, callers load the page of users they show.
+ * <p>
+ * Writes are applied once their transaction commits. The index is rebuilt from the database on startup
+ * and periodically, which also picks up changes made by other instances.
+ */
+@Service
+@Slf4j
+@DependsOn("flywayInitializer") //The table must exist before the first rebuild
+public class UserSearchIndex implements MeterBinder {
+
+    private static final String SELECT_USERS = "SELECT id, username, user_id, email, first_name, last_name FROM user";
+
+    private static final int[] FIELD_WEIGHTS = {5, 5, 4, 3, 3}; //username, userId, email, firstName, lastName
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final char WORD_START = '\u0002';
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Index index = new Index(); //Guarded by the lock
+
+    private Map<Long, Document> writesDuringRebuild; //Guarded by the write lock, a null value is a removal
+
+    private Timer searchTimer;
+
+    private Timer rebuildTimer;
+
+    public UserSearchIndex(DataSource dataSource, @Value("${user.list.stream-fetch-size:-2147483648}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize); //Rows are indexed as they are read
+    }
+
+    /**
+     * Adds or replaces the user once the current transaction commits.
+     */
+    public void index(User user) {
+        Document document = new Document(user);
+        afterCommit(() -> write(document.id, document));
+    }
+
+    public void remove(User user) {
+        Long id = user.getId();
+        afterCommit(() -> write(id, null));
+    }
+
+    /**
+     * Ids of the matching users in rank order, skipping the first offset matches.
+     */
+    public Hits search(String query, int offset, int limit) {
+        List<String> terms = getTerms(query);
+        if(terms.isEmpty()) {
+            return new Hits(Collections.emptyList(), 0);
+        }
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            return index.search(terms, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+            if(searchTimer != null) {
+                searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${user.search.rebuild-interval:600000}", initialDelayString = "${user.search.rebuild-interval:600000}")
+    public void rebuild() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            writesDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Index rebuilt = new Index();
+        try {
+            jdbcTemplate.query(SELECT_USERS, resultSet -> {
+                rebuilt.add(new Document(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3),
+                        resultSet.getString(4), resultSet.getString(5), resultSet.getString(6)));
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                writesDuringRebuild = null; //The current index stays, it already has those writes
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            writesDuringRebuild.forEach(rebuilt::replace); //Committed while the rows were read
+            writesDuringRebuild = null;
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long nanos = System.nanoTime() - start;
+        if(rebuildTimer != null) {
+            rebuildTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+        log.info("Indexed " + getDocumentCount() + " user(s) for search in " + TimeUnit.NANOSECONDS.toMillis(nanos)
+                + " ms, about " + getEstimatedBytes() / 1024 + " KiB");
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return index.documentsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEstimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return index.getEstimatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        searchTimer = Timer.builder(USER_SEARCH).description("Index lookups, without loading the users").register(registry);
+        rebuildTimer = Timer.builder(USER_SEARCH_REBUILD).description("Full rebuilds from the user table").register(registry);
+        Gauge.builder(USER_SEARCH_DOCUMENTS, this, UserSearchIndex::getDocumentCount).description("Indexed users").register(registry);
+        Gauge.builder(USER_SEARCH_MEMORY, this, UserSearchIndex::getEstimatedBytes).description("Estimated heap of the index").baseUnit("bytes").register(registry);
+    }
+
+    private void write(Long id, Document document) {
+        lock.writeLock().lock();
+        try {
+            index.replace(id, document);
+            if(writesDuringRebuild != null) {
+                writesDuringRebuild.put(id, document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void afterCommit(Runnable write) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    write.run();
+                }
+            });
+        } else {
+            write.run();
+        }
+    }
+
+    private static List<String> getTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        if(query != null) {
+            for(String term : WHITESPACE.split(query.trim().toLowerCase(Locale.ROOT))) {
+                if(!term.isEmpty()) {
+                    terms.add(term);
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Grams a term is looked up with: its trigrams, or the word start grams for terms under three characters.
+     */
+    private static Set<String> getQueryGrams(String term) {
+        Set<String> grams = new HashSet<>();
+        if(term.length() == 1) {
+            grams.add("" + WORD_START + WORD_START + term);
+        } else if(term.length() == 2) {
+            grams.add(WORD_START + term);
+        } else {
+            for(int i = 0; i + 3 <= term.length(); i++) {
+                grams.add(term.substring(i, i + 3));
+            }
+        }
+        return grams;
+    }
+
+    private static Set<String> getDocumentGrams(String value) {
+        Set<String> grams = new HashSet<>();
+        for(int i = 0; i + 3 <= value.length(); i++) {
+            grams.add(value.substring(i, i + 3));
+        }
+        for(String word : WORD_SEPARATOR.split(value)) {
+            if(!word.isEmpty()) {
+                grams.add("" + WORD_START + WORD_START + word.charAt(0));
+            }
+            if(word.length() >= 2) {
+                grams.add(WORD_START + word.substring(0, 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 0 when the value does not match, higher for closer matches.
+     */
+    private static int getMatchScore(String term, String value) {
+        if(value.isEmpty()) {
+            return 0;
+        }
+        if(value.equals(term)) {
+            return 100;
+        }
+        if(value.startsWith(term)) {
+            return 60;
+        }
+        int position = value.indexOf(term);
+        while(position > 0) {
+            if(!Character.isLetterOrDigit(value.charAt(position - 1))) {
+                return 40; //Start of a later word, like the domain of an email
+            }
+            position = value.indexOf(term, position + 1);
+        }
+        return term.length() >= 3 && value.contains(term) ? 20 : 0;
+    }
+
+    public static class Hits {
+
+        private final List<Long> ids;
+
+        private final int total;
+
+        private Hits(List<Long> ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    private static class Document {
+
+        private final long id;
+
+        private final String[] values; //Lower case, in the order of FIELD_WEIGHTS
+
+        private Document(User user) {
+            this(user.getId(), user.getUsername(), user.getUserId(), user.getEmail(), user.getFirstName(), user.getLastName());
+        }
+
+        private Document(long id, String... values) {
+            this.id = id;
+            this.values = new String[values.length];
+            for(int i = 0; i < values.length; i++) {
+                this.values[i] = values[i] == null ? "" : values[i].toLowerCase(Locale.ROOT);
+            }
+        }
+
+        private String getUsername() {
+            return values[0];
+        }
+    }
+
+    /**
+     * Documents are numbered in insertion order, so posting lists stay sorted by appending. Removed
+     * documents leave a gap that is skipped while searching until the next compaction.
+     */
+    private static class Index {
+
+        private final List<Document> documents = new ArrayList<>();
+
+        private final Map<Long, Integer> documentsById = new HashMap<>();
+
+        private final Map<String, Postings> postings = new HashMap<>();
+
+        private int removedCount;
+
+        private void add(Document document) {
+            int number = documents.size();
+            documents.add(document);
+            documentsById.put(document.id, number);
+            Set<String> grams = new HashSet<>();
+            for(String value : document.values) {
+                grams.addAll(getDocumentGrams(value));
+            }
+            for(String gram : grams) {
+                postings.computeIfAbsent(gram, key -> new Postings()).add(number);
+            }
+        }
+
+        private void replace(Long id, Document document) {
+            Integer number = documentsById.remove(id);
+            if(number != null) {
+                documents.set(number, null);
+                removedCount++;
+            }
+            if(document != null) {
+                add(document);
+            }
+            if(removedCount > 1000 && removedCount > documents.size() / 4) {
+                compact();
+            }
+        }
+
+        private void compact() {
+            List<Document> live = new ArrayList<>(documentsById.size());
+            for(Document document : documents) {
+                if(document != null) {
+                    live.add(document);
+                }
+            }
+            documents.clear();
+            documentsById.clear();
+            postings.clear();
+            removedCount = 0;
+            live.forEach(this::add);
+        }
+
+        private Hits search(List<String> terms, int offset, int limit) {
+            List<Postings> lists = new ArrayList<>();
+            for(String term : terms) {
+                for(String gram : getQueryGrams(term)) {
+                    Postings list = postings.get(gram);
+                    if(list == null) {
+                        return new Hits(Collections.emptyList(), 0);
+                    }
+                    lists.add(list);
+                }
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            Postings smallest = lists.get(0);
+
+            //No more hits than documents in the smallest list, which also keeps a cursor's offset + limit from overflowing
+            int wanted = (int) Math.min((long) offset + limit, smallest.size);
+            //Worst of the kept hits on top, so it is the one replaced by a better hit
+            PriorityQueue<Hit> top = new PriorityQueue<>(Hit.RANK.reversed());
+            int total = 0;
+            for(int i = 0; i < smallest.size; i++) {
+                int number = smallest.documents[i];
+                Document document = documents.get(number);
+                if(document == null || !containsInAll(lists, number)) {
+                    continue;
+                }
+                int score = getScore(terms, document);
+                if(score == 0) {
+                    continue; //All grams present but not next to each other
+                }
+                total++;
+                top.add(new Hit(document, score));
+                if(top.size() > wanted) {
+                    top.poll();
+                }
+            }
+            List<Hit> ranked = new ArrayList<>(top);
+            ranked.sort(Hit.RANK);
+            List<Long> ids = new ArrayList<>();
+            for(int i = offset; i < ranked.size(); i++) {
+                ids.add(ranked.get(i).document.id);
+            }
+            return new Hits(ids, total);
+        }
+
+        private boolean containsInAll(List<Postings> lists, int number) {
+            for(int i = 1; i < lists.size(); i++) {
+                if(Arrays.binarySearch(lists.get(i).documents, 0, lists.get(i).size, number) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Sum of each term's best field, 0 when a term matches no field.
+         */
+        private int getScore(List<String> terms, Document document) {
+            int score = 0;
+            for(String term : terms) {
+                int best = 0;
+                for(int field = 0; field < FIELD_WEIGHTS.length; field++) {
+                    best = Math.max(best, getMatchScore(term, document.values[field]) * FIELD_WEIGHTS[field]);
+                }
+                if(best == 0) {
+                    return 0;
+                }
+                score += best;
+            }
+            return score;
+        }
+
+        /**
+         * Object headers, references and array payloads on a 64 bit JVM with compressed pointers.
+         */
+        private long getEstimatedBytes() {
+            long bytes = 16 + documents.size() * 4L;
+            for(Document document : documents) {
+                if(document != null) {
+                    bytes += 32 + 48; //Document, values array and its map entry with the boxed id
+                    for(String value : document.values) {
+                        bytes += 40 + value.length();
+                    }
+                }
+            }
+            for(Postings list : postings.values()) {
+                bytes += 48 + 16 + 32 + list.documents.length * 4L; //Map entry, gram, Postings and its array
+            }
+            return bytes;
+        }
+    }
+
+    private static class Postings {
+
+        private int[] documents = new int[2];
+
+        private int size;
+
+        private void add(int number) {
+            if(size == documents.length) {
+                documents = Arrays.copyOf(documents, size + (size >> 1) + 1);
+            }
+            documents[size++] = number;
+        }
+    }
+
+    private static class Hit {
+
+        private static final Comparator<Hit> RANK = Comparator.comparingInt((Hit hit) -> -hit.score)
+                .thenComparing(hit -> hit.document.getUsername())
+                .thenComparingLong(hit -> hit.document.id);
+
+        private final Document document;
+
+        private final int score;
+
+        private Hit(Document document, int score) {
+            this.document = document;
+            this.score = score;
+        }
+    }
+}
@@ -1,22 +1,37 @@
 package com.hardi.Server.service;
 
 import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserChanges;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserPage;
+import com.hardi.Server.domain.UserSearchQuery;
 import com.hardi.Server.exceptions.domain.EmailExistsException;
 import com.hardi.Server.exceptions.domain.EmailNotFoundException;
 import com.hardi.Server.exceptions.domain.NotImageFileException;
+import com.hardi.Server.exceptions.domain.UserVersionMismatchException;
 import com.hardi.Server.exceptions.domain.UsernameExistsException;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.mail.MessagingException;
 import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserService {
 
-    User register(String firstName, String lastName, String username, String email) throws UsernameExistsException, EmailExistsException, MessagingException;
+    User register(String firstName, String lastName, String username, String email) throws UsernameExistsException, EmailExistsException;
 
     List<User> getUsers();
 
+    UserPage getUsers(UserListQuery query);
+
+    void streamUsers(UserListQuery query, Consumer<User> consumer);
+
+    String getUsersVersion(UserListQuery query);
+
+    UserPage searchUsers(UserSearchQuery query);
+
+    UserChanges getUserChanges(Long since, Integer limit);
+
     User findUserByUsername(String username);
 
     User findUserByEmail(String email);
@@ -25,11 +40,11 @@ public interface UserService {
                     Boolean isNonBlocked, Boolean isActive, MultipartFile profileImage) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException;
 
     User updateUser(String currentUsername, String newFirstName, String newLastName, String newUsername, String newEmail, String role,
-                     Boolean isNonBlocked, Boolean isActive, MultipartFile profileImage) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException;
+                     Boolean isNonBlocked, Boolean isActive, MultipartFile profileImage, Long expectedVersion) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException, UserVersionMismatchException;
 
     void deleteUser(String username) throws IOException;
 
-    void resetPassword(String email) throws EmailNotFoundException, MessagingException;
+    void resetPassword(String email) throws EmailNotFoundException;
 
     User updateProfileImage(String username, MultipartFile profileImage) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException;
 }
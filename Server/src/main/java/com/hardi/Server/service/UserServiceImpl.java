@@ -2,88 +2,144 @@ package com.hardi.Server.service;
 
 import com.hardi.Server.domain.Role;
 import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserChangeType;
+import com.hardi.Server.domain.UserChanges;
+import com.hardi.Server.domain.UserListQuery;
+import com.hardi.Server.domain.UserPage;
 import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.domain.UserSearchQuery;
 import com.hardi.Server.exceptions.domain.EmailExistsException;
 import com.hardi.Server.exceptions.domain.EmailNotFoundException;
 import com.hardi.Server.exceptions.domain.NotImageFileException;
+import com.hardi.Server.exceptions.domain.UserVersionMismatchException;
 import com.hardi.Server.exceptions.domain.UsernameExistsException;
 import com.hardi.Server.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomStringUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import javax.mail.MessagingException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static com.hardi.Server.domain.Role.ROLE_USER;
 import static com.hardi.Server.utils.ErrorMessageConstants.*;
 import static com.hardi.Server.utils.FileConstants.*;
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-import static org.springframework.http.MediaType.*;
 
 @Service
 @Slf4j
 @Transactional
 @Qualifier("userDetailsService")
-public class UserServiceImpl implements UserService, UserDetailsService {
+public class UserServiceImpl implements UserService, UserDetailsService, UserDetailsPasswordService {
 
     private UserRepository userRepository;
 
-    private BCryptPasswordEncoder bCryptPasswordEncoder;
+    private PasswordEncoder passwordEncoder;
 
     private LoginAttemptService loginAttemptService;
 
     private EmailService emailService;
 
+    private LastLoginRecorder lastLoginRecorder;
+
+    private ProfileImageProcessor profileImageProcessor;
+
+    private UserCache userCache;
+
+    private TokenRevocationService tokenRevocationService;
+
+    private UserSearchIndex userSearchIndex;
+
+    private UserChangeLog userChangeLog;
+
+    private ProfileImageUrls profileImageUrls;
+
     @Autowired
-    public UserServiceImpl(UserRepository userRepository, BCryptPasswordEncoder bCryptPasswordEncoder,
-                           LoginAttemptService loginAttemptService, EmailService emailService) {
+    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                           LoginAttemptService loginAttemptService, EmailService emailService,
+                           LastLoginRecorder lastLoginRecorder, ProfileImageProcessor profileImageProcessor,
+                           UserCache userCache, TokenRevocationService tokenRevocationService,
+                           UserSearchIndex userSearchIndex, UserChangeLog userChangeLog, ProfileImageUrls profileImageUrls) {
         this.userRepository = userRepository;
-        this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.passwordEncoder = passwordEncoder;
         this.loginAttemptService = loginAttemptService;
         this.emailService = emailService;
+        this.lastLoginRecorder = lastLoginRecorder;
+        this.profileImageProcessor = profileImageProcessor;
+        this.userCache = userCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.userSearchIndex = userSearchIndex;
+        this.userChangeLog = userChangeLog;
+        this.profileImageUrls = profileImageUrls;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findUserByUsername(username);
+        User user = userCache.reloadByUsername(username, userRepository::findUserByUsername); //Never a stale password, lock or token version
         if(user == null) {
             log.error("User not found by username: " + username);
             throw new UsernameNotFoundException(USERNAME_NOT_FOUND + username);
         }
+        boolean wasNotLocked = user.isNotLocked();
         validateLoginAttempt(user);
+        if(wasNotLocked != user.isNotLocked()) {
+            if(!user.isNotLocked()) {
+                tokenRevocationService.revokeTokens(user);
+            }
+            //Persisted right away, unlike the last login date, by a targeted update that a stale copy cannot fail
+            userRepository.updateLockState(user.getId(), user.isNotLocked(), user.getTokenVersion());
+            user.setVersion(user.getVersion() + 1);
+            userCache.invalidate(user);
+            userChangeLog.record(user, UserChangeType.UPDATE);
+        }
 
-        user.setLastLoginDateDisplay(user.getLastLoginDate());
-        user.setLastLoginDate(new Date());
-        userRepository.save(user);
+        lastLoginRecorder.recordLogin(user);
+        lastLoginRecorder.applyPendingLogin(user);
+        userCache.put(user); //Keeps the cached copy in step with the login written behind
         log.info("User found: " + username);
 
         return new UserPrincipal(user);
     }
 
     @Override
-    public User register(String firstName, String lastName, String username, String email)
-            throws UsernameExistsException, EmailExistsException, MessagingException {
-        validateNewUsernameAndEmail(StringUtils.EMPTY, username, email);
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        //Called after a successful login when the stored hash uses a lower BCrypt cost than configured
+        userRepository.updatePassword(userDetails.getUsername(), newPassword);
+        userCache.invalidate(userDetails.getUsername(), null);
+        log.info("Password hash upgraded for: " + userDetails.getUsername());
+        User user = ((UserPrincipal) userDetails).getUser();
+        user.setPassword(newPassword);
+        return new UserPrincipal(user);
+    }
 
+    @Override
+    @Transactional(rollbackFor = {UsernameExistsException.class, EmailExistsException.class})
+    public User register(String firstName, String lastName, String username, String email)
+            throws UsernameExistsException, EmailExistsException {
         User user = new User();
         String password = generatePassword();
         String encodedPassword = encodePassword(password);
@@ -98,10 +154,12 @@ public class UserServiceImpl implements UserService, UserDetailsService {
         user.setActive(true);
         user.setNotLocked(true);
         user.setRole(ROLE_USER.name());
-        user.setAuthorities(ROLE_USER.getAuthorities());
-        user.setProfileImageUrl(getTemporaryProfileImageUrl(username));
+        user.setPermissions(ROLE_USER.getPermissions());
+        user.setProfileImageUrl(profileImageUrls.getTemporaryImageUrl(username));
 
-        User saved = userRepository.save(user);
+        User saved = saveUniqueUser(user);
+        userSearchIndex.index(saved);
+        userChangeLog.record(saved, UserChangeType.INSERT);
         emailService.sendNewPasswordEmail(firstName, password, email);
         return saved;
     }
@@ -112,19 +170,84 @@ public class UserServiceImpl implements UserService, UserDetailsService {
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public UserPage getUsers(UserListQuery query) {
+        List<User> users = userRepository.findPage(query, query.getLimit() + 1); //One extra row tells if there is a next page
+        if(users.size() <= query.getLimit()) {
+            return new UserPage(users, null);
+        }
+        List<User> page = new ArrayList<>(users.subList(0, query.getLimit()));
+        return new UserPage(page, query.encodeCursor(page.get(page.size() - 1)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamUsers(UserListQuery query, Consumer<User> consumer) {
+        try (Stream<User> users = userRepository.streamAll(query)) {
+            users.forEach(consumer);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String getUsersVersion(UserListQuery query) {
+        return userRepository.getListVersion(query);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UserPage searchUsers(UserSearchQuery query) {
+        UserSearchIndex.Hits hits = userSearchIndex.search(query.getText(), query.getOffset(), query.getLimit());
+        Map<Long, User> usersById = new HashMap<>();
+        for(User user : userRepository.findAllById(hits.getIds())) {
+            usersById.put(user.getId(), user);
+        }
+        List<User> users = new ArrayList<>();
+        for(Long id : hits.getIds()) {
+            if(usersById.containsKey(id)) {
+                users.add(usersById.get(id)); //Rank order, users deleted by another instance are left out
+            }
+        }
+        return new UserPage(users, query.getNextCursor(hits.getTotal()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UserChanges getUserChanges(Long since, Integer limit) {
+        int pageSize = limit == null ? UserListQuery.MAXIMUM_LIMIT : Math.max(1, Math.min(limit, UserListQuery.MAXIMUM_LIMIT));
+        UserChangeLog.Changes changes = userChangeLog.getChanges(since, pageSize);
+        Map<String, UserChangeType> latest = new LinkedHashMap<>();
+        for(UserChangeLog.Change change : changes.getChanges()) {
+            latest.remove(change.getUserId());
+            latest.put(change.getUserId(), change.getType()); //Only the last change of a user counts
+        }
+        List<String> changedUserIds = new ArrayList<>();
+        List<String> deletedUserIds = new ArrayList<>();
+        latest.forEach((userId, type) -> (type == UserChangeType.DELETE ? deletedUserIds : changedUserIds).add(userId));
+        List<User> users = changedUserIds.isEmpty() ? new ArrayList<>() : userRepository.findByUserIdIn(changedUserIds);
+        if(users.size() < changedUserIds.size()) {
+            //Deleted after this page of changes, the delete itself comes with a later page
+            users.forEach(user -> changedUserIds.remove(user.getUserId()));
+            deletedUserIds.addAll(changedUserIds);
+        }
+        return new UserChanges(changes.getVersion(), changes.isReset(), changes.hasMore(), users, deletedUserIds);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public User findUserByUsername(String username) {
-        return userRepository.findUserByUsername(username);
+        return userCache.getByUsername(username, userRepository::findUserByUsername);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public User findUserByEmail(String email) {
-        return userRepository.findUserByEmail(email);
+        return userCache.getByEmail(email, userRepository::findUserByEmail);
     }
 
     @Override
+    @Transactional(rollbackFor = {UsernameExistsException.class, EmailExistsException.class})
     public User addNewUser(String firstName, String lastName, String username, String email, String role, Boolean isNonBlocked, Boolean isActive, MultipartFile profileImage) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException {
-        validateNewUsernameAndEmail(StringUtils.EMPTY, username, email);
-
         User user = new User();
         String password = generatePassword();
         String encodedPassword = encodePassword(password);
@@ -139,17 +262,27 @@ public class UserServiceImpl implements UserService, UserDetailsService {
         user.setActive(true);
         user.setNotLocked(true);
         user.setRole(getRoleEnumName(role).name());
-        user.setAuthorities(getRoleEnumName(role).getAuthorities());
-        user.setProfileImageUrl(getTemporaryProfileImageUrl(username));
+        user.setPermissions(getRoleEnumName(role).getPermissions());
+        user.setProfileImageUrl(profileImageUrls.getTemporaryImageUrl(username));
 
-        User saved = userRepository.save(user);
+        User saved = saveUniqueUser(user);
+        userSearchIndex.index(saved);
         saveProfileImage(user, profileImage);
+        userChangeLog.record(saved, UserChangeType.INSERT);
         return saved;
     }
 
     @Override
-    public User updateUser(String currentUsername, String newFirstName, String newLastName, String newUsername, String newEmail, String role, Boolean isNonBlocked, Boolean isActive, MultipartFile profileImage) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException {
-        User currentUser = validateNewUsernameAndEmail(currentUsername, newUsername, newEmail);
+    @Transactional(rollbackFor = {UsernameExistsException.class, EmailExistsException.class, UserVersionMismatchException.class})
+    public User updateUser(String currentUsername, String newFirstName, String newLastName, String newUsername, String newEmail, String role, Boolean isNonBlocked, Boolean isActive, MultipartFile profileImage, Long expectedVersion) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException, UserVersionMismatchException {
+        User currentUser = getExistingUser(currentUsername);
+        if(expectedVersion != null && currentUser.getVersion() != expectedVersion) {
+            throw new UserVersionMismatchException(USER_VERSION_MISMATCH);
+        }
+        userCache.invalidate(currentUser); //Old username and email
+        if(isTokenRevokingChange(currentUser, newUsername, role, isNonBlocked, isActive)) {
+            tokenRevocationService.revokeTokens(currentUser);
+        }
 
         currentUser.setFirstName(newFirstName);
         currentUser.setLastName(newLastName);
@@ -158,24 +291,40 @@ public class UserServiceImpl implements UserService, UserDetailsService {
         currentUser.setActive(isActive);
         currentUser.setNotLocked(isNonBlocked);
         currentUser.setRole(getRoleEnumName(role).name());
-        currentUser.setAuthorities(getRoleEnumName(role).getAuthorities());
-        User saved = userRepository.save(currentUser);
-        saveProfileImage(currentUser, profileImage);
+        currentUser.setPermissions(getRoleEnumName(role).getPermissions());
+        User saved;
+        try {
+            saved = saveUniqueUser(currentUser); //Fails when the row's version moved past the one read
+        } catch (ObjectOptimisticLockingFailureException e) {
+            userCache.invalidate(currentUser);
+            if(expectedVersion != null) {
+                throw new UserVersionMismatchException(USER_VERSION_MISMATCH);
+            }
+            throw e;
+        }
+        userCache.invalidate(currentUser);
+        userSearchIndex.index(saved);
+        saveProfileImage(saved, profileImage);
+        userChangeLog.record(saved, UserChangeType.UPDATE);
         return saved;
     }
 
     @Override
     public void deleteUser(String username) throws IOException {
-        User user = userRepository.findUserByUsername(username);
+        User user = getExistingUser(username); //Revokes from the current token version
         Path userFolder = Paths.get(USER_FOLDER + user.getUsername()).toAbsolutePath().normalize();
         FileUtils.deleteDirectory(new File(userFolder.toString()));
 
+        tokenRevocationService.revokeTokens(user);
         userRepository.deleteById(user.getId());
+        userCache.invalidate(user);
+        userSearchIndex.remove(user);
+        userChangeLog.record(user, UserChangeType.DELETE);
     }
 
     @Override
-    public void resetPassword(String email) throws EmailNotFoundException, MessagingException {
-        User user = userRepository.findUserByEmail(email);
+    public void resetPassword(String email) throws EmailNotFoundException {
+        User user = userRepository.findUserByEmail(email); //Managed, a cached copy may predate another instance's update
 
         if(user == null) {
             throw new EmailNotFoundException(NO_USER_FOUND_BY_EMAIL + email);
@@ -184,13 +333,16 @@ public class UserServiceImpl implements UserService, UserDetailsService {
         String password = generatePassword();
         user.setPassword(encodePassword(password));
         userRepository.save(user);
+        userCache.invalidate(user);
+        userChangeLog.record(user, UserChangeType.UPDATE);
         emailService.sendNewPasswordEmail(user.getFirstName(), password, user.getEmail());
     }
 
     @Override
     public User updateProfileImage(String username, MultipartFile profileImage) throws UsernameExistsException, EmailExistsException, IOException, NotImageFileException {
-        User user = validateNewUsernameAndEmail(username, null, null);
+        User user = getExistingUser(username);
         saveProfileImage(user, profileImage);
+        userChangeLog.record(user, UserChangeType.UPDATE);
         return user;
     }
 
@@ -199,64 +351,87 @@ public class UserServiceImpl implements UserService, UserDetailsService {
     }
 
     private void saveProfileImage(User user, MultipartFile profileImage) throws IOException, NotImageFileException {
-        if(profileImage != null && Arrays.asList(IMAGE_JPEG_VALUE, IMAGE_PNG_VALUE, IMAGE_GIF_VALUE).contains(profileImage.getContentType())) {
-            Path userFolder = Paths.get(USER_FOLDER + user.getUsername()).toAbsolutePath().normalize();
-            if(!Files.exists(userFolder)) {
-                Files.createDirectories(userFolder);
-                log.info(DIRECTORY_CREATED  + userFolder);
-            }
-            Files.deleteIfExists(Paths.get(userFolder + user.getUsername() + DOT + JPG_EXTENSION));
-            Files.copy(profileImage.getInputStream(), userFolder.resolve(user.getUsername() + DOT + JPG_EXTENSION), REPLACE_EXISTING);
-            user.setProfileImageUrl(setProfileImageUrl(user.getUsername()));
-            userRepository.save(user);
-            log.info(FILE_SAVED_IN_FILE_SYSTEM + profileImage.getOriginalFilename());
-        } else {
-            throw new NotImageFileException("File is not an image file. Please upload an image.");
+        if(profileImage == null) {
+            return; //The image is optional when adding or updating a user
+        }
+        profileImageProcessor.validate(profileImage); //By content, the client's content type is not trusted
+        Path userFolder = Paths.get(USER_FOLDER + user.getUsername()).toAbsolutePath().normalize();
+        if(!Files.exists(userFolder)) {
+            Files.createDirectories(userFolder);
+            log.info(DIRECTORY_CREATED  + userFolder);
         }
+        profileImageProcessor.deleteVariants(user.getUsername());
+        profileImageProcessor.saveOriginal(user.getUsername(), profileImage);
+        user.setProfileImageUrl(profileImageUrls.getUploadedImageUrl(user.getUsername()));
+        user.setVersion(userRepository.saveAndFlush(user).getVersion()); //Returned with the raised version
+        userCache.invalidate(user);
+        profileImageProcessor.processAsync(user.getUsername());
+        log.info(FILE_SAVED_IN_FILE_SYSTEM + profileImage.getOriginalFilename());
     }
 
-    private String setProfileImageUrl(String username) {
-        return ServletUriComponentsBuilder.fromCurrentContextPath()
-                .path(USER_IMAGE_PATH + username + FORWARD_SLASH + username + DOT + JPG_EXTENSION).toUriString();
+
+    /**
+     * Tokens carry the username and the role's permissions, and must stop working for locked or disabled users.
+     */
+    private boolean isTokenRevokingChange(User user, String newUsername, String role, Boolean isNonBlocked, Boolean isActive) {
+        return !user.getUsername().equals(newUsername)
+                || !user.getRole().equals(getRoleEnumName(role).name())
+                || (user.isNotLocked() && !Boolean.TRUE.equals(isNonBlocked))
+                || (user.isActive() && !Boolean.TRUE.equals(isActive));
     }
 
+    /**
+     * The managed entity for a write, never the cached copy.
+     */
+    private User getExistingUser(String username) {
+        User user = userRepository.findUserByUsername(username);
+        if(user == null) {
+            throw new UsernameNotFoundException(USERNAME_NOT_FOUND + username);
+        }
+        return user;
+    }
 
-    private User validateNewUsernameAndEmail(String currentUsername, String newUsername, String email) throws UsernameExistsException, EmailExistsException {
-        User userByNewUsername = findUserByUsername(newUsername);
-        User userNewByEmail = findUserByEmail(email);
-        if(StringUtils.isNotBlank(currentUsername)) {
-            User currentUser = findUserByUsername(currentUsername);
-            if(currentUser == null) {
-                throw new UsernameNotFoundException(USERNAME_NOT_FOUND + currentUsername);
-            }
-            if(userByNewUsername != null && !currentUser.getId().equals(userByNewUsername.getId())) {
+    /**
+     * Inserts or updates the user and lets the unique indexes on username and email reject duplicates,
+     * instead of looking them up first. The flush makes the violation surface here, inside the
+     * transaction that is rolled back for the mapped exceptions.
+     */
+    private User saveUniqueUser(User user) throws UsernameExistsException, EmailExistsException {
+        try {
+            return userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            String violation = getViolationMessage(e);
+            if(violation.contains(User.USERNAME_UNIQUE_INDEX)) {
                 throw new UsernameExistsException(USERNAME_ALREADY_EXISTS);
             }
-            if(userNewByEmail != null && !currentUser.getId().equals(userNewByEmail.getId())) {
+            if(violation.contains(User.EMAIL_UNIQUE_INDEX)) {
                 throw new EmailExistsException(EMAIL_ALREADY_EXISTS);
             }
-            return currentUser;
-        } else {
-            if(userByNewUsername != null) {
-                throw new UsernameExistsException(USERNAME_ALREADY_EXISTS);
-            }
-            if(userNewByEmail != null) {
-                throw new EmailExistsException(EMAIL_ALREADY_EXISTS);
-            }
-            return null;
+            throw e;
         }
     }
 
-    private String getTemporaryProfileImageUrl(String username) {
-        return ServletUriComponentsBuilder.fromCurrentContextPath().path(DEFAULT_USER_IMAGE_PATH + username).toUriString(); //Default base url (8080/dev/prod)
+    private String getViolationMessage(DataIntegrityViolationException e) {
+        //MySQL and H2 report the index name in the message, hibernate does not always extract it
+        StringBuilder messages = new StringBuilder();
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof ConstraintViolationException && ((ConstraintViolationException) cause).getConstraintName() != null) {
+                messages.append(((ConstraintViolationException) cause).getConstraintName()).append(' ');
+            }
+            messages.append(cause.getMessage()).append(' ');
+        }
+        return messages.toString().toLowerCase(Locale.ROOT);
     }
 
-    private String generateUserId() {
+    /**
+     * Random, so it is not unique by itself: the unique index on user_id rejects a collision.
+     */
+    static String generateUserId() {
         return RandomStringUtils.randomNumeric(10);
     }
 
     private String encodePassword(String password) {
-        return bCryptPasswordEncoder.encode(password);
+        return passwordEncoder.encode(password);
     }
 
     private String generatePassword() {
@@ -1,14 +1,18 @@
 package com.hardi.Server.utils;
 
+import com.hardi.Server.domain.Permission;
+
+import static com.hardi.Server.domain.Permission.*;
+
 public class Authorities {
 
-    public static final String[] USER_AUTHORITIES = {"user:read"};
+    public static final Permission[] USER_AUTHORITIES = {USER_READ};
 
-    public static final String[] HR_AUTHORITIES = {"user:read", "user:update"};
+    public static final Permission[] HR_AUTHORITIES = {USER_READ, USER_UPDATE};
 
-    public static final String[] MANAGER_AUTHORITIES = {"user:read", "user:update"};
+    public static final Permission[] MANAGER_AUTHORITIES = {USER_READ, USER_UPDATE};
 
-    public static final String[] ADMIN_AUTHORITIES = {"user:read", "user:update", "user:create"};
+    public static final Permission[] ADMIN_AUTHORITIES = {USER_READ, USER_UPDATE, USER_CREATE};
 
-    public static final String[] SUPER_ADMIN_AUTHORITIES = {"user:read", "user:update", "user:create", "user:delete"};
+    public static final Permission[] SUPER_ADMIN_AUTHORITIES = {USER_READ, USER_UPDATE, USER_CREATE, USER_DELETE};
 }
@@ -0,0 +1,72 @@
+package com.hardi.Server.utils;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Ed25519 signatures (RFC 8037) for java-jwt, which has no EdDSA support of its own.
+ * Uses the JDK's "Ed25519" provider.
+ */
+public class EdDSAAlgorithm extends Algorithm {
+
+    private static final String SIGNATURE_ALGORITHM = "Ed25519";
+
+    private final Function<String, PublicKey> publicKeysById;
+
+    private final Supplier<PrivateKey> privateKey;
+
+    private final Supplier<String> privateKeyId;
+
+    public EdDSAAlgorithm(Function<String, PublicKey> publicKeysById, Supplier<PrivateKey> privateKey, Supplier<String> privateKeyId) {
+        super("EdDSA", SIGNATURE_ALGORITHM);
+        this.publicKeysById = publicKeysById;
+        this.privateKey = privateKey;
+        this.privateKeyId = privateKeyId;
+    }
+
+    @Override
+    public void verify(DecodedJWT jwt) throws SignatureVerificationException {
+        try {
+            PublicKey publicKey = publicKeysById.apply(jwt.getKeyId());
+            if(publicKey == null) {
+                throw new IllegalStateException("Unknown key id " + jwt.getKeyId());
+            }
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM); //Not thread-safe, one per call
+            signature.initVerify(publicKey);
+            signature.update((jwt.getHeader() + "." + jwt.getPayload()).getBytes(StandardCharsets.UTF_8));
+            if(!signature.verify(Base64.getUrlDecoder().decode(jwt.getSignature()))) {
+                throw new SignatureVerificationException(this);
+            }
+        } catch (GeneralSecurityException | IllegalStateException | IllegalArgumentException e) {
+            throw new SignatureVerificationException(this, e);
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] contentBytes) throws SignatureGenerationException {
+        try {
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(privateKey.get());
+            signature.update(contentBytes);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new SignatureGenerationException(this, e);
+        }
+    }
+
+    @Override
+    public String getSigningKeyId() {
+        return privateKeyId.get();
+    }
+}
@@ -0,0 +1,66 @@
+package com.hardi.Server.utils;
+
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * AES-GCM for outbox bodies, which carry generated passwords until they are sent. The key is derived
+ * from {@code email.outbox.secret}, every instance draining the outbox needs the same secret.
+ */
+@Component
+public class EmailBodyCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_LENGTH = 128;
+
+    private final SecretKeySpec key;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public EmailBodyCipher(@Value("${email.outbox.secret}") String secret) {
+        this.key = new SecretKeySpec(Hashing.sha256().hashString(secret, StandardCharsets.UTF_8).asBytes(), "AES");
+    }
+
+    /**
+     * Base64 of a random IV followed by the ciphertext and its tag.
+     */
+    public String encrypt(String body) {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            byte[] encrypted = cipher.doFinal(body.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(IV_LENGTH + encrypted.length).put(iv).put(encrypted).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encrypt email body", e);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the body was encrypted with another secret or changed since
+     */
+    public String decrypt(String encryptedBody) {
+        try {
+            byte[] bytes = Base64.getDecoder().decode(encryptedBody);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, bytes, 0, IV_LENGTH));
+            return new String(cipher.doFinal(bytes, IV_LENGTH, bytes.length - IV_LENGTH), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Could not decrypt email body", e);
+        }
+    }
+}
@@ -2,33 +2,25 @@ package com.hardi.Server.utils;
 
 public class EmailConstants {
 
-    public static final String SIMPLE_MAIL_TRANSFER_PROTOCOL = "smtps";
-
-    @Value("${SMTP_USERNAME}")
-    public static final String USERNAME;
-
-    @Value("${SMTP_PASSWORD}")
-    public static final String PASSWORD;
-
-    @Value("${SMTP_MAIL}")
-    public static final String FROM_EMAIL;
-
     public static final String CC_EMAIL = "";
 
     public static final String EMAIL_SUBJECT = "Get Arrays, LLC - New Password";
 
-    public static final String GMAIL_SMTP_SERVER = "smtp.gmail.com";
+    public static final String SMTP_HOST = "mail.%s.host"; //%s is the transport protocol, smtp or smtps
+
+    public static final String SMTP_AUTH = "mail.%s.auth";
 
-    public static final String SMTP_HOST = "mail.smtp.host";
+    public static final String SMTP_PORT = "mail.%s.port";
 
-    public static final String SMTP_AUTH = "mail.smtp.auth";
+    public static final String SMTP_STARTTLS_ENABLE = "mail.%s.starttls.enable";
 
-    public static final String SMTP_PORT = "mail.smtp.port";
+    public static final String SMTP_STARTTLS_REQUIRED = "mail.%s.starttls.required";
 
-    public static final int DEFAULT_PORT = 465;
+    public static final String SMTP_CONNECTION_TIMEOUT = "mail.%s.connectiontimeout";
 
-    public static final String SMTP_STARTTLS_ENABLE = "mail.smtp.starttls.enable";
+    public static final String SMTP_TIMEOUT = "mail.%s.timeout";
 
-    public static final String SMTP_STARTTLS_REQUIRED = "mail.smtp.starttls.required";
+    public static final String SMTP_WRITE_TIMEOUT = "mail.%s.writetimeout";
 
+    public static final String NEW_PASSWORD_EMAIL_TEXT = "Hello %s, \n \n Your new account password is: %s\n \n The Support Team";
 }
@@ -23,4 +23,30 @@ public class ErrorMessageConstants {
     public static final String USERNAME_NOT_FOUND = "User not found with username: ";
 
     public static final String NO_USER_FOUND_BY_EMAIL = "No user found for email: ";
+
+    public static final String INVALID_CURSOR = "The list cursor is invalid. Please reload the list";
+
+    public static final String INVALID_SORT_FIELD = "Users cannot be sorted by: ";
+
+    public static final String TOO_MANY_LOGIN_ATTEMPTS = "Too many failed logins from your address. Please try again later";
+
+    public static final String PASSWORD_HASHING_UNAVAILABLE = "The server is busy right now. Please try again in a moment";
+
+    public static final String UNSUPPORTED_USER_FILE_FORMAT = "Users are imported and exported as csv or ndjson, not: ";
+
+    public static final String MISSING_IMPORT_HEADER = "The first line of a csv import must name the columns, e.g. firstName,lastName,username,email,role";
+
+    public static final String UNREADABLE_IMPORT_ROW = "The line could not be read: ";
+
+    public static final String UNCLOSED_IMPORT_QUOTE = "A quoted value is not closed within 8192 characters";
+
+    public static final String MISSING_IMPORT_VALUE = "A value is required for: ";
+
+    public static final String IMPORT_VALUE_TOO_LONG = "The value is longer than 255 characters: ";
+
+    public static final String UNKNOWN_ROLE = "Unknown role: ";
+
+    public static final String IMPORT_BATCH_FAILED = "The row could not be saved. Please import it again";
+
+    public static final String USER_VERSION_MISMATCH = "The user was changed by someone else. Please reload it and try again";
 }
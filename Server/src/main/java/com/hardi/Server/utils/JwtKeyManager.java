@@ -0,0 +1,222 @@
+package com.hardi.Server.utils;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.ECDSAKeyProvider;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hardi.Server.utils.SecurityConstants.EXPIRATION_TIME;
+
+/**
+ * Signing keys for the configured JWT algorithm. HS512 signs with the shared {@code jwt.secret}.
+ * ES256 and EdDSA sign with key pairs generated in memory and rotated every
+ * {@code jwt.key-rotation-interval}. Retired keys still verify until the last token they signed
+ * expires. Their public halves are published as a JWKS so other services can verify locally.
+ * Generated key pairs exist only in this instance: behind a load balancer without sticky
+ * sessions, use HS512.
+ */
+@Component
+@Slf4j
+public class JwtKeyManager {
+
+    public static final String HMAC_SHA512 = "HS512";
+
+    public static final String ECDSA_P256 = "ES256";
+
+    public static final String ED_DSA = "EdDSA";
+
+    private static final int ED25519_KEY_LENGTH = 32;
+
+    private final String algorithmName;
+
+    private final long rotationInterval;
+
+    private final Algorithm algorithm;
+
+    private final Map<String, SigningKey> keys = new ConcurrentHashMap<>();
+
+    private final SecureRandom random = new SecureRandom();
+
+    private volatile SigningKey signingKey;
+
+    public JwtKeyManager(@Value("${jwt.algorithm:HS512}") String algorithmName,
+                         @Value("${jwt.secret}") String secret,
+                         @Value("${jwt.key-rotation-interval:86400000}") long rotationInterval) {
+        this.algorithmName = algorithmName;
+        this.rotationInterval = rotationInterval;
+        switch (algorithmName) {
+            case HMAC_SHA512:
+                byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+                //Identifies the secret without revealing it
+                this.signingKey = new SigningKey(Hashing.sha256().hashBytes(secretBytes).toString().substring(0, 16), null);
+                this.algorithm = Algorithm.HMAC512(secretBytes);
+                break;
+            case ECDSA_P256:
+                rotate();
+                this.algorithm = Algorithm.ECDSA256(new ECDSAKeyProvider() {
+                    @Override
+                    public ECPublicKey getPublicKeyById(String keyId) {
+                        return (ECPublicKey) getPublicKey(keyId);
+                    }
+
+                    @Override
+                    public ECPrivateKey getPrivateKey() {
+                        return (ECPrivateKey) signingKey.keyPair.getPrivate();
+                    }
+
+                    @Override
+                    public String getPrivateKeyId() {
+                        return signingKey.id;
+                    }
+                });
+                break;
+            case ED_DSA:
+                rotate();
+                this.algorithm = new EdDSAAlgorithm(this::getPublicKey, () -> signingKey.keyPair.getPrivate(), () -> signingKey.id);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported JWT algorithm: " + algorithmName);
+        }
+        log.info("Signing tokens with " + algorithmName + ", key " + signingKey.id);
+    }
+
+    /**
+     * The algorithm signs with the current key and verifies with the key named by the token's kid.
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getSigningKeyId() {
+        return signingKey.id;
+    }
+
+    public String getAlgorithmName() {
+        return algorithmName;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.key-rotation-interval:86400000}", initialDelayString = "${jwt.key-rotation-interval:86400000}")
+    public synchronized void rotate() {
+        if(HMAC_SHA512.equals(algorithmName)) {
+            return; //The shared secret is rotated through configuration
+        }
+        long now = System.currentTimeMillis();
+        SigningKey retired = signingKey;
+        SigningKey created = new SigningKey(newKeyId(), generateKeyPair());
+        keys.put(created.id, created);
+        signingKey = created;
+        if(retired != null) {
+            retired.retiredAt = now;
+        }
+        keys.values().removeIf(key -> key.retiredAt > 0 && key.retiredAt + EXPIRATION_TIME < now);
+        log.info("Rotated JWT signing key to " + created.id + ", " + keys.size() + " key(s) can verify");
+    }
+
+    /**
+     * Whether a token naming this kid verifies with the same key as before. Without a kid a key pair
+     * token verifies with the current signing key, which rotation replaces.
+     */
+    public boolean canVerify(String keyId) {
+        if(HMAC_SHA512.equals(algorithmName)) {
+            return keyId == null || keyId.equals(signingKey.id);
+        }
+        return keyId != null && keys.containsKey(keyId);
+    }
+
+    /**
+     * Public keys as a JSON Web Key Set (RFC 7517), empty for HMAC since its secret must not be published.
+     */
+    public Map<String, Object> getJsonWebKeySet() {
+        List<Map<String, Object>> jsonWebKeys = new ArrayList<>();
+        for(SigningKey key : keys.values()) {
+            Map<String, Object> jsonWebKey = new LinkedHashMap<>();
+            PublicKey publicKey = key.keyPair.getPublic();
+            if(publicKey instanceof ECPublicKey) {
+                jsonWebKey.put("kty", "EC");
+                jsonWebKey.put("crv", "P-256");
+                jsonWebKey.put("x", toBase64Url(((ECPublicKey) publicKey).getW().getAffineX()));
+                jsonWebKey.put("y", toBase64Url(((ECPublicKey) publicKey).getW().getAffineY()));
+            } else {
+                byte[] encoded = publicKey.getEncoded(); //X.509 wrapping, the raw key is the last 32 bytes
+                jsonWebKey.put("kty", "OKP");
+                jsonWebKey.put("crv", "Ed25519");
+                jsonWebKey.put("x", Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(Arrays.copyOfRange(encoded, encoded.length - ED25519_KEY_LENGTH, encoded.length)));
+            }
+            jsonWebKey.put("kid", key.id);
+            jsonWebKey.put("use", "sig");
+            jsonWebKey.put("alg", algorithmName);
+            jsonWebKeys.add(jsonWebKey);
+        }
+        Map<String, Object> jsonWebKeySet = new LinkedHashMap<>();
+        jsonWebKeySet.put("keys", jsonWebKeys);
+        return jsonWebKeySet;
+    }
+
+    private PublicKey getPublicKey(String keyId) {
+        SigningKey key = keyId == null ? signingKey : keys.get(keyId);
+        return key == null ? null : key.keyPair.getPublic();
+    }
+
+    private KeyPair generateKeyPair() {
+        try {
+            if(ECDSA_P256.equals(algorithmName)) {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"), random);
+                return generator.generateKeyPair();
+            }
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot generate a " + algorithmName + " key pair", e);
+        }
+    }
+
+    private String newKeyId() {
+        byte[] id = new byte[12];
+        random.nextBytes(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+    }
+
+    private static String toBase64Url(BigInteger coordinate) {
+        byte[] bytes = coordinate.toByteArray();
+        byte[] fixed = new byte[32]; //Unsigned, left padded to the P-256 field size
+        int length = Math.min(bytes.length, fixed.length);
+        System.arraycopy(bytes, bytes.length - length, fixed, fixed.length - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    private static class SigningKey {
+
+        private final String id;
+
+        private final KeyPair keyPair;
+
+        private volatile long retiredAt;
+
+        private SigningKey(String id, KeyPair keyPair) {
+            this.id = id;
+            this.keyPair = keyPair;
+        }
+    }
+}
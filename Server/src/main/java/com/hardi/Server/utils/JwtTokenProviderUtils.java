@@ -2,84 +2,103 @@ package com.hardi.Server.utils;
 
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.hardi.Server.domain.Permission;
+import com.hardi.Server.domain.PermissionAuthenticationToken;
 import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.domain.VerifiedToken;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 
-import javax.servlet.http.HttpServletRequest;
-import java.util.ArrayList;
-import java.util.Arrays;
+import jakarta.servlet.http.HttpServletRequest;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static com.hardi.Server.utils.SecurityConstants.*;
 
 @Component
 public class JwtTokenProviderUtils {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private final JwtKeyManager jwtKeyManager;
+
+    private final JWTVerifier verifier;
+
+    public JwtTokenProviderUtils(JwtKeyManager jwtKeyManager) {
+        this.jwtKeyManager = jwtKeyManager;
+        this.verifier = getJWTVerifier(); //JWTVerifier is thread-safe, build it once
+    }
 
     public String generateJwtToken(UserPrincipal userPrincipal) {
-        String[] claims = getClaimsFromUser(userPrincipal);
         return JWT.create()
+                .withKeyId(jwtKeyManager.getSigningKeyId())
                 .withIssuer(GET_ARRAYS_LLC)
                 .withAudience(GET_ARRAYS_ADMINISTRATION)
                 .withIssuedAt(new Date())
                 .withSubject(userPrincipal.getUsername())
-                .withArrayClaim(AUTHORITIES, claims)
+                .withClaim(PERMISSIONS, userPrincipal.getUser().getPermissions())
+                .withClaim(USER_ID, userPrincipal.getUser().getId())
+                .withClaim(TOKEN_VERSION, userPrincipal.getUser().getTokenVersion())
                 .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
-                .sign(Algorithm.HMAC512(secret.getBytes()));
+                .sign(jwtKeyManager.getAlgorithm());
+    }
+
+    public VerifiedToken verifyToken(String token) {
+        DecodedJWT decodedJWT = verifier.verify(token);
+        Integer permissions = decodedJWT.getClaim(PERMISSIONS).asInt();
+        if(permissions == null) {
+            String[] claims = decodedJWT.getClaim(AUTHORITIES).asArray(String.class);
+            permissions = claims == null ? 0 : Permission.toMask(claims);
+        }
+        Integer tokenVersion = decodedJWT.getClaim(TOKEN_VERSION).asInt();
+        return new VerifiedToken(decodedJWT.getSubject(), decodedJWT.getClaim(USER_ID).asLong(),
+                tokenVersion == null ? 0 : tokenVersion, permissions, decodedJWT.getExpiresAt(), decodedJWT.getKeyId());
+    }
+
+    /**
+     * Whether the key that verified the token still verifies it, false once rotation dropped the key.
+     */
+    public boolean isKeyCurrent(VerifiedToken verifiedToken) {
+        return jwtKeyManager.canVerify(verifiedToken.getKeyId());
     }
 
     public List<GrantedAuthority> getAuthorities(String token) {
-        String[] claims = getClaimsFromToken(token);
-        return Arrays.stream(claims)
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+        return verifyToken(token).getAuthorities();
     }
 
-    public Authentication getAuthentication(String username, List<GrantedAuthority> authorities, HttpServletRequest request) {
-        UsernamePasswordAuthenticationToken userPasswordToken =
-                new UsernamePasswordAuthenticationToken(username, null, authorities);
+    public Authentication getAuthentication(VerifiedToken verifiedToken, HttpServletRequest request) {
+        PermissionAuthenticationToken userPasswordToken = getAuthentication(verifiedToken);
         userPasswordToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
         return userPasswordToken;
     }
 
+    public PermissionAuthenticationToken getAuthentication(VerifiedToken verifiedToken) {
+        return new PermissionAuthenticationToken(verifiedToken.getSubject(), verifiedToken.getPermissions());
+    }
+
     public boolean isTokenValid(String username, String token) {
-        JWTVerifier verifier = getJWTVerifier();
-        return StringUtils.isNotEmpty(username) && !isTokenExpired(verifier, token);
+        return StringUtils.isNotEmpty(username) && !isTokenExpired(verifyToken(token));
     }
 
-    public String getSubject(String token) {
-        JWTVerifier verifier = getJWTVerifier();
-        return verifier.verify(token).getSubject();
+    public boolean isTokenValid(VerifiedToken verifiedToken) {
+        return StringUtils.isNotEmpty(verifiedToken.getSubject()) && !isTokenExpired(verifiedToken);
     }
 
-    private boolean isTokenExpired(JWTVerifier verifier, String token) {
-        Date expiration = verifier.verify(token).getExpiresAt();
-        return expiration.before(new Date());
+    public String getSubject(String token) {
+        return verifyToken(token).getSubject();
     }
 
-    private String[] getClaimsFromToken(String token) {
-        JWTVerifier verifier = getJWTVerifier();
-        return verifier.verify(token).getClaim(AUTHORITIES).asArray(String.class);
+    private boolean isTokenExpired(VerifiedToken verifiedToken) {
+        return verifiedToken.isExpired(System.currentTimeMillis());
     }
 
     private JWTVerifier getJWTVerifier() {
         JWTVerifier verifier;
         try {
-            Algorithm algorithm = Algorithm.HMAC512(secret);
-            verifier = JWT.require(algorithm)
+            verifier = JWT.require(jwtKeyManager.getAlgorithm()) //Picks the verification key by the token's kid
                     .withIssuer(GET_ARRAYS_LLC)
                     .build();
         } catch (JWTVerificationException e) {
@@ -87,12 +106,4 @@ public class JwtTokenProviderUtils {
         }
         return verifier;
     }
-
-    private String[] getClaimsFromUser(UserPrincipal userPrincipal) {
-        List<String> authorities = new ArrayList<>();
-        for(GrantedAuthority grantedAuthority : userPrincipal.getAuthorities()) {
-            authorities.add(grantedAuthority.getAuthority());
-        }
-        return authorities.toArray(new String[0]);
-    }
 }
@@ -0,0 +1,56 @@
+package com.hardi.Server.utils;
+
+public class MetricsConstants {
+
+    public static final String JWT_VERIFICATION = "jwt.verification";
+
+    public static final String PASSWORD_HASHING = "password.hashing";
+
+    public static final String PASSWORD_HASHING_QUEUE = "password.hashing.queue";
+
+    public static final String PASSWORD_HASHING_ACTIVE = "password.hashing.active";
+
+    public static final String PASSWORD_HASHING_REJECTED = "password.hashing.rejected";
+
+    public static final String LOGIN_FAILURES = "login.failures";
+
+    public static final String LOGIN_BLOCKED_REQUESTS = "login.blocked.requests";
+
+    public static final String LOGIN_LOCKOUTS = "login.lockouts";
+
+    public static final String TOKEN_REVOCATIONS = "token.revocations";
+
+    public static final String TOKEN_REVOCATION_CHECKS = "token.revocation.checks";
+
+    public static final String EMAIL_SEND = "email.send";
+
+    public static final String EMAIL_OUTBOX = "email.outbox";
+
+    public static final String IMAGE_READ = "image.read";
+
+    public static final String IMAGE_WRITE = "image.write";
+
+    public static final String IMAGE_PROCESSING_QUEUE = "image.processing.queue";
+
+    public static final String USER_SEARCH = "user.search";
+
+    public static final String USER_SEARCH_REBUILD = "user.search.rebuild";
+
+    public static final String USER_SEARCH_DOCUMENTS = "user.search.documents";
+
+    public static final String USER_SEARCH_MEMORY = "user.search.memory";
+
+    public static final String SQL_STATEMENTS_PER_REQUEST = "sql.statements.per.request";
+
+    public static final String SQL_TIME_PER_REQUEST = "sql.time.per.request";
+
+    public static final String CACHE_GETS = "cache.gets"; //Same name and tags as Micrometer's cache binders
+
+    public static final String OUTCOME = "outcome";
+
+    public static final String RESULT = "result";
+
+    public static final String CACHE = "cache";
+
+    public static final String URI = "uri";
+}
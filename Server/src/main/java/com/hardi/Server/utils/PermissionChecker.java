@@ -0,0 +1,32 @@
+package com.hardi.Server.utils;
+
+import com.hardi.Server.domain.Permission;
+import com.hardi.Server.domain.PermissionAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+/**
+ * Permission checks for method security, e.g. {@code @PreAuthorize("@permissionChecker.has(authentication, 'USER_DELETE')")}.
+ */
+@Component
+public class PermissionChecker {
+
+    public boolean has(Authentication authentication, Permission permission) {
+        return permission.isGrantedBy(getPermissions(authentication));
+    }
+
+    public int getPermissions(Authentication authentication) {
+        if(authentication == null || !authentication.isAuthenticated()) {
+            return 0;
+        }
+        if(authentication instanceof PermissionAuthenticationToken) {
+            return ((PermissionAuthenticationToken) authentication).getPermissions();
+        }
+        int permissions = 0; //Authentications not created from a token, e.g. right after login
+        for(GrantedAuthority authority : authentication.getAuthorities()) {
+            permissions |= Permission.toMask(authority.getAuthority());
+        }
+        return permissions;
+    }
+}
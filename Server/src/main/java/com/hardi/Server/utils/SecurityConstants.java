@@ -14,7 +14,13 @@ public class SecurityConstants {
 
     public static final String GET_ARRAYS_ADMINISTRATION = "User Management Portal";
 
-    public static final String AUTHORITIES = "authorities";
+    public static final String AUTHORITIES = "authorities"; //Claim of tokens issued before the permission mask
+
+    public static final String PERMISSIONS = "permissions";
+
+    public static final String USER_ID = "uid";
+
+    public static final String TOKEN_VERSION = "ver";
 
     public static final String FORBIDDEN_MESSAGE = "You need to login to access this page";
 
@@ -22,5 +28,7 @@ public class SecurityConstants {
 
     public static final String OPTIONS_HTTP_METHOD = "OPTIONS";
 
-    public static final String[] PUBLIC_URLS = { "/user/login", "/user/register", "/user/image/**"};
+    public static final String JWKS_PATH = "/.well-known/jwks.json";
+
+    public static final String[] PUBLIC_URLS = { "/user/login", "/user/register", "/user/image/**", JWKS_PATH};
 }
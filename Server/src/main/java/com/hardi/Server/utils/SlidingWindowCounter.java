@@ -0,0 +1,185 @@
+package com.hardi.Server.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate per-key event counts over a sliding window, in a fixed amount of memory.
+ * Keys are hashed into {@code depth} rows of {@code width} slots (count-min sketch), a key's
+ * count is the minimum over its slots, so collisions can only over-count.
+ * Every slot packs the window it belongs to with the current and previous window's counts
+ * into one int, updated with compare-and-set. The sliding count weights the previous window
+ * by the part of it still covered. Windows are stored modulo 1024, so a slot untouched for
+ * exactly that many windows would show its old counts again.
+ * <p>
+ * Resetting a key never lowers shared slots, other keys in them would lose events. The key's count
+ * at the reset is kept instead and taken off its later estimates, for the two windows it can matter.
+ * At most {@code width} keys are kept; a reset dropped earlier only makes its key over-count.
+ */
+public class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 11;
+
+    private static final int COUNT_MASK = (1 << COUNT_BITS) - 1; //Counts saturate at 2047
+
+    private static final int WINDOW_SHIFT = COUNT_BITS * 2;
+
+    private static final int WINDOW_MASK = (1 << (Integer.SIZE - WINDOW_SHIFT)) - 1;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final AtomicIntegerArray slots;
+
+    private final int width;
+
+    private final int depth;
+
+    private final long windowMillis;
+
+    private final Cache<String, Integer> resets; //Counts at the reset, packed like a slot
+
+    public SlidingWindowCounter(int width, int depth, long windowMillis) {
+        if(Integer.bitCount(width) != 1 || depth < 1 || windowMillis < 1) {
+            throw new IllegalArgumentException("Width must be a power of two, depth and window must be positive");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.windowMillis = windowMillis;
+        this.slots = new AtomicIntegerArray(width * depth);
+        this.resets = CacheBuilder.newBuilder()
+                .maximumSize(width)
+                .expireAfterWrite(windowMillis * 2, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Counts one event for the key and returns the key's sliding count including it.
+     */
+    public double increment(String key, long now) {
+        long window = now / windowMillis;
+        double fraction = getPreviousWindowWeight(now);
+        long[] hash = hash(key);
+        int reset = getReset(key);
+        double count = Double.MAX_VALUE;
+        for(int row = 0; row < depth; row++) {
+            int index = getIndex(hash, row);
+            int current;
+            int updated;
+            do {
+                current = slots.get(index);
+                updated = add(current, window);
+            } while(!slots.compareAndSet(index, current, updated));
+            count = Math.min(count, estimate(updated, reset, window, fraction));
+        }
+        return count;
+    }
+
+    public double estimate(String key, long now) {
+        long window = now / windowMillis;
+        double fraction = getPreviousWindowWeight(now);
+        long[] hash = hash(key);
+        int reset = getReset(key);
+        double count = Double.MAX_VALUE;
+        for(int row = 0; row < depth; row++) {
+            count = Math.min(count, estimate(slots.get(getIndex(hash, row)), reset, window, fraction));
+        }
+        return count;
+    }
+
+    /**
+     * Makes the key count from zero again. Its slots are left as they are, so keys sharing
+     * them keep their events.
+     */
+    public void reset(String key, long now) {
+        long window = now / windowMillis;
+        long[] hash = hash(key);
+        int current = Integer.MAX_VALUE;
+        int previous = Integer.MAX_VALUE;
+        for(int row = 0; row < depth; row++) {
+            int slot = roll(slots.get(getIndex(hash, row)), window);
+            current = Math.min(current, getCurrent(slot));
+            previous = Math.min(previous, getPrevious(slot));
+        }
+        resets.put(key, pack(window, current, previous));
+    }
+
+    public long getMemoryBytes() {
+        return (long) slots.length() * Integer.BYTES;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private int add(int slot, long window) {
+        int rolled = roll(slot, window);
+        return pack(window, Math.min(getCurrent(rolled) + 1, COUNT_MASK), getPrevious(rolled));
+    }
+
+    /**
+     * Moves the slot to the given window: the current count becomes the previous one after
+     * one window, both are dropped after two.
+     */
+    private int roll(int slot, long window) {
+        int slotWindow = slot >>> WINDOW_SHIFT;
+        int target = (int) (window & WINDOW_MASK);
+        if(slotWindow == target) {
+            return slot;
+        }
+        if(slotWindow == ((window - 1) & WINDOW_MASK)) {
+            return pack(window, 0, getCurrent(slot));
+        }
+        return pack(window, 0, 0);
+    }
+
+    private double estimate(int slot, int reset, long window, double previousWeight) {
+        int rolled = roll(slot, window);
+        int rolledReset = roll(reset, window);
+        int current = Math.max(getCurrent(rolled) - getCurrent(rolledReset), 0);
+        int previous = Math.max(getPrevious(rolled) - getPrevious(rolledReset), 0);
+        return current + previous * previousWeight;
+    }
+
+    private int getReset(String key) {
+        Integer reset = resets.getIfPresent(key);
+        return reset == null ? 0 : reset; //Zero counts in any window
+    }
+
+    private double getPreviousWindowWeight(long now) {
+        return 1d - (double) (now % windowMillis) / windowMillis;
+    }
+
+    private int getIndex(long[] hash, int row) {
+        long combined = hash[0] + row * hash[1]; //Kirsch-Mitzenmacher, every row's index from one 128 bit hash
+        return row * width + (int) (combined & (width - 1));
+    }
+
+    private long[] hash(String key) {
+        byte[] bytes = HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asBytes();
+        return new long[] {Longs.fromBytes(bytes[0], bytes[1], bytes[2], bytes[3], bytes[4], bytes[5], bytes[6], bytes[7]),
+                Longs.fromBytes(bytes[8], bytes[9], bytes[10], bytes[11], bytes[12], bytes[13], bytes[14], bytes[15]) | 1};
+    }
+
+    private static int pack(long window, int current, int previous) {
+        return (int) (window & WINDOW_MASK) << WINDOW_SHIFT | (previous & COUNT_MASK) << COUNT_BITS | (current & COUNT_MASK);
+    }
+
+    private static int getCurrent(int slot) {
+        return slot & COUNT_MASK;
+    }
+
+    private static int getPrevious(int slot) {
+        return (slot >>> COUNT_BITS) & COUNT_MASK;
+    }
+}
@@ -0,0 +1,105 @@
+package com.hardi.Server.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statements executed by one thread while a recording is active: how many, the database time they
+ * took and how often each distinct SQL string ran, the last pointing at N+1 query patterns.
+ * Filled in by the DataSource proxy, see SqlStatisticsConfiguration.
+ */
+public class SqlStatementStatistics {
+
+    public static final String REQUEST_ATTRIBUTE = SqlStatementStatistics.class.getName();
+
+    private static final ThreadLocal<SqlStatementStatistics> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Integer> executions = new HashMap<>();
+
+    private int count;
+
+    private long nanos;
+
+    private long statementStart;
+
+    /**
+     * Starts recording the statements of the current thread, or returns the recording already running.
+     */
+    public static SqlStatementStatistics start() {
+        SqlStatementStatistics statistics = CURRENT.get();
+        if(statistics == null) {
+            statistics = new SqlStatementStatistics();
+            CURRENT.set(statistics);
+        }
+        return statistics;
+    }
+
+    public static SqlStatementStatistics current() {
+        return CURRENT.get();
+    }
+
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Runs the action and returns the statements it executed on this thread, e.g. around a MockMvc request:
+     * {@code assertThat(SqlStatementStatistics.record(() -> mockMvc.perform(put("/user/update")...)).getCount()).isLessThanOrEqualTo(3)}
+     */
+    public static SqlStatementStatistics record(Action action) throws Exception {
+        SqlStatementStatistics statistics = new SqlStatementStatistics();
+        SqlStatementStatistics outer = CURRENT.get();
+        CURRENT.set(statistics);
+        try {
+            action.run();
+        } finally {
+            if(outer == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(outer);
+            }
+        }
+        return statistics;
+    }
+
+    public void beforeStatement() {
+        statementStart = System.nanoTime();
+    }
+
+    public void afterStatement(String sql) {
+        nanos += System.nanoTime() - statementStart;
+        count++;
+        executions.merge(sql, 1, Integer::sum);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * The statement run most often, null when nothing ran.
+     */
+    public Map.Entry<String, Integer> getMostRepeatedStatement() {
+        Map.Entry<String, Integer> mostRepeated = null;
+        for(Map.Entry<String, Integer> execution : executions.entrySet()) {
+            if(mostRepeated == null || execution.getValue() > mostRepeated.getValue()) {
+                mostRepeated = execution;
+            }
+        }
+        return mostRepeated;
+    }
+
+    public interface Action {
+
+        void run() throws Exception;
+    }
+}
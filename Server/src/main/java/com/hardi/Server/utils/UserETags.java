@@ -0,0 +1,62 @@
+package com.hardi.Server.utils;
+
+import com.hardi.Server.domain.User;
+import com.hardi.Server.exceptions.domain.UserVersionMismatchException;
+import org.apache.commons.lang3.StringUtils;
+
+import static com.hardi.Server.utils.ErrorMessageConstants.USER_VERSION_MISMATCH;
+
+/**
+ * Weak ETags of user responses. A user's tag is its entity version followed by the last login,
+ * which is written behind without raising the version. A list's tag is an aggregate of the listed rows.
+ */
+public class UserETags {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private static final String ANY = "*";
+
+    private UserETags() {
+    }
+
+    public static String of(User user) {
+        long lastLogin = user.getLastLoginDate() == null ? 0 : user.getLastLoginDate().getTime();
+        return WEAK_PREFIX + "\"" + user.getVersion() + "-" + Long.toHexString(lastLogin) + "\"";
+    }
+
+    public static String ofList(String listVersion) {
+        return WEAK_PREFIX + "\"" + listVersion + "\"";
+    }
+
+    /**
+     * Weak comparison, as If-None-Match uses it.
+     */
+    public static boolean matchesAny(String ifNoneMatch, String eTag) {
+        if(StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        for(String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if(tag.equals(ANY) || StringUtils.removeStart(tag, WEAK_PREFIX).equals(StringUtils.removeStart(eTag, WEAK_PREFIX))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The version an If-Match header expects, null when it is absent or *. Only the version part of a
+     * user tag is compared, a newer last login does not make an update fail.
+     */
+    public static Long getExpectedVersion(String ifMatch) throws UserVersionMismatchException {
+        if(StringUtils.isBlank(ifMatch) || ifMatch.trim().equals(ANY)) {
+            return null;
+        }
+        String tag = StringUtils.strip(StringUtils.removeStart(ifMatch.trim(), WEAK_PREFIX), "\"");
+        try {
+            return Long.parseLong(StringUtils.substringBefore(tag, "-"));
+        } catch (NumberFormatException e) {
+            throw new UserVersionMismatchException(USER_VERSION_MISMATCH); //Not a tag this server issued
+        }
+    }
+}
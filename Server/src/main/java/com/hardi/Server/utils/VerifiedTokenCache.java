@@ -0,0 +1,79 @@
+package com.hardi.Server.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.hardi.Server.domain.VerifiedToken;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hardi.Server.utils.MetricsConstants.*;
+
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+
+    private final JwtTokenProviderUtils jwtTokenProvider;
+
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public VerifiedTokenCache(JwtTokenProviderUtils jwtTokenProvider,
+                              @Value("${jwt.cache.maximum-size:10000}") long maximumSize) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.verifiedTokens = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * Returns the decoded token, running the signature verification only when the token
+     * was not seen before, its cached entry has passed the token's own expiry, or key rotation
+     * dropped the key named by its kid.
+     */
+    public VerifiedToken verify(String token) {
+        String key = digest(token); //Digest covers the kid and the signature, so a tampered token never hits
+        VerifiedToken verifiedToken = verifiedTokens.getIfPresent(key);
+        if(verifiedToken != null) {
+            if(!verifiedToken.isExpired(System.currentTimeMillis()) && jwtTokenProvider.isKeyCurrent(verifiedToken)) {
+                hits.increment();
+                return verifiedToken;
+            }
+            verifiedTokens.invalidate(key);
+        }
+        misses.increment();
+        verifiedToken = jwtTokenProvider.verifyToken(token); //Throws for invalid or expired tokens, those are never cached
+        verifiedTokens.put(key, verifiedToken);
+        return verifiedToken;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long size() {
+        return verifiedTokens.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(CACHE_GETS, hits, LongAdder::sum).tags(CACHE, "verified-tokens", RESULT, "hit").register(registry);
+        FunctionCounter.builder(CACHE_GETS, misses, LongAdder::sum).tags(CACHE, "verified-tokens", RESULT, "miss").register(registry);
+    }
+
+    private String digest(String token) {
+        return Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+    }
+}
@@ -0,0 +1,20 @@
+-- Schema as previously generated by hibernate ddl-auto, existing databases are baselined at this version
+
+CREATE TABLE user (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    user_id VARCHAR(255),
+    first_name VARCHAR(255),
+    last_name VARCHAR(255),
+    username VARCHAR(255),
+    password VARCHAR(255),
+    email VARCHAR(255),
+    profile_image_url VARCHAR(255),
+    last_login_date DATETIME(6),
+    last_login_date_display DATETIME(6),
+    join_date DATETIME(6),
+    role VARCHAR(255),
+    authorities VARBINARY(2048),
+    is_active BIT NOT NULL,
+    is_not_locked BIT NOT NULL,
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,8 @@
+-- Lookups by these columns no longer scan the table and duplicates are rejected by the database.
+-- Databases created by ddl-auto must be free of duplicate usernames, emails and user ids before this runs.
+
+CREATE UNIQUE INDEX uk_user_username ON user (username);
+
+CREATE UNIQUE INDEX uk_user_email ON user (email);
+
+CREATE UNIQUE INDEX uk_user_user_id ON user (user_id);
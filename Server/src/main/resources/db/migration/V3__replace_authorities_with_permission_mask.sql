@@ -0,0 +1,14 @@
+-- Bits follow Permission: 1 user:read, 2 user:update, 4 user:create, 8 user:delete
+
+ALTER TABLE user ADD COLUMN permissions INTEGER NOT NULL DEFAULT 0;
+
+UPDATE user SET permissions = CASE role
+    WHEN 'ROLE_USER' THEN 1
+    WHEN 'ROLE_HR' THEN 3
+    WHEN 'ROLE_MANAGER' THEN 3
+    WHEN 'ROLE_ADMIN' THEN 7
+    WHEN 'ROLE_SUPER_ADMIN' THEN 15
+    ELSE 0
+END;
+
+ALTER TABLE user DROP COLUMN authorities;
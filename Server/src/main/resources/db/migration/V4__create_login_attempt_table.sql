@@ -0,0 +1,11 @@
+-- Shared login attempt counts, used when login-attempts.store is jdbc
+
+CREATE TABLE login_attempt (
+    attempt_key VARCHAR(255) NOT NULL,
+    window_number BIGINT NOT NULL,
+    current_count INTEGER NOT NULL,
+    previous_count INTEGER NOT NULL,
+    PRIMARY KEY (attempt_key)
+);
+
+CREATE INDEX idx_login_attempt_window_number ON login_attempt (window_number);
@@ -0,0 +1,10 @@
+-- Tokens carry the user's token version, raising it revokes all tokens issued before
+
+ALTER TABLE user ADD COLUMN token_version INTEGER NOT NULL DEFAULT 0;
+
+CREATE TABLE token_revocation (
+    user_id BIGINT NOT NULL,
+    token_version INTEGER NOT NULL,
+    expires_at BIGINT NOT NULL,
+    PRIMARY KEY (user_id)
+);
@@ -0,0 +1,21 @@
+-- Change log behind /user/changes, the version orders the changes and is the clients' sync cursor
+
+CREATE TABLE user_change (
+    version BIGINT NOT NULL AUTO_INCREMENT,
+    user_id VARCHAR(255) NOT NULL,
+    operation VARCHAR(8) NOT NULL,
+    changed_at BIGINT NOT NULL,
+    PRIMARY KEY (version)
+);
+
+CREATE INDEX idx_user_change_user_id ON user_change (user_id);
+
+-- Highest version removed by compaction, clients behind it have to reload the whole list
+
+CREATE TABLE user_change_horizon (
+    id INTEGER NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+INSERT INTO user_change_horizon (id, version) VALUES (1, 0);
@@ -0,0 +1,3 @@
+-- Optimistic locking version of the user row, also the base of the user ETags
+
+ALTER TABLE user ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,15 @@
+-- Emails written in the transaction of the change that sends them, drained by EmailOutboxDispatcher.
+
+CREATE TABLE email_outbox (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    recipient VARCHAR(255) NOT NULL,
+    subject VARCHAR(255),
+    body VARCHAR(2000),
+    status VARCHAR(16) NOT NULL,
+    attempts INTEGER NOT NULL,
+    next_attempt_at DATETIME(6),
+    created_at DATETIME(6),
+    last_error VARCHAR(500),
+    PRIMARY KEY (id),
+    INDEX idx_email_outbox_status_next_attempt (status, next_attempt_at)
+);
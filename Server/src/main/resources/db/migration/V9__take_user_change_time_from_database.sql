@@ -0,0 +1,7 @@
+-- The change time comes from the database clock, which the settle window and the delete retention are
+-- also measured against, instead of the clock of whichever instance wrote the change.
+-- Changes logged before count as made now, which only delays when they settle and expire.
+
+ALTER TABLE user_change DROP COLUMN changed_at;
+
+ALTER TABLE user_change ADD COLUMN changed_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
@@ -0,0 +1,54 @@
+package com.hardi.Server.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * With threads.virtual.enabled Tomcat's requests, the async executor and the scheduled jobs all run on virtual threads.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "threads.virtual.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:virtual;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER"})
+@ActiveProfiles("test")
+class VirtualThreadConfigurationTests {
+
+    @Autowired
+    private ServletWebServerApplicationContext applicationContext;
+
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private AsyncTaskExecutor applicationTaskExecutor;
+
+    @Autowired
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @Test
+    void requestsAsyncAndScheduledWorkRunOnVirtualThreads() throws Exception {
+        Executor tomcatExecutor = ((TomcatWebServer) applicationContext.getWebServer()).getTomcat()
+                .getConnector().getProtocolHandler().getExecutor();
+
+        assertThat(isVirtual(tomcatExecutor)).isTrue();
+        assertThat(isVirtual(applicationTaskExecutor)).isTrue();
+        assertThat(isVirtual(taskScheduler)).isTrue();
+    }
+
+    private boolean isVirtual(Executor executor) throws Exception {
+        CompletableFuture<Boolean> virtual = new CompletableFuture<>();
+        executor.execute(() -> virtual.complete(Thread.currentThread().isVirtual()));
+        return virtual.get(5, TimeUnit.SECONDS);
+    }
+}
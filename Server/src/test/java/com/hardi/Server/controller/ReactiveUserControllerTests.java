@@ -0,0 +1,241 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPage;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.utils.SecurityConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The reactive profile end to end: login through the adapted authentication manager, token checks in
+ * the WebFilter and reads through R2DBC from rows written with JPA.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.main.web-application-type=reactive",
+        "spring.datasource.url=jdbc:h2:mem:reactive;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive?options=MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER"})
+@ActiveProfiles({"reactive", "test"})
+class ReactiveUserControllerTests {
+
+    private static final String PASSWORD = "reactive-password";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @BeforeEach
+    void setUp() {
+        if(userRepository.findUserByUsername("reactive0") == null) {
+            String encodedPassword = passwordEncoder.encode(PASSWORD);
+            for(int i = 0; i < 3; i++) {
+                User user = new User();
+                user.setUserId(String.valueOf(7_000_000_000L + i));
+                user.setFirstName("Reactive");
+                user.setLastName("User" + i);
+                user.setUsername("reactive" + i);
+                user.setEmail("reactive" + i + "@example.com");
+                user.setPassword(encodedPassword);
+                user.setJoinDate(new Date());
+                user.setRole(Role.ROLE_SUPER_ADMIN.name());
+                user.setPermissions(Role.ROLE_SUPER_ADMIN.getPermissions());
+                user.setActive(true);
+                user.setNotLocked(true);
+                userRepository.save(user);
+            }
+        }
+    }
+
+    @Test
+    void loginTokenReadsUsersThroughR2dbc() {
+        String authorization = login();
+
+        webTestClient.get().uri("/user/find/reactive1").header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(User.class).value(user -> assertThat(user.getEmail()).isEqualTo("reactive1@example.com"));
+
+        UserPage first = webTestClient.get().uri("/user/list?limit=2&sort=username").header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserPage.class).returnResult().getResponseBody();
+        UserPage second = webTestClient.get().uri("/user/list?limit=2&sort=username&cursor=" + first.getNextCursor())
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserPage.class).returnResult().getResponseBody();
+        assertThat(first.getUsers()).extracting(User::getUsername).containsExactly("reactive0", "reactive1");
+        assertThat(second.getUsers()).extracting(User::getUsername).containsExactly("reactive2");
+        assertThat(second.getNextCursor()).isNull();
+
+        List<User> streamed = webTestClient.get().uri("/user/list?role=ROLE_SUPER_ADMIN").header(HttpHeaders.AUTHORIZATION, authorization)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(User.class).returnResult().getResponseBody();
+        assertThat(streamed).extracting(User::getUsername).contains("reactive0", "reactive1", "reactive2");
+    }
+
+    @Test
+    void multipartWritesImportAndExportRunOnTheReactiveStack() throws IOException {
+        String authorization = login();
+        Number since = (Number) webTestClient.get().uri("/user/changes").header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class).returnResult().getResponseBody().get("version");
+
+        MultipartBodyBuilder added = userParts("reactiveadd", "Added");
+        added.part("profileImage", new ByteArrayResource(png()) {
+            @Override
+            public String getFilename() {
+                return "avatar.png";
+            }
+        }, MediaType.IMAGE_PNG);
+        webTestClient.post().uri("/user/add").header(HttpHeaders.AUTHORIZATION, authorization)
+                .bodyValue(added.build())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(User.class).value(user -> assertThat(user.getProfileImageUrl()).contains("reactiveadd"));
+
+        String eTag = webTestClient.get().uri("/user/find/reactiveadd").header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(User.class).getResponseHeaders().getETag();
+        MultipartBodyBuilder updated = userParts("reactiveadd", "Renamed");
+        updated.part("currentUsername", "reactiveadd");
+        webTestClient.put().uri("/user/update").header(HttpHeaders.AUTHORIZATION, authorization).header(HttpHeaders.IF_MATCH, eTag)
+                .bodyValue(updated.build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .expectBody(User.class).value(user -> assertThat(user.getLastName()).isEqualTo("Renamed"));
+        webTestClient.put().uri("/user/update").header(HttpHeaders.AUTHORIZATION, authorization).header(HttpHeaders.IF_MATCH, eTag)
+                .bodyValue(updated.build())
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED); //The tag read before the update is stale
+
+        String csv = "firstName,lastName,username,email,role,isActive\n"
+                + "Reactive,Import,reactiveimport,reactiveimport@example.com,role_admin,\n"
+                + "Reactive,Duplicate,reactiveadd,reactiveduplicate@example.com,,\n";
+        webTestClient.post().uri("/user/import").header(HttpHeaders.AUTHORIZATION, authorization)
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue(csv)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.created").isEqualTo(1)
+                .jsonPath("$.results[1].message").isEqualTo("Username already exists");
+
+        String exported = webTestClient.get().uri("/user/export?role=ROLE_ADMIN").header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("text/csv")
+                .expectBody(String.class).returnResult().getResponseBody();
+        assertThat(exported).startsWith("userId,firstName,lastName,username,email,role,isActive,isNotLocked,joinDate\n");
+        assertThat(exported).contains(",Reactive,Import,reactiveimport,\"reactiveimport@example.com\",ROLE_ADMIN,"); //Long values are quoted
+
+        webTestClient.get().uri("/user/changes?since=" + since).header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.users[?(@.username == 'reactiveimport')]").exists();
+    }
+
+    @Test
+    void plainUsersCannotImportOrExport() {
+        if(userRepository.findUserByUsername("reactiveplain") == null) {
+            User user = new User();
+            user.setUserId("7000000010");
+            user.setFirstName("Reactive");
+            user.setLastName("Plain");
+            user.setUsername("reactiveplain");
+            user.setEmail("reactiveplain@example.com");
+            user.setPassword(passwordEncoder.encode(PASSWORD));
+            user.setJoinDate(new Date());
+            user.setRole(Role.ROLE_USER.name());
+            user.setPermissions(Role.ROLE_USER.getPermissions());
+            user.setActive(true);
+            user.setNotLocked(true);
+            userRepository.save(user);
+        }
+        String authorization = login("reactiveplain");
+
+        webTestClient.post().uri("/user/import").header(HttpHeaders.AUTHORIZATION, authorization)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"firstName\":\"Not\",\"lastName\":\"Allowed\",\"username\":\"reactivedenied\",\"email\":\"reactivedenied@example.com\"}\n")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.get().uri("/user/export").header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchange()
+                .expectStatus().isForbidden();
+        assertThat(userRepository.findUserByUsername("reactivedenied")).isNull();
+    }
+
+    @Test
+    void requestsWithoutTokenAreRejected() {
+        webTestClient.get().uri("/user/find/reactive0")
+                .exchange()
+                .expectStatus().isForbidden()
+                .expectBody().jsonPath("$.message").isEqualTo(SecurityConstants.FORBIDDEN_MESSAGE);
+    }
+
+    private String login() {
+        return login("reactive0");
+    }
+
+    private String login(String username) {
+        Map<String, String> credentials = new HashMap<>();
+        credentials.put("username", username);
+        credentials.put("password", PASSWORD);
+        String token = webTestClient.post().uri("/user/login").bodyValue(credentials)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(User.class).value(user -> assertThat(user.getUsername()).isEqualTo(username))
+                .returnResult().getResponseHeaders().getFirst(SecurityConstants.JWT_TOKEN_HEADER);
+        return SecurityConstants.TOKEN_PREFIX + token;
+    }
+
+    private MultipartBodyBuilder userParts(String username, String lastName) {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("firstName", "Reactive");
+        builder.part("lastName", lastName);
+        builder.part("username", username);
+        builder.part("email", username + "@example.com");
+        builder.part("role", Role.ROLE_USER.name());
+        builder.part("isActive", "true");
+        builder.part("isNotLocked", "true");
+        return builder;
+    }
+
+    private byte[] png() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB), "png", output);
+        return output.toByteArray();
+    }
+}
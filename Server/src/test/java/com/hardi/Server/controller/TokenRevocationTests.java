@@ -0,0 +1,183 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.service.LoginAttemptService;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tokens issued before a lock, role change, username change, disable or delete are rejected,
+ * tokens issued after the change are accepted.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class TokenRevocationTests {
+
+    private static final String PASSWORD = "revocation-password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtTokenProviderUtils jwtTokenProvider;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private LoginAttemptService loginAttemptService;
+
+    private String adminToken;
+
+    @BeforeEach
+    void setUp() {
+        User admin = userRepository.findUserByUsername("revocationadmin");
+        if(admin == null) {
+            admin = saveUser("revocationadmin", "8400000000", Role.ROLE_SUPER_ADMIN);
+        }
+        adminToken = tokenOf(admin);
+    }
+
+    @Test
+    void tokensIssuedBeforeABruteForceLockAreRejected() throws Exception {
+        User user = saveUser("revokelock", "8400000001", Role.ROLE_USER);
+        String token = tokenOf(user);
+        assertAccepted(token);
+
+        while(!loginAttemptService.hasExceededMaxAttempts("revokelock")) {
+            loginAttemptService.addUserToLoginAttemptCache("revokelock");
+        }
+        mockMvc.perform(login("revokelock", "wrong-password")); //Locks the account, the attempt itself fails
+        User locked = userRepository.findUserByUsername("revokelock");
+        assertThat(locked.isNotLocked()).isFalse();
+
+        assertRejected(token);
+        assertAccepted(tokenOf(locked));
+    }
+
+    @Test
+    void tokensIssuedBeforeARoleChangeAreRejected() throws Exception {
+        saveUser("revokerole", "8400000002", Role.ROLE_USER);
+        String token = loginToken("revokerole");
+        assertAccepted(token);
+
+        mockMvc.perform(update("revokerole", "revokerole", Role.ROLE_MANAGER, true, true)).andExpect(status().isOk());
+
+        assertRejected(token);
+        assertAccepted(loginToken("revokerole")); //Carries the raised token version even if the user was cached
+    }
+
+    @Test
+    void tokensIssuedBeforeAUsernameChangeAreRejected() throws Exception {
+        saveUser("revokename", "8400000003", Role.ROLE_USER);
+        String token = loginToken("revokename");
+
+        mockMvc.perform(update("revokename", "revokerenamed", Role.ROLE_USER, true, true)).andExpect(status().isOk());
+
+        assertRejected(token);
+        assertAccepted(loginToken("revokerenamed"));
+    }
+
+    @Test
+    void tokensIssuedBeforeADisableAreRejected() throws Exception {
+        saveUser("revokedisable", "8400000004", Role.ROLE_USER);
+        String token = loginToken("revokedisable");
+
+        mockMvc.perform(update("revokedisable", "revokedisable", Role.ROLE_USER, true, false)).andExpect(status().isOk());
+        assertRejected(token);
+
+        mockMvc.perform(update("revokedisable", "revokedisable", Role.ROLE_USER, true, true)).andExpect(status().isOk());
+        assertRejected(token); //Enabling again does not bring old tokens back
+        assertAccepted(loginToken("revokedisable"));
+    }
+
+    @Test
+    void tokensIssuedBeforeADeleteAreRejected() throws Exception {
+        saveUser("revokedelete", "8400000005", Role.ROLE_USER);
+        String token = loginToken("revokedelete");
+
+        mockMvc.perform(delete("/user/delete/revokedelete").header(HttpHeaders.AUTHORIZATION, adminToken))
+                .andExpect(status().isNoContent());
+
+        assertRejected(token);
+    }
+
+    private User saveUser(String username, String userId, Role role) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setFirstName("Revocation");
+        user.setLastName("Test");
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        user.setJoinDate(new Date());
+        user.setRole(role.name());
+        user.setPermissions(role.getPermissions());
+        user.setActive(true);
+        user.setNotLocked(true);
+        return userRepository.save(user);
+    }
+
+    private String tokenOf(User user) {
+        return SecurityConstants.TOKEN_PREFIX + jwtTokenProvider.generateJwtToken(new UserPrincipal(user));
+    }
+
+    private String loginToken(String username) throws Exception {
+        return SecurityConstants.TOKEN_PREFIX + mockMvc.perform(login(username, PASSWORD))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader(SecurityConstants.JWT_TOKEN_HEADER);
+    }
+
+    private MockHttpServletRequestBuilder login(String username, String password) {
+        return post("/user/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}");
+    }
+
+    private MockHttpServletRequestBuilder update(String currentUsername, String username, Role role, boolean notLocked, boolean active) {
+        return put("/user/update")
+                .header(HttpHeaders.AUTHORIZATION, adminToken)
+                .param("currentUsername", currentUsername)
+                .param("firstName", "Revocation")
+                .param("lastName", "Test")
+                .param("username", username)
+                .param("email", username + "@example.com")
+                .param("role", role.name())
+                .param("isActive", String.valueOf(active))
+                .param("isNotLocked", String.valueOf(notLocked));
+    }
+
+    private void assertAccepted(String token) throws Exception {
+        mockMvc.perform(get("/user/find/revocationadmin").header(HttpHeaders.AUTHORIZATION, token))
+                .andExpect(status().isOk());
+    }
+
+    private void assertRejected(String token) throws Exception {
+        mockMvc.perform(get("/user/find/revocationadmin").header(HttpHeaders.AUTHORIZATION, token))
+                .andExpect(status().isForbidden());
+    }
+}
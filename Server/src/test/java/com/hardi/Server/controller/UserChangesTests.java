@@ -0,0 +1,112 @@
+package com.hardi.Server.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.service.UserChangeLog;
+import com.hardi.Server.service.UserService;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Changes settle right away and deletes expire on the first compaction.
+ */
+@SpringBootTest(properties = {"user.changes.settle-window=0", "user.changes.delete-retention=0"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class UserChangesTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserChangeLog userChangeLog;
+
+    @Autowired
+    private JwtTokenProviderUtils jwtTokenProvider;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User admin = userRepository.findUserByUsername("changesadmin");
+        if(admin == null) {
+            admin = new User();
+            admin.setUserId("8200000000");
+            admin.setFirstName("Changes");
+            admin.setLastName("Admin");
+            admin.setUsername("changesadmin");
+            admin.setEmail("changesadmin@example.com");
+            admin.setPassword("not-used");
+            admin.setJoinDate(new Date());
+            admin.setRole(Role.ROLE_SUPER_ADMIN.name());
+            admin.setPermissions(Role.ROLE_SUPER_ADMIN.getPermissions());
+            admin.setActive(true);
+            admin.setNotLocked(true);
+            admin = userRepository.save(admin);
+        }
+        authorization = SecurityConstants.TOKEN_PREFIX + jwtTokenProvider.generateJwtToken(new UserPrincipal(admin));
+    }
+
+    @Test
+    void changesSinceAVersionHoldTheLatestStateOfEachUser() throws Exception {
+        JsonNode start = getChanges("");
+        assertThat(start.get("reset").asBoolean()).isTrue();
+        long since = start.get("version").asLong();
+
+        User deleted = userService.register("Short", "Lived", "changes0", "changes0@example.com");
+        User kept = userService.register("Kept", "User", "changes1", "changes1@example.com");
+        userService.resetPassword("changes1@example.com");
+        userService.deleteUser("changes0");
+        Thread.sleep(5); //Past the settle window
+
+        JsonNode changes = getChanges("?since=" + since);
+        assertThat(changes.get("reset").asBoolean()).isFalse();
+        assertThat(changes.get("users")).hasSize(1); //Inserted and updated, sent once
+        assertThat(changes.get("users").get(0).get("userId").asText()).isEqualTo(kept.getUserId());
+        assertThat(changes.get("deletedUserIds").get(0).asText()).isEqualTo(deleted.getUserId());
+        long version = changes.get("version").asLong();
+        assertThat(version).isGreaterThan(since);
+
+        JsonNode unchanged = getChanges("?since=" + version);
+        assertThat(unchanged.get("users")).isEmpty();
+        assertThat(unchanged.get("version").asLong()).isEqualTo(version);
+
+        userChangeLog.compact(); //Drops the delete, clients that have not seen it must reload
+        assertThat(getChanges("?since=" + since).get("reset").asBoolean()).isTrue();
+        assertThat(getChanges("?since=" + version).get("reset").asBoolean()).isFalse();
+    }
+
+    private JsonNode getChanges(String parameters) throws Exception {
+        String response = mockMvc.perform(get("/user/changes" + parameters).header(HttpHeaders.AUTHORIZATION, authorization))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(response);
+    }
+}
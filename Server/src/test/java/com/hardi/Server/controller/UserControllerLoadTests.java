@@ -0,0 +1,253 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.service.AvatarService;
+import com.hardi.Server.support.LatencyRecorder;
+import com.hardi.Server.support.SmtpStubServer;
+import com.hardi.Server.utils.SecurityConstants;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the running application over HTTP with concurrent virtual users: a login storm first, then
+ * a mix of user reads, image fetches, registrations and logins. Uses the in-memory H2 database and an
+ * in-process SMTP server, avatars are rendered locally, so nothing leaves the machine.
+ * Prints throughput and p50 / p95 / p99 per endpoint and fails when a threshold is exceeded.
+ * <p>
+ * Run with {@code mvn test -Dtest=UserControllerLoadTests -Dload=true}. Optional settings:
+ * {@code load.users}, {@code load.duration} (seconds), {@code load.seed-users}, {@code load.login-storm-rounds},
+ * and the thresholds {@code load.max-p95}, {@code load.max-p99} (milliseconds) and {@code load.max-error-rate},
+ * each of which can be set per endpoint, e.g. {@code -Dload.max-p99.login=3000}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:load;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER"})
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "load", matches = "true")
+class UserControllerLoadTests {
+
+    private static final String PASSWORD = "load-test-password";
+
+    private static final int USERS = Integer.getInteger("load.users", 16);
+
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration", 20);
+
+    private static final int SEED_USERS = Integer.getInteger("load.seed-users", 500);
+
+    private static final int LOGIN_STORM_ROUNDS = Integer.getInteger("load.login-storm-rounds", 4);
+
+    private static SmtpStubServer smtpServer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private AvatarService avatarService;
+
+    private final AtomicInteger registrations = new AtomicInteger();
+
+    @DynamicPropertySource
+    static void smtpProperties(DynamicPropertyRegistry registry) throws IOException {
+        smtpServer = new SmtpStubServer(); //Started before the context so the outbox sends to it
+        registry.add("email.smtp.host", () -> "127.0.0.1");
+        registry.add("email.smtp.port", smtpServer::getPort);
+    }
+
+    @AfterAll
+    static void stopSmtpServer() throws IOException {
+        smtpServer.close();
+    }
+
+    @Test
+    void userEndpointsStayWithinThresholds() throws Exception {
+        List<String> usernames = seedUsers();
+        ExecutorService executor = Executors.newFixedThreadPool(USERS);
+        String[] tokens = new String[USERS];
+        LatencyRecorder loginStorm = new LatencyRecorder();
+        LatencyRecorder steadyState = new LatencyRecorder();
+        long loginStormNanos;
+        long steadyStateNanos;
+        try {
+            //Every virtual user logs in at the same moment, as after a deployment or an outage
+            CountDownLatch gate = new CountDownLatch(1);
+            List<Future<?>> logins = new ArrayList<>();
+            for(int i = 0; i < USERS; i++) {
+                int user = i;
+                logins.add(executor.submit(() -> {
+                    gate.await();
+                    for(int round = 0; round < LOGIN_STORM_ROUNDS; round++) {
+                        String token = login(loginStorm, usernames.get((round * USERS + user) % usernames.size()));
+                        if(token != null) {
+                            tokens[user] = token;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long start = System.nanoTime();
+            gate.countDown();
+            awaitAll(logins);
+            loginStormNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+            List<Future<?>> sessions = new ArrayList<>();
+            for(int i = 0; i < USERS; i++) {
+                int user = i;
+                sessions.add(executor.submit(() -> {
+                    while(System.nanoTime() < end) {
+                        sendRandomRequest(steadyState, tokens, user, usernames);
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(sessions);
+            steadyStateNanos = System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.println("Login storm, " + USERS + " virtual users x " + LOGIN_STORM_ROUNDS + " logins");
+        System.out.println(loginStorm.report(loginStormNanos));
+        System.out.println("Steady state, " + USERS + " virtual users for " + DURATION_SECONDS + " s, " + smtpServer.getMessages().size() + " emails sent");
+        System.out.println(steadyState.report(steadyStateNanos));
+
+        List<String> violations = new ArrayList<>();
+        checkThresholds("login storm", loginStorm.summarize(loginStormNanos), violations);
+        checkThresholds("steady state", steadyState.summarize(steadyStateNanos), violations);
+        assertThat(violations).isEmpty();
+    }
+
+    private void sendRandomRequest(LatencyRecorder recorder, String[] tokens, int user, List<String> usernames) {
+        Random random = ThreadLocalRandom.current();
+        String username = usernames.get(random.nextInt(usernames.size()));
+        int choice = random.nextInt(100);
+        if(choice < 30) {
+            call(recorder, "find", HttpMethod.GET, "/user/find/" + username, authorized(tokens[user]));
+        } else if(choice < 55) {
+            call(recorder, "list-page", HttpMethod.GET, "/user/list?limit=50", authorized(tokens[user]));
+        } else if(choice < 60) {
+            call(recorder, "list-stream", HttpMethod.GET, "/user/list", authorized(tokens[user]));
+        } else if(choice < 80) {
+            call(recorder, "image", HttpMethod.GET, "/user/image/profile/" + username, HttpEntity.EMPTY);
+        } else if(choice < 90) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setIfNoneMatch("\"" + avatarService.getETag(username) + "\"");
+            call(recorder, "image-revalidate", HttpMethod.GET, "/user/image/profile/" + username, new HttpEntity<>(headers));
+        } else if(choice < 96) {
+            register(recorder);
+        } else {
+            String token = login(recorder, username);
+            if(token != null) {
+                tokens[user] = token;
+            }
+        }
+    }
+
+    private String login(LatencyRecorder recorder, String username) {
+        Map<String, String> credentials = new HashMap<>();
+        credentials.put("username", username);
+        credentials.put("password", PASSWORD);
+        ResponseEntity<byte[]> response = call(recorder, "login", HttpMethod.POST, "/user/login", new HttpEntity<>(credentials));
+        return response == null ? null : response.getHeaders().getFirst(SecurityConstants.JWT_TOKEN_HEADER);
+    }
+
+    private void register(LatencyRecorder recorder) {
+        String username = "registered" + registrations.incrementAndGet();
+        Map<String, String> user = new HashMap<>();
+        user.put("firstName", "Load");
+        user.put("lastName", "Test");
+        user.put("username", username);
+        user.put("email", username + "@example.com");
+        call(recorder, "register", HttpMethod.POST, "/user/register", new HttpEntity<>(user));
+    }
+
+    private ResponseEntity<byte[]> call(LatencyRecorder recorder, String endpoint, HttpMethod method, String path, HttpEntity<?> request) {
+        long start = System.nanoTime();
+        ResponseEntity<byte[]> response = null;
+        try {
+            response = restTemplate.exchange(path, method, request, byte[].class);
+        } catch (RestClientException e) {
+            //Counted as an error below
+        }
+        boolean success = response != null && (response.getStatusCode().is2xxSuccessful() || response.getStatusCode() == HttpStatus.NOT_MODIFIED);
+        recorder.record(endpoint, System.nanoTime() - start, success);
+        return success ? response : null;
+    }
+
+    private HttpEntity<?> authorized(String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.AUTHORIZATION, SecurityConstants.TOKEN_PREFIX + token);
+        return new HttpEntity<>(headers);
+    }
+
+    private List<String> seedUsers() {
+        String encodedPassword = passwordEncoder.encode(PASSWORD); //One hash shared by all seeded users
+        List<User> users = new ArrayList<>();
+        List<String> usernames = new ArrayList<>();
+        for(int i = 0; i < SEED_USERS; i++) {
+            User user = new User();
+            user.setUserId(String.valueOf(9_000_000_000L + i));
+            user.setFirstName("Seed");
+            user.setLastName("User" + i);
+            user.setUsername("seed" + i);
+            user.setEmail("seed" + i + "@example.com");
+            user.setPassword(encodedPassword);
+            user.setJoinDate(new Date());
+            user.setRole(Role.ROLE_ADMIN.name());
+            user.setPermissions(Role.ROLE_ADMIN.getPermissions());
+            user.setActive(true);
+            user.setNotLocked(true);
+            users.add(user);
+            usernames.add(user.getUsername());
+        }
+        userRepository.saveAll(users);
+        return usernames;
+    }
+
+    private void checkThresholds(String phase, Map<String, LatencyRecorder.Summary> summaries, List<String> violations) {
+        summaries.forEach((endpoint, summary) -> {
+            checkThreshold(violations, phase, endpoint, "max-p95", summary.getP95(), 1000);
+            checkThreshold(violations, phase, endpoint, "max-p99", summary.getP99(), 2000);
+            checkThreshold(violations, phase, endpoint, "max-error-rate", summary.getErrorRate(), 0.01);
+        });
+    }
+
+    private void checkThreshold(List<String> violations, String phase, String endpoint, String name, double value, double defaultLimit) {
+        String limit = System.getProperty("load." + name + "." + endpoint, System.getProperty("load." + name));
+        double maximum = limit == null ? defaultLimit : Double.parseDouble(limit);
+        if(value > maximum) {
+            violations.add(String.format("%s, %s %s %.3f > %.3f", phase, endpoint, name, value, maximum));
+        }
+    }
+
+    private void awaitAll(List<Future<?>> futures) throws Exception {
+        for(Future<?> future : futures) {
+            future.get();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import com.hardi.Server.utils.SqlStatementStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Statement budgets of the user endpoints, raise them only together with a reason.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class UserControllerStatementBudgetTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtTokenProviderUtils jwtTokenProvider;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User admin = userRepository.findUserByUsername("budget");
+        if(admin == null) {
+            admin = new User();
+            admin.setUserId("8000000000");
+            admin.setFirstName("Budget");
+            admin.setLastName("Admin");
+            admin.setUsername("budget");
+            admin.setEmail("budget@example.com");
+            admin.setPassword("not-used");
+            admin.setJoinDate(new Date());
+            admin.setRole(Role.ROLE_SUPER_ADMIN.name());
+            admin.setPermissions(Role.ROLE_SUPER_ADMIN.getPermissions());
+            admin.setActive(true);
+            admin.setNotLocked(true);
+            admin = userRepository.save(admin);
+        }
+        authorization = SecurityConstants.TOKEN_PREFIX + jwtTokenProvider.generateJwtToken(new UserPrincipal(admin));
+    }
+
+    @Test
+    void findIsServedFromTheUserCacheAfterTheFirstRead() throws Exception {
+        SqlStatementStatistics first = SqlStatementStatistics.record(() -> mockMvc.perform(get("/user/find/budget")
+                .header(HttpHeaders.AUTHORIZATION, authorization)).andExpect(status().isOk()));
+        SqlStatementStatistics second = SqlStatementStatistics.record(() -> mockMvc.perform(get("/user/find/budget")
+                .header(HttpHeaders.AUTHORIZATION, authorization)).andExpect(status().isOk()));
+
+        assertThat(first.getCount()).isLessThanOrEqualTo(1);
+        assertThat(second.getCount()).isZero();
+    }
+
+    @Test
+    void updateWithoutImageStaysWithinBudget() throws Exception {
+        SqlStatementStatistics statistics = SqlStatementStatistics.record(() -> mockMvc.perform(put("/user/update")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .param("currentUsername", "budget")
+                .param("firstName", "Changed")
+                .param("lastName", "Admin")
+                .param("username", "budget")
+                .param("email", "budget@example.com")
+                .param("role", Role.ROLE_SUPER_ADMIN.name())
+                .param("isActive", "true")
+                .param("isNotLocked", "true")).andExpect(status().isOk()));
+
+        assertThat(statistics.getCount()).isLessThanOrEqualTo(3); //Select by username, update, change log insert
+    }
+}
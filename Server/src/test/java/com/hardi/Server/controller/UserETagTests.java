@@ -0,0 +1,134 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.service.AvatarService;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class UserETagTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtTokenProviderUtils jwtTokenProvider;
+
+    @Autowired
+    private AvatarService avatarService;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User admin = userRepository.findUserByUsername("etagadmin");
+        if(admin == null) {
+            admin = new User();
+            admin.setUserId("8300000000");
+            admin.setFirstName("ETag");
+            admin.setLastName("Admin");
+            admin.setUsername("etagadmin");
+            admin.setEmail("etagadmin@example.com");
+            admin.setPassword("not-used");
+            admin.setJoinDate(new Date());
+            admin.setRole(Role.ROLE_SUPER_ADMIN.name());
+            admin.setPermissions(Role.ROLE_SUPER_ADMIN.getPermissions());
+            admin.setActive(true);
+            admin.setNotLocked(true);
+            admin = userRepository.save(admin);
+        }
+        authorization = SecurityConstants.TOKEN_PREFIX + jwtTokenProvider.generateJwtToken(new UserPrincipal(admin));
+    }
+
+    @Test
+    void unchangedUsersAndListsAreNotSentAgain() throws Exception {
+        String userTag = mockMvc.perform(get("/user/find/etagadmin").header(HttpHeaders.AUTHORIZATION, authorization).header(HttpHeaders.ORIGIN, "http://localhost:4200"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, containsString(HttpHeaders.ETAG))) //Readable by the client
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(userTag).startsWith("W/\"");
+        mockMvc.perform(get("/user/find/etagadmin").header(HttpHeaders.AUTHORIZATION, authorization).header(HttpHeaders.IF_NONE_MATCH, userTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        String listTag = mockMvc.perform(get("/user/list?limit=10&role=ROLE_SUPER_ADMIN").header(HttpHeaders.AUTHORIZATION, authorization))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/user/list?limit=10&role=ROLE_SUPER_ADMIN").header(HttpHeaders.AUTHORIZATION, authorization).header(HttpHeaders.IF_NONE_MATCH, listTag))
+                .andExpect(status().isNotModified());
+
+        String updatedTag = mockMvc.perform(update("Changed").header(HttpHeaders.IF_MATCH, userTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.firstName").value("Changed"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(updatedTag).isNotEqualTo(userTag);
+        mockMvc.perform(get("/user/find/etagadmin").header(HttpHeaders.AUTHORIZATION, authorization).header(HttpHeaders.IF_NONE_MATCH, userTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, updatedTag));
+        mockMvc.perform(get("/user/list?limit=10&role=ROLE_SUPER_ADMIN").header(HttpHeaders.AUTHORIZATION, authorization).header(HttpHeaders.IF_NONE_MATCH, listTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void updatesBasedOnAnOlderVersionFail() throws Exception {
+        String userTag = mockMvc.perform(get("/user/find/etagadmin").header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(update("First").header(HttpHeaders.IF_MATCH, userTag))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(update("Second").header(HttpHeaders.IF_MATCH, userTag)) //Did not see the first update
+                .andExpect(status().isPreconditionFailed());
+        assertThat(userRepository.findUserByUsername("etagadmin").getFirstName()).isEqualTo("First");
+    }
+
+    @Test
+    void revalidatedAvatarsAreNotRendered() throws Exception {
+        String eTag = "\"" + avatarService.getETag("etag-avatar") + "\"";
+        mockMvc.perform(get("/user/image/profile/etag-avatar").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().exists(HttpHeaders.CACHE_CONTROL));
+        long rendered = avatarService.getCachedAvatarCount();
+        mockMvc.perform(get("/user/image/profile/etag-avatar"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag));
+        assertThat(avatarService.getCachedAvatarCount()).isEqualTo(rendered + 1); //Rendered by the miss only
+    }
+
+    private MockHttpServletRequestBuilder update(String firstName) {
+        return put("/user/update")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .param("currentUsername", "etagadmin")
+                .param("firstName", firstName)
+                .param("lastName", "Admin")
+                .param("username", "etagadmin")
+                .param("email", "etagadmin@example.com")
+                .param("role", Role.ROLE_SUPER_ADMIN.name())
+                .param("isActive", "true")
+                .param("isNotLocked", "true");
+    }
+}
@@ -0,0 +1,220 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.exceptions.domain.PasswordHashingUnavailableException;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.service.PasswordHashingService;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static com.hardi.Server.utils.ErrorMessageConstants.IMPORT_BATCH_FAILED;
+import static com.hardi.Server.utils.ErrorMessageConstants.PASSWORD_HASHING_UNAVAILABLE;
+import static com.hardi.Server.utils.ErrorMessageConstants.UNCLOSED_IMPORT_QUOTE;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Bulk import with batches of two rows, so checks and inserts span several batches.
+ */
+@SpringBootTest(properties = "user.import.batch-size=2")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class UserImportTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JwtTokenProviderUtils jwtTokenProvider;
+
+    @SpyBean
+    private PasswordHashingService passwordHashingService;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User admin = userRepository.findUserByUsername("importadmin");
+        if(admin == null) {
+            admin = new User();
+            admin.setUserId("8100000000");
+            admin.setFirstName("Import");
+            admin.setLastName("Admin");
+            admin.setUsername("importadmin");
+            admin.setEmail("importadmin@example.com");
+            admin.setPassword("not-used");
+            admin.setJoinDate(new Date());
+            admin.setRole(Role.ROLE_SUPER_ADMIN.name());
+            admin.setPermissions(Role.ROLE_SUPER_ADMIN.getPermissions());
+            admin.setActive(true);
+            admin.setNotLocked(true);
+            admin = userRepository.save(admin);
+        }
+        authorization = SecurityConstants.TOKEN_PREFIX + jwtTokenProvider.generateJwtToken(new UserPrincipal(admin));
+    }
+
+    @Test
+    void importReportsEveryRowAndExportStreamsTheUsers() throws Exception {
+        String csv = "firstName,lastName,username,email,role,isActive\n"
+                + "Ada,Lovelace,import0,import0@example.com,,\n"
+                + "Alan,Turing,import1,import1@example.com,role_admin,false\n"
+                + "Grace,Hopper,IMPORT0,other@example.com,,\n" //Same username as line 2, in another batch
+                + "Edsger,Dijkstra,import3,importadmin@example.com,,\n" //Email of an existing user
+                + "Barbara,Liskov,import4,import4@example.com,ROLE_OWNER,\n"
+                + "\n"
+                + "Donald,Knuth,import5,,,\n"
+                + "Ken,Thompson,import6,import6@example.com,,,too,many\n";
+
+        mockMvc.perform(post("/user/import").header(HttpHeaders.AUTHORIZATION, authorization)
+                .contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.rejected").value(5))
+                .andExpect(jsonPath("$.results[0].line").value(2))
+                .andExpect(jsonPath("$.results[0].status").value("CREATED"))
+                .andExpect(jsonPath("$.results[0].message").value(nullValue()))
+                .andExpect(jsonPath("$.results[2].status").value("REJECTED"))
+                .andExpect(jsonPath("$.results[3].message").value("Email already exists"))
+                .andExpect(jsonPath("$.results[4].message").value("Unknown role: ROLE_OWNER"))
+                .andExpect(jsonPath("$.results[5].line").value(8))
+                .andExpect(jsonPath("$.results[5].message").value("A value is required for: email"))
+                .andExpect(jsonPath("$.results[6].status").value("REJECTED"));
+
+        User imported = userRepository.findUserByUsername("import1");
+        assertThat(imported.getRole()).isEqualTo(Role.ROLE_ADMIN.name());
+        assertThat(imported.getPermissions()).isEqualTo(Role.ROLE_ADMIN.getPermissions());
+        assertThat(imported.isActive()).isFalse();
+        assertThat(imported.getPassword()).startsWith("$2a$");
+        assertThat(jdbcTemplate.queryForObject("SELECT body FROM email_outbox WHERE recipient = 'import0@example.com'", String.class))
+                .doesNotContain("password"); //Stored encrypted
+
+        mockMvc.perform(get("/user/search?q=turing").header(HttpHeaders.AUTHORIZATION, authorization))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users[0].username").value("import1")); //Indexed once the batch committed
+
+        MvcResult export = mockMvc.perform(get("/user/export?role=ROLE_ADMIN").header(HttpHeaders.AUTHORIZATION, authorization))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String exported = mockMvc.perform(asyncDispatch(export))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(exported).startsWith("userId,firstName,lastName,username,email,role,isActive,isNotLocked,joinDate\n");
+        assertThat(exported).contains(",Alan,Turing,import1,import1@example.com,ROLE_ADMIN,false,true,");
+        assertThat(exported).doesNotContain("import0");
+    }
+
+    @Test
+    void ndjsonImportCreatesUsers() throws Exception {
+        String ndjson = "{\"firstName\":\"Linus\",\"lastName\":\"Torvalds\",\"username\":\"importjson\",\"email\":\"importjson@example.com\"}\n"
+                + "{\"firstName\":\"Broken\"\n";
+
+        mockMvc.perform(post("/user/import").header(HttpHeaders.AUTHORIZATION, authorization)
+                .contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.results[1].status").value("REJECTED"));
+
+        assertThat(userRepository.findUserByUsername("importjson").getRole()).isEqualTo(Role.ROLE_USER.name());
+    }
+
+    @Test
+    void quotedCsvValuesMaySpanLines() throws Exception {
+        String csv = "firstName,lastName,username,email\n"
+                + "Multi,\"Line\nName, \"\"quoted\"\"\",importmultiline,importmultiline@example.com\n"
+                + "After,Multi,importaftermultiline,importaftermultiline@example.com\n"
+                + "Open,\"Quote" + "x".repeat(9000) + ",importunclosed,importunclosed@example.com\n"
+                + "After,Unclosed,importafterunclosed,importafterunclosed@example.com\n";
+
+        mockMvc.perform(post("/user/import").header(HttpHeaders.AUTHORIZATION, authorization)
+                .contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(3))
+                .andExpect(jsonPath("$.results[1].line").value(4)) //Line numbers count the break inside the quotes
+                .andExpect(jsonPath("$.results[1].status").value("CREATED"))
+                .andExpect(jsonPath("$.results[2].line").value(5))
+                .andExpect(jsonPath("$.results[2].message").value(UNCLOSED_IMPORT_QUOTE))
+                .andExpect(jsonPath("$.results[3].line").value(6))
+                .andExpect(jsonPath("$.results[3].status").value("CREATED"));
+
+        assertThat(userRepository.findUserByUsername("importmultiline").getLastName()).isEqualTo("Line\nName, \"quoted\"");
+    }
+
+    @Test
+    void aFailedBatchIsRejectedAndTheImportGoesOn() throws Exception {
+        doCallRealMethod().doThrow(new PasswordHashingUnavailableException(PASSWORD_HASHING_UNAVAILABLE)).doCallRealMethod()
+                .when(passwordHashingService).encodeAll(anyList(), anyInt());
+        String csv = "firstName,lastName,username,email\n"
+                + "Batch,One,importbatch0,importbatch0@example.com\n"
+                + "Batch,One,importbatch1,importbatch1@example.com\n"
+                + "Batch,Two,importbatch2,importbatch2@example.com\n"
+                + "Batch,Two,importbatch3,importbatch3@example.com\n"
+                + "Batch,Three,importbatch4,importbatch4@example.com\n";
+
+        mockMvc.perform(post("/user/import").header(HttpHeaders.AUTHORIZATION, authorization)
+                .contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(3))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.results[1].status").value("CREATED"))
+                .andExpect(jsonPath("$.results[2].message").value(IMPORT_BATCH_FAILED))
+                .andExpect(jsonPath("$.results[3].status").value("REJECTED"))
+                .andExpect(jsonPath("$.results[4].status").value("CREATED"));
+
+        assertThat(userRepository.findUserByUsername("importbatch2")).isNull();
+        assertThat(userRepository.findUserByUsername("importbatch4")).isNotNull();
+    }
+
+    @Test
+    void plainUsersCannotImportOrExport() throws Exception {
+        User user = new User();
+        user.setUserId("8100000001");
+        user.setFirstName("Import");
+        user.setLastName("User");
+        user.setUsername("importuser");
+        user.setEmail("importuser@example.com");
+        user.setPassword("not-used");
+        user.setJoinDate(new Date());
+        user.setRole(Role.ROLE_USER.name());
+        user.setPermissions(Role.ROLE_USER.getPermissions());
+        user.setActive(true);
+        user.setNotLocked(true);
+        String userAuthorization = SecurityConstants.TOKEN_PREFIX + jwtTokenProvider.generateJwtToken(new UserPrincipal(userRepository.save(user)));
+
+        mockMvc.perform(post("/user/import").header(HttpHeaders.AUTHORIZATION, userAuthorization)
+                .contentType(MediaType.APPLICATION_NDJSON).content("{\"firstName\":\"Not\",\"lastName\":\"Allowed\",\"username\":\"importdenied\",\"email\":\"importdenied@example.com\"}\n"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/user/export").header(HttpHeaders.AUTHORIZATION, userAuthorization))
+                .andExpect(status().isForbidden());
+        assertThat(userRepository.findUserByUsername("importdenied")).isNull();
+    }
+}
@@ -0,0 +1,218 @@
+package com.hardi.Server.controller;
+
+import com.hardi.Server.ServerApplication;
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.repository.UserRepository;
+import com.hardi.Server.support.LatencyRecorder;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts the servlet stack (Spring MVC on Tomcat) and then the reactive profile (WebFlux on Netty) in this JVM
+ * and drives each with the same number of concurrent keep-alive connections and the same request mix.
+ * Prints latency percentiles per endpoint, the peak number of live threads and the live heap per in-flight
+ * request, the latter taken from the heap left after each garbage collection during the run. The client
+ * shares the JVM, its footprint is the same for both stacks.
+ * <p>
+ * Run with {@code mvn test -Dtest=WebStackComparisonTests -Dload=true}. Optional settings:
+ * {@code load.connections}, {@code load.requests-per-connection}, {@code load.seed-users} and
+ * {@code load.max-error-rate}.
+ */
+@EnabledIfSystemProperty(named = "load", matches = "true")
+class WebStackComparisonTests {
+
+    private static final int CONNECTIONS = Integer.getInteger("load.connections", 2000);
+
+    private static final int REQUESTS_PER_CONNECTION = Integer.getInteger("load.requests-per-connection", 20);
+
+    private static final int SEED_USERS = Integer.getInteger("load.seed-users", 500);
+
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+
+    private static final String[] ENDPOINTS = {"find", "list-page", "image"};
+
+    @Test
+    void compareServletAndReactiveStacks() throws Exception {
+        Map<String, StackResult> results = new LinkedHashMap<>();
+        results.put("servlet", run(false));
+        results.put("reactive", run(true));
+
+        System.out.println(CONNECTIONS + " concurrent connections x " + REQUESTS_PER_CONNECTION + " requests");
+        System.out.println(String.format("%-9s %10s %9s %9s %9s %9s %12s %22s",
+                "stack", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "peak threads", "heap per in-flight KiB"));
+        results.forEach((stack, result) -> {
+            LatencyRecorder.Summary all = result.recorder.summarize(result.elapsedNanos).get("all");
+            System.out.println(String.format("%-9s %10.1f %9.1f %9.1f %9.1f %9.1f %12d %22.1f",
+                    stack, all.getThroughput(), all.getP50(), all.getP95(), all.getP99(), all.getMax(),
+                    result.peakThreads, result.liveHeapPerConnection / 1024.0));
+        });
+        results.forEach((stack, result) -> {
+            System.out.println(stack);
+            System.out.println(result.recorder.report(result.elapsedNanos));
+        });
+
+        results.forEach((stack, result) -> assertThat(result.recorder.summarize(result.elapsedNanos).get("all").getErrorRate())
+                .as(stack + " error rate").isLessThanOrEqualTo(MAX_ERROR_RATE));
+    }
+
+    private StackResult run(boolean reactive) throws Exception {
+        String database = reactive ? "compare-reactive" : "compare-servlet";
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ServerApplication.class)
+                .profiles(reactive ? new String[]{"reactive", "test"} : new String[]{"test"})
+                .run("--server.port=0", //Arguments, so they win over the profile files
+                        "--management.server.port=-1",
+                        "--spring.main.web-application-type=" + (reactive ? "reactive" : "servlet"),
+                        "--spring.datasource.url=jdbc:h2:mem:" + database + ";MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER",
+                        "--spring.r2dbc.url=r2dbc:h2:mem:///" + database + "?options=MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER");
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        try {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            List<User> users = seedUsers(context.getBean(UserRepository.class));
+            String authorization = SecurityConstants.TOKEN_PREFIX
+                    + context.getBean(JwtTokenProviderUtils.class).generateJwtToken(new UserPrincipal(users.get(0)));
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .executor(clientExecutor)
+                    .build();
+
+            drive(client, baseUrl, authorization, users, new LatencyRecorder(), Math.min(CONNECTIONS, 50), 20); //Warm-up, JIT and caches
+            System.gc();
+            long baselineHeap = getLiveHeap();
+            int baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            AtomicLong peakLiveHeap = new AtomicLong(baselineHeap);
+            AtomicLong peakThreads = new AtomicLong(baselineThreads);
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> {
+                peakLiveHeap.accumulateAndGet(getLiveHeap(), Math::max);
+                peakThreads.accumulateAndGet(ManagementFactory.getThreadMXBean().getThreadCount(), Math::max);
+            }, 0, 5, TimeUnit.MILLISECONDS);
+            LatencyRecorder recorder = new LatencyRecorder();
+            long start = System.nanoTime();
+            try {
+                drive(client, baseUrl, authorization, users, recorder, CONNECTIONS, REQUESTS_PER_CONNECTION);
+            } finally {
+                sampler.shutdownNow();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            return new StackResult(recorder, elapsedNanos, peakThreads.get(),
+                    Math.max(0, peakLiveHeap.get() - baselineHeap) / (double) CONNECTIONS);
+        } finally {
+            context.close();
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    private void drive(HttpClient client, String baseUrl, String authorization, List<User> users,
+                       LatencyRecorder recorder, int connections, int requestsPerConnection) throws Exception {
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        List<CompletableFuture<Void>> sessions = new ArrayList<>();
+        for(int i = 0; i < connections; i++) {
+            CompletableFuture<Void> session = gate;
+            for(int request = 0; request < requestsPerConnection; request++) {
+                session = session.thenCompose(ignored -> send(client, baseUrl, authorization, users, recorder)); //One after the other, keeping the connection busy
+            }
+            sessions.add(session);
+        }
+        gate.complete(null); //Every connection sends its first request now
+        CompletableFuture.allOf(sessions.toArray(new CompletableFuture[0])).get(10, TimeUnit.MINUTES);
+    }
+
+    private CompletableFuture<Void> send(HttpClient client, String baseUrl, String authorization, List<User> users, LatencyRecorder recorder) {
+        Random random = ThreadLocalRandom.current();
+        String endpoint = ENDPOINTS[random.nextInt(ENDPOINTS.length)];
+        String username = users.get(random.nextInt(users.size())).getUsername();
+        String path = endpoint.equals("find") ? "/user/find/" + username
+                : endpoint.equals("list-page") ? "/user/list?limit=50"
+                : "/user/image/profile/" + username;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, exception) -> {
+                    long nanos = System.nanoTime() - start;
+                    boolean success = exception == null && response.statusCode() == 200;
+                    recorder.record(endpoint, nanos, success);
+                    recorder.record("all", nanos, success);
+                    return null;
+                });
+    }
+
+    private List<User> seedUsers(UserRepository userRepository) {
+        List<User> users = new ArrayList<>();
+        for(int i = 0; i < SEED_USERS; i++) {
+            User user = new User();
+            user.setUserId(String.valueOf(6_000_000_000L + i));
+            user.setFirstName("Compare");
+            user.setLastName("User" + i);
+            user.setUsername("compare" + i);
+            user.setEmail("compare" + i + "@example.com");
+            user.setPassword("not-used"); //Requests carry a token, nobody logs in
+            user.setJoinDate(new Date());
+            user.setRole(Role.ROLE_ADMIN.name());
+            user.setPermissions(Role.ROLE_ADMIN.getPermissions());
+            user.setActive(true);
+            user.setNotLocked(true);
+            users.add(user);
+        }
+        return userRepository.saveAll(users);
+    }
+
+    /**
+     * Heap in use right after the latest collection of each pool, what in-flight requests keep alive.
+     */
+    private static long getLiveHeap() {
+        long used = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage afterCollection = pool.getCollectionUsage();
+            if(pool.getType() == MemoryType.HEAP && afterCollection != null) {
+                used += afterCollection.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static class StackResult {
+
+        private final LatencyRecorder recorder;
+
+        private final long elapsedNanos;
+
+        private final long peakThreads;
+
+        private final double liveHeapPerConnection;
+
+        private StackResult(LatencyRecorder recorder, long elapsedNanos, long peakThreads, double liveHeapPerConnection) {
+            this.recorder = recorder;
+            this.elapsedNanos = elapsedNanos;
+            this.peakThreads = peakThreads;
+            this.liveHeapPerConnection = liveHeapPerConnection;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.EmailOutboxMessage;
+import com.hardi.Server.domain.EmailStatus;
+import com.hardi.Server.repository.EmailOutboxRepository;
+import com.hardi.Server.support.SmtpStubServer;
+import com.hardi.Server.utils.EmailBodyCipher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmailOutboxDispatcherTests {
+
+    private SmtpStubServer smtpServer;
+
+    private EmailOutboxRepository emailOutboxRepository;
+
+    private List<EmailOutboxMessage> outbox;
+
+    private EmailOutboxDispatcher dispatcher;
+
+    private final EmailBodyCipher emailBodyCipher = new EmailBodyCipher("test-outbox-secret");
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtpServer = new SmtpStubServer();
+        outbox = new ArrayList<>();
+        emailOutboxRepository = mock(EmailOutboxRepository.class);
+        when(emailOutboxRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(any(EmailStatus.class), any(Date.class), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    Date now = invocation.getArgument(1);
+                    Pageable pageable = invocation.getArgument(2);
+                    List<EmailOutboxMessage> due = new ArrayList<>();
+                    for(EmailOutboxMessage message : outbox) {
+                        if(message.getStatus() == EmailStatus.PENDING && !message.getNextAttemptAt().after(now) && due.size() < pageable.getPageSize()) {
+                            due.add(message);
+                        }
+                    }
+                    return due;
+                });
+        doAnswer(invocation -> {
+            outbox.removeAll(invocation.<Collection<EmailOutboxMessage>>getArgument(0));
+            return null;
+        }).when(emailOutboxRepository).deleteAllInBatch(anyIterable());
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        dispatcher = new EmailOutboxDispatcher(emailOutboxRepository, transactionManager, emailBodyCipher, "smtp", "127.0.0.1", smtpServer.getPort(),
+                "", "", false, 5000, "support@example.com", 2, 3, 60_000, 3_600_000, 300_000, 30_000, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dispatcher.closeTransport();
+        smtpServer.close();
+    }
+
+    @Test
+    void sendsAllPendingMessagesOverOneConnection() {
+        outbox.addAll(Arrays.asList(message(1L, "a@example.com"), message(2L, "b@example.com"), message(3L, "c@example.com")));
+
+        dispatcher.dispatch();
+
+        assertThat(smtpServer.getMessages()).hasSize(3).allSatisfy(message -> assertThat(message).contains("your new password is: secret"));
+        assertThat(smtpServer.getConnectionCount()).isEqualTo(1);
+        assertThat(outbox).isEmpty(); //Sent messages are deleted with the password they carry
+    }
+
+    @Test
+    void retriesWithBackoffAndDeadLettersAfterMaxAttempts() {
+        EmailOutboxMessage message = message(1L, "a@example.com");
+        outbox.add(message);
+        smtpServer.failNextMessages(Integer.MAX_VALUE);
+
+        dispatcher.dispatch();
+
+        assertThat(message.getStatus()).isEqualTo(EmailStatus.PENDING);
+        assertThat(message.getAttempts()).isEqualTo(1);
+        assertThat(message.getNextAttemptAt()).isAfter(new Date());
+
+        message.setNextAttemptAt(new Date(0));
+        dispatcher.dispatch();
+        message.setNextAttemptAt(new Date(0));
+        dispatcher.dispatch();
+
+        assertThat(message.getStatus()).isEqualTo(EmailStatus.DEAD);
+        assertThat(message.getAttempts()).isEqualTo(3);
+        assertThat(message.getBody()).isNull();
+        assertThat(smtpServer.getMessages()).isEqualTo(Collections.emptyList());
+    }
+
+    private EmailOutboxMessage message(Long id, String recipient) {
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setId(id);
+        message.setRecipient(recipient);
+        message.setSubject("New Password");
+        message.setBody(emailBodyCipher.encrypt("Hello, your new password is: secret"));
+        message.setStatus(EmailStatus.PENDING);
+        message.setCreatedAt(new Date());
+        message.setNextAttemptAt(new Date());
+        return message;
+    }
+}
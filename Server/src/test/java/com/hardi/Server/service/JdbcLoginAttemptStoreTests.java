@@ -0,0 +1,107 @@
+package com.hardi.Server.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+/**
+ * Two stores sharing one H2 database in MySQL mode, like two nodes sharing the login_attempt table.
+ */
+class JdbcLoginAttemptStoreTests {
+
+    private static final long WINDOW = 3_600_000;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcLoginAttemptStore store;
+
+    private JdbcLoginAttemptStore otherNode;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V4__create_login_attempt_table.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        store = new JdbcLoginAttemptStore(jdbcTemplate, WINDOW, 500, 0, 1000);
+        otherNode = new JdbcLoginAttemptStore(jdbcTemplate, WINDOW, 500, 0, 1000);
+    }
+
+    @Test
+    void flushedFailuresAddUpAcrossNodes() {
+        store.recordFailure("alice", "10.0.0.1");
+        store.recordFailure("alice", "10.0.0.1");
+        assertThat(store.getUsernameAttempts("alice")).isEqualTo(2);
+        assertThat(otherNode.getUsernameAttempts("alice")).isZero(); //Not written yet
+
+        store.flush();
+        otherNode.recordFailure("alice", "10.0.0.2");
+        otherNode.flush();
+
+        assertThat(store.getPendingCount()).isZero();
+        assertThat(store.getUsernameAttempts("alice")).isEqualTo(3);
+        assertThat(otherNode.getUsernameAttempts("alice")).isEqualTo(3);
+        assertThat(store.getIpAttempts("10.0.0.1")).isEqualTo(2);
+    }
+
+    @Test
+    void aNewWindowMovesTheCountToThePreviousOne() {
+        long currentWindow = System.currentTimeMillis() / WINDOW;
+        jdbcTemplate.update("INSERT INTO login_attempt (attempt_key, window_number, current_count, previous_count) VALUES ('user:bob', ?, 4, 9)", currentWindow - 1);
+
+        store.recordFailure("bob", null);
+        store.flush();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT window_number, current_count, previous_count FROM login_attempt WHERE attempt_key = 'user:bob'");
+        assertThat(((Number) row.get("window_number")).longValue()).isEqualTo(currentWindow);
+        assertThat(((Number) row.get("current_count")).intValue()).isEqualTo(1);
+        assertThat(((Number) row.get("previous_count")).intValue()).isEqualTo(4);
+    }
+
+    @Test
+    void aResetIsWrittenBeforeTheFailuresAfterIt() {
+        store.recordFailure("carol", null);
+        store.recordFailure("carol", null);
+        store.flush();
+
+        store.resetUsername("carol");
+        assertThat(store.getUsernameAttempts("carol")).isZero(); //Right away, the row is deleted by the next flush
+        store.recordFailure("carol", null);
+        store.flush();
+
+        assertThat(otherNode.getUsernameAttempts("carol")).isEqualTo(1);
+        assertThat(store.getWrittenFailureCount()).isEqualTo(3);
+    }
+
+    @Test
+    void aRowReadWhileAFlushWritesIsNotCached() {
+        JdbcTemplate flushingJdbcTemplate = spy(jdbcTemplate);
+        JdbcLoginAttemptStore cachingStore = new JdbcLoginAttemptStore(flushingJdbcTemplate, WINDOW, 500, 60_000, 1000);
+        AtomicBoolean flushed = new AtomicBoolean();
+        doAnswer(invocation -> {
+            Object rows = invocation.callRealMethod(); //Read before the flush writes
+            if(flushed.compareAndSet(false, true)) {
+                cachingStore.flush();
+            }
+            return rows;
+        }).when(flushingJdbcTemplate).query(startsWith("SELECT"), any(RowMapper.class), any(Object.class));
+        cachingStore.recordFailure("dave", null);
+        cachingStore.recordFailure("dave", null);
+
+        assertThat(cachingStore.getUsernameAttempts("dave")).isEqualTo(2); //Still counted locally
+        assertThat(cachingStore.getUsernameAttempts("dave")).isEqualTo(2); //Read again, not the row from before the flush
+    }
+}
@@ -0,0 +1,90 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.EmailOutboxMessage;
+import com.hardi.Server.domain.EmailStatus;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.repository.EmailOutboxRepository;
+import com.hardi.Server.support.SmtpStubServer;
+import com.hardi.Server.utils.EmailBodyCipher;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The outbox drain waiting on an SMTP server that stopped answering holds up none of the other scheduled jobs.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:scheduling;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER",
+        "email.outbox.enabled=true",
+        "email.outbox.poll-interval=100",
+        "email.smtp.timeout=60000",
+        "user.last-login.max-staleness=100"})
+@ActiveProfiles("test")
+class ScheduledJobsTests {
+
+    private static SmtpStubServer smtpServer;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private LastLoginRecorder lastLoginRecorder;
+
+    @Autowired
+    private EmailBodyCipher emailBodyCipher;
+
+    @DynamicPropertySource
+    static void smtpProperties(DynamicPropertyRegistry registry) throws IOException {
+        smtpServer = new SmtpStubServer();
+        registry.add("email.smtp.host", () -> "127.0.0.1");
+        registry.add("email.smtp.port", smtpServer::getPort);
+    }
+
+    @AfterAll
+    static void stopSmtpServer() throws IOException {
+        smtpServer.close();
+    }
+
+    @Test
+    void aStalledSmtpSendDoesNotDelayTheOtherJobs() throws Exception {
+        smtpServer.stallMessages();
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setRecipient("stalled@example.com");
+        message.setSubject("Stalled");
+        message.setBody(emailBodyCipher.encrypt("Waits for the SMTP server"));
+        message.setStatus(EmailStatus.PENDING);
+        message.setCreatedAt(new Date());
+        message.setNextAttemptAt(new Date());
+        emailOutboxRepository.save(message);
+        assertThat(waitFor(() -> smtpServer.getStalledMessageCount() > 0)).isTrue(); //The drain now blocks in send
+
+        User user = new User();
+        user.setId(8_500_000_001L);
+        lastLoginRecorder.recordLogin(user);
+
+        assertThat(waitFor(() -> lastLoginRecorder.getPendingCount() == 0)).isTrue(); //Flushed while the drain still waits
+        assertThat(smtpServer.getMessages()).isEmpty();
+        smtpServer.release();
+    }
+
+    private boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package com.hardi.Server.service;
+
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserSearchQuery;
+import com.hardi.Server.exceptions.domain.InvalidListQueryException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserSearchIndexTests {
+
+    private UserSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new UserSearchIndex(new DriverManagerDataSource(), 100); //Not rebuilt, filled through index()
+        index.index(user(1, "alanturing", "1000000001", "alan@bletchley.org", "Alan", "Turing"));
+        index.index(user(2, "ada", "1000000002", "ada.lovelace@example.com", "Ada", "Lovelace"));
+        index.index(user(3, "grace", "1000000003", "grace@navy.mil", "Grace", "Hopper"));
+        index.index(user(4, "adam", "1000000004", "adam@example.com", "Adam", "Smith"));
+    }
+
+    @Test
+    void exactAndPrefixMatchesRankBeforeSubstrings() {
+        assertThat(index.search("ada", 0, 10).getIds()).containsExactly(2L, 4L);
+        assertThat(index.search("ace", 0, 10).getIds()).containsExactly(3L, 2L); //Username before email
+        assertThat(index.search("ring", 0, 10).getIds()).containsExactly(1L);
+    }
+
+    @Test
+    void shortTermsMatchWordStartsOnly() {
+        assertThat(index.search("lo", 0, 10).getIds()).containsExactly(2L); //Not the "lo" inside "bletchley.org"
+        assertThat(index.search("h", 0, 10).getIds()).containsExactly(3L); //Not the "h" inside "bletchley" or "smith"
+    }
+
+    @Test
+    void everyTermMustMatchAField() {
+        assertThat(index.search("ada smith", 0, 10).getIds()).containsExactly(4L);
+        assertThat(index.search("ada turing", 0, 10).getIds()).isEmpty();
+        assertThat(index.search("10000000", 0, 10).getTotal()).isEqualTo(4);
+    }
+
+    @Test
+    void pagesSkipEarlierResultsAndCountAllMatches() {
+        UserSearchIndex.Hits second = index.search("example", 1, 1);
+        assertThat(second.getTotal()).isEqualTo(2);
+        assertThat(second.getIds()).containsExactly(4L);
+    }
+
+    @Test
+    void cursorsPastTheMatchesReturnTheLastPage() throws InvalidListQueryException {
+        UserSearchQuery query = UserSearchQuery.of("example", String.valueOf(Integer.MAX_VALUE - 1), 100); //offset + limit overflows an int
+        UserSearchIndex.Hits hits = index.search(query.getText(), query.getOffset(), query.getLimit());
+        assertThat(hits.getIds()).isEmpty();
+        assertThat(hits.getTotal()).isEqualTo(2);
+        assertThat(query.getNextCursor(hits.getTotal())).isNull();
+    }
+
+    @Test
+    void updatesReplaceAndRemovalsDropUsers() {
+        index.index(user(3, "gracehopper", "1000000003", "grace@navy.mil", "Grace", "Murray"));
+        assertThat(index.search("hopper", 0, 10).getIds()).containsExactly(3L);
+        assertThat(index.search("murray", 0, 10).getIds()).containsExactly(3L);
+
+        index.remove(user(2, "ada", null, null, null, null));
+        assertThat(index.search("lovelace", 0, 10).getIds()).isEmpty();
+        assertThat(index.getDocumentCount()).isEqualTo(3);
+    }
+
+    private static User user(long id, String username, String userId, String email, String firstName, String lastName) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setUserId(userId);
+        user.setEmail(email);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        return user;
+    }
+}
@@ -0,0 +1,127 @@
+package com.hardi.Server.support;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response times of a load test grouped by endpoint. Every sample is kept, so percentiles are
+ * exact (nearest rank) rather than estimated from buckets.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Samples> endpoints = new ConcurrentSkipListMap<>(); //Sorted so reports list endpoints in a stable order
+
+    public void record(String endpoint, long nanos, boolean success) {
+        endpoints.computeIfAbsent(endpoint, name -> new Samples()).add(nanos, success);
+    }
+
+    public Map<String, Summary> summarize(long elapsedNanos) {
+        Map<String, Summary> summaries = new ConcurrentSkipListMap<>();
+        endpoints.forEach((endpoint, samples) -> summaries.put(endpoint, samples.summarize(elapsedNanos)));
+        return summaries;
+    }
+
+    public String report(long elapsedNanos) {
+        StringBuilder report = new StringBuilder(String.format("%-18s %8s %7s %10s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        summarize(elapsedNanos).forEach((endpoint, summary) -> report.append(String.format("%-18s %8d %7d %10.1f %9.1f %9.1f %9.1f %9.1f%n",
+                endpoint, summary.getCount(), summary.getErrors(), summary.getThroughput(),
+                summary.getP50(), summary.getP95(), summary.getP99(), summary.getMax())));
+        return report.toString();
+    }
+
+    private static class Samples {
+
+        private long[] nanos = new long[1024];
+
+        private int count;
+
+        private int errors;
+
+        private synchronized void add(long sample, boolean success) {
+            if(count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = sample;
+            if(!success) {
+                errors++;
+            }
+        }
+
+        private synchronized Summary summarize(long elapsedNanos) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return new Summary(count, errors, count * 1e9 / elapsedNanos,
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), percentile(sorted, 100));
+        }
+
+        private static double percentile(long[] sorted, int percentile) {
+            if(sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    public static class Summary {
+
+        private final int count;
+
+        private final int errors;
+
+        private final double throughput;
+
+        private final double p50;
+
+        private final double p95;
+
+        private final double p99;
+
+        private final double max;
+
+        private Summary(int count, int errors, double throughput, double p50, double p95, double p99, double max) {
+            this.count = count;
+            this.errors = errors;
+            this.throughput = throughput;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public double getErrorRate() {
+            return count == 0 ? 0 : errors / (double) count;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP95() {
+            return p95;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+}
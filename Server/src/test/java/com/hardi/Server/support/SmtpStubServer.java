@@ -0,0 +1,141 @@
+package com.hardi.Server.support;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process SMTP server for tests. It accepts every message, keeps it in memory
+ * and counts connections so tests can check that the transport is reused.
+ */
+public class SmtpStubServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private volatile int failNextMessages;
+
+    private volatile CountDownLatch stall;
+
+    private final AtomicInteger stalledMessages = new AtomicInteger();
+
+    public SmtpStubServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptConnections, "smtp-stub");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    public void failNextMessages(int count) {
+        failNextMessages = count;
+    }
+
+    /**
+     * Holds every message's DATA reply back until {@link #release()}, like an SMTP server that stopped answering.
+     */
+    public void stallMessages() {
+        stall = new CountDownLatch(1);
+    }
+
+    public void release() {
+        CountDownLatch current = stall;
+        stall = null;
+        if(current != null) {
+            current.countDown();
+        }
+    }
+
+    public int getStalledMessageCount() {
+        return stalledMessages.get();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                Thread handler = new Thread(() -> handle(socket), "smtp-stub-session");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+             Writer writer = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.US_ASCII)) {
+            reply(writer, "220 localhost SMTP stub");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String command = line.toUpperCase();
+                if(command.startsWith("EHLO") || command.startsWith("HELO")) {
+                    reply(writer, "250 localhost");
+                } else if(command.startsWith("DATA")) {
+                    reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+                    StringBuilder data = new StringBuilder();
+                    while ((line = reader.readLine()) != null && !line.equals(".")) {
+                        data.append(line).append("\n");
+                    }
+                    CountDownLatch currentStall = stall;
+                    if(currentStall != null) {
+                        stalledMessages.incrementAndGet();
+                        try {
+                            currentStall.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if(failNextMessages > 0) {
+                        failNextMessages--;
+                        reply(writer, "451 Temporary failure");
+                    } else {
+                        messages.add(data.toString());
+                        reply(writer, "250 OK");
+                    }
+                } else if(command.startsWith("QUIT")) {
+                    reply(writer, "221 Bye");
+                    return;
+                } else {
+                    reply(writer, "250 OK"); //MAIL, RCPT, RSET and NOOP
+                }
+            }
+        } catch (IOException ignored) {
+            //Client went away
+        }
+    }
+
+    private void reply(Writer writer, String response) throws IOException {
+        writer.write(response + "\r\n");
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        release();
+        serverSocket.close();
+    }
+}
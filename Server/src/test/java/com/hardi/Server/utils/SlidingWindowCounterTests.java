@@ -0,0 +1,80 @@
+package com.hardi.Server.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SlidingWindowCounterTests {
+
+    private static final long WINDOW = 60_000;
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1024, 2, WINDOW);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        long now = WINDOW * 10;
+        List<Future<?>> futures = new ArrayList<>();
+        for(int thread = 0; thread < 8; thread++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for(int i = 0; i < 200; i++) {
+                    counter.increment("alice", now);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for(Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(counter.estimate("alice", now)).isEqualTo(1600);
+    }
+
+    @Test
+    void previousWindowFadesOutAndResetClearsKey() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1024, 2, WINDOW);
+        long start = WINDOW * 10;
+        for(int i = 0; i < 10; i++) {
+            counter.increment("bob", start);
+        }
+
+        assertThat(counter.estimate("bob", start + WINDOW / 4)).isEqualTo(10);
+        assertThat(counter.estimate("bob", start + WINDOW + WINDOW / 4)).isCloseTo(7.5, within(0.01));
+        assertThat(counter.estimate("bob", start + WINDOW * 2)).isZero();
+        assertThat(counter.estimate("carol", start)).isZero();
+
+        counter.reset("bob", start);
+        assertThat(counter.estimate("bob", start)).isZero();
+        assertThat(counter.getMemoryBytes()).isEqualTo(1024 * 2 * 4);
+    }
+
+    @Test
+    void resetDoesNotTakeEventsFromCollidingKeys() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1, 1, WINDOW); //One slot, every key collides
+        long start = WINDOW * 10;
+        for(int i = 0; i < 5; i++) {
+            counter.increment("victim", start);
+        }
+        for(int i = 0; i < 3; i++) {
+            counter.increment("attacker", start);
+        }
+
+        counter.reset("attacker", start);
+        assertThat(counter.estimate("attacker", start)).isZero();
+        assertThat(counter.estimate("victim", start)).isEqualTo(8); //Over-counted, never under
+        assertThat(counter.increment("victim", start)).isEqualTo(9);
+        assertThat(counter.estimate("attacker", start)).isEqualTo(1);
+        assertThat(counter.estimate("attacker", start + WINDOW + WINDOW / 2)).isCloseTo(0.5, within(0.01));
+    }
+}
@@ -0,0 +1,54 @@
+package com.hardi.Server.utils;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+import com.hardi.Server.domain.UserPrincipal;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+class VerifiedTokenCacheTests {
+
+    @Test
+    void cachedTokensAreVerifiedAgainOnceTheirKeyIsDropped() {
+        JwtKeyManager keyManager = spy(new JwtKeyManager(JwtKeyManager.ECDSA_P256, "not-used", 86_400_000));
+        JwtTokenProviderUtils tokenProvider = new JwtTokenProviderUtils(keyManager);
+        VerifiedTokenCache cache = new VerifiedTokenCache(tokenProvider, 100);
+        String token = tokenProvider.generateJwtToken(new UserPrincipal(user()));
+
+        cache.verify(token);
+        keyManager.rotate(); //The retired key still verifies the tokens it signed
+        cache.verify(token);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        doReturn(false).when(keyManager).canVerify(any()); //As when rotation removes the key
+        cache.verify(token);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void keyPairTokensWithoutKidDoNotOutliveARotation() {
+        JwtKeyManager keyManager = new JwtKeyManager(JwtKeyManager.ED_DSA, "not-used", 86_400_000);
+        String keyId = keyManager.getSigningKeyId();
+        assertThat(keyManager.canVerify(keyId)).isTrue();
+        assertThat(keyManager.canVerify(null)).isFalse(); //Verified with whichever key signs at the time
+
+        keyManager.rotate();
+        assertThat(keyManager.canVerify(keyId)).isTrue();
+        assertThat(keyManager.canVerify("unknown")).isFalse();
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(1L);
+        user.setUserId("1000000001");
+        user.setUsername("alice");
+        user.setRole(Role.ROLE_USER.name());
+        user.setPermissions(Role.ROLE_USER.getPermissions());
+        return user;
+    }
+}
@@ -0,0 +1,53 @@
+package com.hardi.benchmarks;
+
+import com.hardi.Server.domain.Permission;
+import com.hardi.Server.domain.PermissionAuthenticationToken;
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.utils.PermissionChecker;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping permissions to Spring Security authorities and checking them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorityMappingBenchmark {
+
+    private UserPrincipal principal;
+
+    private Authentication authentication;
+
+    private PermissionChecker permissionChecker;
+
+    @Setup
+    public void setUp() {
+        principal = new UserPrincipal(BenchmarkUsers.newUser(1));
+        authentication = new PermissionAuthenticationToken("user1", Role.ROLE_ADMIN.getPermissions());
+        permissionChecker = new PermissionChecker();
+    }
+
+    @Benchmark
+    public Collection<? extends GrantedAuthority> principalAuthorities() {
+        return principal.getAuthorities();
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> roleAuthorities() {
+        return Role.ROLE_SUPER_ADMIN.getAuthorities();
+    }
+
+    @Benchmark
+    public boolean checkPermission() {
+        return permissionChecker.has(authentication, Permission.USER_DELETE);
+    }
+}
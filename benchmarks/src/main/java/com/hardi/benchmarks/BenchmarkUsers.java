@@ -0,0 +1,43 @@
+package com.hardi.benchmarks;
+
+import com.hardi.Server.domain.Role;
+import com.hardi.Server.domain.User;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+final class BenchmarkUsers {
+
+    static final String SECRET = "benchmark-secret";
+
+    private BenchmarkUsers() {
+    }
+
+    static User newUser(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUserId(String.format("%010d", id));
+        user.setFirstName("First" + id);
+        user.setLastName("Last" + id);
+        user.setUsername("user" + id);
+        user.setEmail("user" + id + "@example.com");
+        user.setProfileImageUrl("http://localhost:8081/user/image/profile/user" + id);
+        user.setJoinDate(new Date());
+        user.setLastLoginDate(new Date());
+        user.setLastLoginDateDisplay(new Date());
+        user.setRole(Role.ROLE_ADMIN.name());
+        user.setPermissions(Role.ROLE_ADMIN.getPermissions());
+        user.setActive(true);
+        user.setNotLocked(true);
+        return user;
+    }
+
+    static List<User> newUsers(int count) {
+        List<User> users = new ArrayList<>(count);
+        for(int i = 1; i <= count; i++) {
+            users.add(newUser(i));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,60 @@
+package com.hardi.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.*;
+
+/**
+ * Requests that mostly wait on I/O (JDBC round trips, disk, SMTP), simulated by sleeping, served by
+ * Tomcat's default pool of 200 platform threads or by one virtual thread per request. One operation
+ * is a burst of concurrent requests, so the score is the time to serve the burst. The server switches
+ * between the two with threads.virtual.enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockingRequestBenchmark {
+
+    private static final int PLATFORM_THREADS = 200; //server.tomcat.threads.max
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"200", "2000"})
+    private int concurrentRequests;
+
+    @Param({"10"})
+    private int ioMillis;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        executor = "virtual".equals(threads) ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void serveBurst(Blackhole blackhole) throws Exception {
+        Future<?>[] requests = new Future<?>[concurrentRequests];
+        for(int i = 0; i < concurrentRequests; i++) {
+            requests[i] = executor.submit(() -> {
+                Thread.sleep(ioMillis / 2); //Query
+                blackhole.consume(Long.toHexString(System.nanoTime())); //A little CPU between the waits
+                Thread.sleep(ioMillis - ioMillis / 2); //Write the response, send a mail...
+                return null;
+            });
+        }
+        for(Future<?> request : requests) {
+            request.get();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.hardi.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hardi.Server.domain.HttpResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON rendering of the HttpResponse body returned by the exception handler and failed logins.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpResponseJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public byte[] renderErrorResponse() throws JsonProcessingException {
+        HttpStatus status = HttpStatus.BAD_REQUEST;
+        return objectMapper.writeValueAsBytes(new HttpResponse(status.value(), status, status.getReasonPhrase().toUpperCase(), "Username already exists"));
+    }
+}
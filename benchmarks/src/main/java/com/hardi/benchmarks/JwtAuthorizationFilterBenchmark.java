@@ -0,0 +1,56 @@
+package com.hardi.benchmarks;
+
+import com.hardi.Server.config.filter.JwtAuthorizationFilter;
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.service.TokenRevocationService;
+import com.hardi.Server.utils.JwtKeyManager;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.SecurityConstants;
+import com.hardi.Server.utils.VerifiedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import jakarta.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request through JwtAuthorizationFilter: header parsing, cached verification, revocation
+ * check and building the Authentication. The revocation store is not consulted by the check,
+ * so it runs without a database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthorizationFilterBenchmark {
+
+    private JwtAuthorizationFilter filter;
+
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        JwtTokenProviderUtils tokenProvider = new JwtTokenProviderUtils(new JwtKeyManager(JwtKeyManager.HMAC_SHA512, BenchmarkUsers.SECRET, 86_400_000));
+        filter = new JwtAuthorizationFilter(tokenProvider, new VerifiedTokenCache(tokenProvider, 10_000),
+                new TokenRevocationService(null, 100_000, 0.01), new SimpleMeterRegistry());
+        authorizationHeader = SecurityConstants.TOKEN_PREFIX + tokenProvider.generateJwtToken(new UserPrincipal(BenchmarkUsers.newUser(1)));
+    }
+
+    @Benchmark
+    public Object authorizeRequest() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/list");
+        request.addHeader(HttpHeaders.AUTHORIZATION, authorizationHeader);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+}
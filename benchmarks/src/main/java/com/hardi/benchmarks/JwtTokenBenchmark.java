@@ -0,0 +1,56 @@
+package com.hardi.benchmarks;
+
+import com.hardi.Server.domain.UserPrincipal;
+import com.hardi.Server.domain.VerifiedToken;
+import com.hardi.Server.utils.JwtKeyManager;
+import com.hardi.Server.utils.JwtTokenProviderUtils;
+import com.hardi.Server.utils.VerifiedTokenCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token generation and verification per signing algorithm, and verification through the token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenBenchmark {
+
+    @Param({JwtKeyManager.HMAC_SHA512, JwtKeyManager.ECDSA_P256, JwtKeyManager.ED_DSA})
+    private String algorithm;
+
+    private JwtTokenProviderUtils tokenProvider;
+
+    private VerifiedTokenCache verifiedTokenCache;
+
+    private UserPrincipal principal;
+
+    private String token;
+
+    @Setup
+    public void setUp() {
+        tokenProvider = new JwtTokenProviderUtils(new JwtKeyManager(algorithm, BenchmarkUsers.SECRET, 86_400_000));
+        verifiedTokenCache = new VerifiedTokenCache(tokenProvider, 10_000);
+        principal = new UserPrincipal(BenchmarkUsers.newUser(1));
+        token = tokenProvider.generateJwtToken(principal);
+    }
+
+    @Benchmark
+    public String generate() {
+        return tokenProvider.generateJwtToken(principal);
+    }
+
+    @Benchmark
+    public VerifiedToken verify() {
+        return tokenProvider.verifyToken(token);
+    }
+
+    @Benchmark
+    public VerifiedToken verifyCached() {
+        return verifiedTokenCache.verify(token);
+    }
+}
@@ -0,0 +1,49 @@
+package com.hardi.benchmarks;
+
+import com.hardi.Server.service.LoginAttemptService;
+import com.hardi.Server.service.MemoryLoginAttemptStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Failed login counting with eight threads, spread over many usernames or all on one
+ * (the credential stuffing and the targeted attack case).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LoginAttemptBenchmark {
+
+    @Param({"1", "1000000"})
+    private int usernames;
+
+    private LoginAttemptService loginAttemptService;
+
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        loginAttemptService = new LoginAttemptService(new MemoryLoginAttemptStore(900_000, 1 << 20, 1 << 18, 2), 5, 100);
+        keys = new String[Math.min(usernames, 65_536)]; //Enough distinct keys to defeat CPU caches without holding a million strings
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = "user" + i;
+        }
+    }
+
+    @Benchmark
+    public void recordFailure() {
+        String username = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        loginAttemptService.addUserToLoginAttemptCache(username, "10.0.0." + (username.length() & 0xff));
+    }
+
+    @Benchmark
+    public boolean checkAttempts() {
+        return loginAttemptService.hasExceededMaxAttempts(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+    }
+}
@@ -0,0 +1,17 @@
+import { User } from './user.model';
+
+export class UserChanges {
+    public version: number;
+    public reset: boolean;
+    public hasMore: boolean;
+    public users: User[];
+    public deletedUserIds: string[];
+
+    constructor() {
+        this.version = 0;
+        this.reset = false;
+        this.hasMore = false;
+        this.users = [];
+        this.deletedUserIds = [];
+    }
+}
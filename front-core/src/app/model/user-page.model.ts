@@ -0,0 +1,10 @@
+import { User } from './user.model';
+
+export class UserPage {
+    public users: User[];
+    public nextCursor?: string;
+
+    constructor() {
+        this.users = [];
+    }
+}
@@ -11,6 +11,7 @@ export class User {
     public authorities: [];
     public isActive: boolean;
     public isNotLocked: boolean;
+    public version?: number;
 
     constructor() {
         this.firstName = '';
@@ -33,6 +33,8 @@ export class AuthenticationService {
     localStorage.removeItem('user');
     localStorage.removeItem('token');
     localStorage.removeItem('users');
+    localStorage.removeItem('usersVersion');
+    localStorage.removeItem('usersNextCursor');
   }
 
   public saveToken(token: string): void {
@@ -1,7 +1,9 @@
-import { HttpClient, HttpErrorResponse, HttpEvent, HttpResponse } from '@angular/common/http';
+import { HttpClient, HttpErrorResponse, HttpEvent, HttpHeaders, HttpParams, HttpResponse } from '@angular/common/http';
 import { Injectable } from '@angular/core';
 import { Observable } from 'rxjs';
 import { User } from '../model/user.model';
+import { UserPage } from '../model/user-page.model';
+import { UserChanges } from '../model/user-changes.model';
 import { environment } from 'src/environments/environment';
 import { CustomHttpResponse } from '../model/customer-http-response.model';
 
@@ -18,12 +20,47 @@ export class UserService {
     return this.http.get<User[]>(this.host + '/user/list');
   } 
 
+  getUserPage(limit: number, cursor?: string, sort: string = 'id', direction: string = 'asc'): Observable<UserPage | HttpErrorResponse> {
+    let params = new HttpParams()
+      .set('limit', String(limit))
+      .set('sort', sort)
+      .set('direction', direction);
+    if(cursor) {
+      params = params.set('cursor', cursor);
+    }
+    return this.http.get<UserPage>(this.host + '/user/list', { params });
+  } 
+
+  searchUsers(searchTerm: string, limit: number, cursor?: string): Observable<UserPage | HttpErrorResponse> {
+    let params = new HttpParams()
+      .set('q', searchTerm)
+      .set('limit', String(limit));
+    if(cursor) {
+      params = params.set('cursor', cursor);
+    }
+    return this.http.get<UserPage>(this.host + '/user/search', { params });
+  } 
+
+  getUserChanges(since?: number): Observable<UserChanges | HttpErrorResponse> {
+    let params = new HttpParams();
+    if(since != null) {
+      params = params.set('since', String(since));
+    }
+    return this.http.get<UserChanges>(this.host + '/user/changes', { params });
+  } 
+
+  findUser(username: string): Observable<HttpResponse<User>> {
+    return this.http.get<User>(this.host + '/user/find/' + username, { observe: 'response' });
+  } 
+
   addUser(formData: FormData): Observable<User | HttpErrorResponse> {
     return this.http.post<User>(this.host + '/user/add', formData);
   } 
 
-  updateUser(formData: FormData): Observable<User | HttpErrorResponse> {
-    return this.http.put<User>(this.host + '/user/update', formData);
+  updateUser(formData: FormData, eTag?: string): Observable<HttpResponse<User>> {
+    // The ETag the edit was based on, as the server sent it. It refuses the update (412) if someone else saved in between
+    const headers = eTag ? new HttpHeaders().set('If-Match', eTag) : new HttpHeaders();
+    return this.http.put<User>(this.host + '/user/update', formData, { headers, observe: 'response' });
   } 
 
   resetPassword(email: string): Observable<void> {
@@ -53,6 +90,24 @@ export class UserService {
     return [];
   } 
 
+  addUsersVersionToLocalCache(version: number, nextCursor: string): void {
+    localStorage.setItem('usersVersion', String(version));
+    if(nextCursor) {
+      localStorage.setItem('usersNextCursor', nextCursor);
+    } else {
+      localStorage.removeItem('usersNextCursor');
+    }
+  } 
+
+  getUsersVersionFromLocalCache(): number {
+    const version = localStorage.getItem('usersVersion');
+    return version ? Number(version) : null;
+  } 
+
+  getNextCursorFromLocalCache(): string {
+    return localStorage.getItem('usersNextCursor');
+  } 
+
   createUserFormData(loggedInUsername: string, user: User, profileImage: File): FormData {
     const formData = new FormData();
     formData.append('currentUsername', loggedInUsername);
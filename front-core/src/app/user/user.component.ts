@@ -2,12 +2,15 @@ import { HttpErrorResponse, HttpEvent, HttpEventType, HttpResponse } from '@angu
 import { Component, OnDestroy, OnInit } from '@angular/core';
 import { NgForm } from '@angular/forms';
 import { Router } from '@angular/router';
-import { BehaviorSubject, Subscription } from 'rxjs';
+import { BehaviorSubject, EMPTY, Subject, Subscription } from 'rxjs';
+import { catchError, debounceTime, distinctUntilChanged, switchMap } from 'rxjs/operators';
 import { NotificationType } from '../enum/notification-type.enum';
 import { Role } from '../enum/role.enum';
 import { CustomHttpResponse } from '../model/customer-http-response.model';
 import { FileUploadStatus } from '../model/file-upload.status';
 import { User } from '../model/user.model';
+import { UserPage } from '../model/user-page.model';
+import { UserChanges } from '../model/user-changes.model';
 import { AuthenticationService } from '../service/authentication.service';
 import { NotificationService } from '../service/notification.service';
 import { UserService } from '../service/user.service';
@@ -26,16 +29,22 @@ export class UserComponent implements OnInit, OnDestroy {
   private subscriptions: Subscription[] = [];
 
   public users: User[];
+  public nextCursor: string;
   public user: User;
+  private userETag: string;
   refreshing: boolean = false;
   selectedUser: User;
   fileName: string;
   profileImage: File;
   editUser = new User();
+  editUserETag: string;
   currentUsername: string;
   public fileStatus = new FileUploadStatus();
 
   private subs = new SubSink();
+  private pageSize = 50;
+  private searchTerm = '';
+  private searchTerms = new Subject<string>();
 
   constructor(private userService: UserService,
               private router: Router,
@@ -44,7 +53,35 @@ export class UserComponent implements OnInit, OnDestroy {
 
   ngOnInit(): void {
     this.user = this.authService.getUserFromLocalCache();
+    this.loadCurrentUser();
+    this.users = this.userService.getUsersFromLocalCache();
+    this.nextCursor = this.userService.getNextCursorFromLocalCache();
     this.getUsers(true);
+    this.subs.add(
+      this.searchTerms.pipe(
+        debounceTime(250),
+        distinctUntilChanged(),
+        switchMap((searchTerm: string) => {
+          // The server ranks matches from its index, an empty term shows the list again
+          this.searchTerm = searchTerm.trim();
+          this.refreshing = true;
+          const page = this.searchTerm ? this.userService.searchUsers(this.searchTerm, this.pageSize)
+                                       : this.userService.getUserPage(this.pageSize);
+          // Caught per request, an error reaching the outer stream would end the search for good
+          return page.pipe(catchError((errorResponse: HttpErrorResponse) => {
+            this.refreshing = false;
+            this.sendNotification(NotificationType.ERROR, errorResponse.error.message);
+            return EMPTY;
+          }));
+        })
+      ).subscribe(
+        (response: UserPage) => {
+          this.users = response.users;
+          this.nextCursor = response.nextCursor;
+          this.refreshing = false;
+        }
+      )
+    );
   }
 
   changeTitle(title: string): void {
@@ -52,15 +89,115 @@ export class UserComponent implements OnInit, OnDestroy {
   }
 
   getUsers(showNotification: boolean): void {
+    // The cached list only needs what changed since its version, a full load is the fallback
+    const version = this.userService.getUsersVersionFromLocalCache();
+    if(version != null) {
+      this.syncUsers(showNotification, version, 0);
+    } else {
+      this.reloadUsers(showNotification);
+    }
+  }
+
+  private reloadUsers(showNotification: boolean): void {
+    this.refreshing = true;
+    this.subs.add(
+      // The version is taken before the page, changes made in between are applied again on the next sync
+      this.userService.getUserChanges().subscribe(
+        (changes: UserChanges) => this.loadUserPage(showNotification, null, changes.version),
+        (errorResponse: HttpErrorResponse) => {
+          this.refreshing = false;
+          this.sendNotification(NotificationType.ERROR, errorResponse.error.message);
+        }
+      )
+    );
+  }
+
+  private syncUsers(showNotification: boolean, since: number, changeCount: number): void {
+    this.refreshing = true;
+    this.subs.add(
+      this.userService.getUserChanges(since).subscribe(
+        (changes: UserChanges) => {
+          if(changes.reset) {
+            this.loadUserPage(showNotification, null, changes.version);
+            return;
+          }
+          // Applied to the cached list, search results are left as they are
+          const nextCursor = this.userService.getNextCursorFromLocalCache();
+          const users = this.applyUserChanges(this.userService.getUsersFromLocalCache(), changes, nextCursor);
+          this.userService.addUsersToLocalCache(users);
+          this.userService.addUsersVersionToLocalCache(changes.version, nextCursor);
+          if(!this.searchTerm) {
+            this.users = users;
+          }
+          changeCount += changes.users.length + changes.deletedUserIds.length;
+          if(changes.hasMore) {
+            this.syncUsers(showNotification, changes.version, changeCount);
+            return;
+          }
+          this.refreshing = false;
+          if(showNotification) {
+            this.sendNotification(NotificationType.SUCCESS, `${changeCount} user change(s) loaded successfully.`);
+          }
+        },
+        (errorResponse: HttpErrorResponse) => {
+          this.refreshing = false;
+          this.sendNotification(NotificationType.ERROR, errorResponse.error.message);
+        }
+      )
+    );
+  }
+
+  private applyUserChanges(users: User[], changes: UserChanges, nextCursor: string): User[] {
+    const deleted = new Set(changes.deletedUserIds);
+    const result = users.filter(user => !deleted.has(user.userId));
+    changes.users.forEach(changed => {
+      const index = result.findIndex(user => user.userId === changed.userId);
+      if(index >= 0) {
+        result[index] = changed;
+      } else if(!nextCursor) {
+        result.push(changed); // New users sort last by id, with pages left they arrive with those
+      }
+    });
+    return result;
+  }
+
+  loadMoreUsers(): void {
+    if(this.searchTerm) {
+      this.loadSearchPage(this.nextCursor);
+    } else {
+      this.loadUserPage(false, this.nextCursor, this.userService.getUsersVersionFromLocalCache());
+    }
+  }
+
+  private loadSearchPage(cursor: string): void {
+    this.refreshing = true;
+    this.subs.add(
+      this.userService.searchUsers(this.searchTerm, this.pageSize, cursor).subscribe(
+        (response: UserPage) => {
+          this.users = this.users.concat(response.users);
+          this.nextCursor = response.nextCursor;
+          this.refreshing = false;
+        },
+        (errorResponse: HttpErrorResponse) => {
+          this.refreshing = false;
+          this.sendNotification(NotificationType.ERROR, errorResponse.error.message);
+        }
+      )
+    );
+  }
+
+  private loadUserPage(showNotification: boolean, cursor: string, version: number): void {
     this.refreshing = true;
       this.subs.add(
-      this.userService.getUsers().subscribe(
-        (response: User[]) => {
-          this.userService.addUsersToLocalCache(response);
-          this.users = response;
+      this.userService.getUserPage(this.pageSize, cursor).subscribe(
+        (response: UserPage) => {
+          this.users = cursor ? this.users.concat(response.users) : response.users;
+          this.nextCursor = response.nextCursor;
+          this.userService.addUsersToLocalCache(this.users);
+          this.userService.addUsersVersionToLocalCache(version, this.nextCursor);
           this.refreshing = false;
           if(showNotification) {
-            this.sendNotification(NotificationType.SUCCESS, `${response.length} user(s) loaded successfully.`);
+            this.sendNotification(NotificationType.SUCCESS, `${response.users.length} user(s) loaded successfully.`);
           }
         },
         (errorResponse: HttpErrorResponse) => {
@@ -106,16 +243,28 @@ export class UserComponent implements OnInit, OnDestroy {
   }
 
   onEditUser(editUser: User): void {
-    this.editUser = editUser;
-    this.currentUsername = editUser.username;
-    this.clickButton('openUserEdit');
+    // Read again for the ETag the update sends back, the listed row may be older
+    this.subs.add(
+      this.userService.findUser(editUser.username).subscribe(
+        (response: HttpResponse<User>) => {
+          this.editUser = response.body || editUser;
+          this.editUserETag = response.headers.get('ETag');
+          this.currentUsername = this.editUser.username;
+          this.clickButton('openUserEdit');
+        },
+        (errorResponse: HttpErrorResponse) => {
+          this.sendNotification(NotificationType.ERROR, errorResponse.error.message);
+        }
+      )
+    );
   }
 
   onUpdateUser(): void {
     const formData = this.userService.createUserFormData(this.currentUsername, this.editUser, this.profileImage);
     this.subs.add(
-      this.userService.updateUser(formData).subscribe(
-        (response: User) => {
+      this.userService.updateUser(formData, this.editUserETag).subscribe(
+        (httpResponse: HttpResponse<User>) => {
+          const response = httpResponse.body;
           this.clickButton('closeEditUserModalButton');
           this.getUsers(false);
           this.fileName = null;
@@ -136,8 +285,11 @@ export class UserComponent implements OnInit, OnDestroy {
     this.currentUsername = this.authService.getUserFromLocalCache().username;
     const formData = this.userService.createUserFormData(this.currentUsername, user, this.profileImage);
     this.subs.add(
-      this.userService.updateUser(formData).subscribe(
-        (response: User) => {
+      this.userService.updateUser(formData, this.userETag).subscribe(
+        (httpResponse: HttpResponse<User>) => {
+          const response = httpResponse.body;
+          this.user = response;
+          this.userETag = httpResponse.headers.get('ETag');
           this.authService.addUserToLocalCache(response);
           this.getUsers(false);
           this.fileName = null;
@@ -153,20 +305,23 @@ export class UserComponent implements OnInit, OnDestroy {
     );
   }
 
+  private loadCurrentUser(): void {
+    // The ETag of the profile form, the user cached at login carries none
+    this.subs.add(
+      this.userService.findUser(this.user.username).subscribe(
+        (response: HttpResponse<User>) => {
+          if(response.body) {
+            this.user = response.body;
+            this.userETag = response.headers.get('ETag');
+            this.authService.addUserToLocalCache(response.body);
+          }
+        }
+      )
+    );
+  }
+
   searchUsers(searchTerm: string): void {
-    const results: User[] = [];
-    for(const user of this.userService.getUsersFromLocalCache()) {
-      if(user.firstName.toLocaleLowerCase().indexOf(searchTerm.toLocaleLowerCase()) !== -1 ||
-          user.lastName.toLocaleLowerCase().indexOf(searchTerm.toLocaleLowerCase()) !== -1 ||
-          user.username.toLocaleLowerCase().indexOf(searchTerm.toLocaleLowerCase()) !== -1 ||
-          user.userId.toLocaleLowerCase().indexOf(searchTerm.toLocaleLowerCase()) !== -1) {
-            results.push(user);
-      }
-    }
-    this.users = results;
-    if(results.length === 0 || !searchTerm) {
-      this.users = this.userService.getUsersFromLocalCache();
-    }
+    this.searchTerms.next(searchTerm || '');
   }
 
   onResetPassword(emailForm: NgForm): void {
@@ -246,6 +401,13 @@ export class UserComponent implements OnInit, OnDestroy {
     this.clickButton('profile-image-input');
   }
 
+  thumbnailUrl(user: User): string {
+    // Uploaded images have a resized thumbnail variant, generated avatars are already small
+    const url = user?.profileImageUrl;
+    const uploaded = `/user/image/${user?.username}/${user?.username}.jpg`;
+    return url && url.endsWith(uploaded) ? url.replace(uploaded, `/user/image/${user.username}/thumbnail`) : url;
+  }
+
   public get isAdmin(): boolean {
     return this.getUserRole() == Role.ADMIN || this.getUserRole() == Role.SUPER_ADMIN;
   }